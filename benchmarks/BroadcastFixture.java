@@ -0,0 +1,103 @@
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import bench.Fixture;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+
+/**
+ * BroadcastFixture.java
+ * 广播基准夹具：进程内的 WebSocket 服务器 + connections 个环回客户端。
+ * broadcast 调用 SwarmWebSocketServer.broadcast 发送 payloadBytes 字节的消息 (由刷新线程分片并行发送)，并等待所有客户端收到，
+ * 测得的是一次扇出从编码到最后一个客户端收到的完整耗时。
+ */
+public class BroadcastFixture implements Fixture {
+
+    private final SwarmWebSocketServer server;
+    private final List<WebSocketClient> clients = new ArrayList<>();
+    private final AtomicLong received = new AtomicLong();
+    private final String message;
+    private long expected;
+
+    public BroadcastFixture(int... params) {
+        int connections = params[0];
+        int payloadBytes = params.length > 1 ? params[1] : 1024;
+        server = new SwarmWebSocketServer(0, Collections::emptyList, 0);
+        server.setBackpressure(Long.MAX_VALUE / 2, Long.MAX_VALUE / 2); // 基准中不丢帧
+        server.start();
+        try {
+            while (server.getPort() == 0) {
+                Thread.sleep(10);
+            }
+            for (int i = 0; i < connections; i++) {
+                WebSocketClient client = new WebSocketClient(new URI("ws://127.0.0.1:" + server.getPort() + "/")) {
+                    @Override
+                    public void onOpen(ServerHandshake handshake) {
+                    }
+
+                    @Override
+                    public void onMessage(String text) {
+                        received.incrementAndGet();
+                    }
+
+                    @Override
+                    public void onClose(int code, String reason, boolean remote) {
+                    }
+
+                    @Override
+                    public void onError(Exception ex) {
+                    }
+                };
+                if (!client.connectBlocking(10, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("客户端连接超时");
+                }
+                clients.add(client);
+            }
+            // 等待连接时的快照全部到达
+            while (received.get() < connections) {
+                Thread.sleep(10);
+            }
+        } catch (Exception e) {
+            close();
+            throw new IllegalStateException("无法建立基准连接", e);
+        }
+        expected = received.get();
+        StringBuilder sb = new StringBuilder("{\"type\":\"bench\",\"data\":\"");
+        while (sb.length() < payloadBytes - 2) {
+            sb.append('x');
+        }
+        message = sb.append("\"}").toString();
+    }
+
+    @Override
+    public Supplier<Object> operation(String name) {
+        if (!"broadcast".equals(name)) {
+            throw new IllegalArgumentException("未知操作: " + name);
+        }
+        return () -> {
+            expected += clients.size();
+            server.broadcast(message);
+            while (received.get() < expected) {
+                Thread.onSpinWait();
+            }
+            return expected;
+        };
+    }
+
+    @Override
+    public void close() {
+        for (WebSocketClient client : clients) {
+            client.close();
+        }
+        try {
+            server.stop(1000, "benchmark finished");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
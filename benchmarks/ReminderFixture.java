@@ -0,0 +1,49 @@
+import java.util.Random;
+import java.util.function.Supplier;
+
+import bench.Fixture;
+
+/**
+ * ReminderFixture.java
+ * 提醒基准夹具：时间轮中预先积压 reminders 条远期提醒，deliverNext 每次加入一条下一分钟到期的提醒并推进一分钟，
+ * 衡量积压规模对入轮与推进 (processReminders 的核心) 的影响。投递出口为空实现，不计控制台输出。
+ */
+public class ReminderFixture implements Fixture {
+
+    // 积压提醒的时间下限：远大于一次测量迭代能推进的分钟数，测量期间不会被投递
+    private static final long BACKLOG_FROM = 1L << 26;
+
+    private final ReminderWheel wheel;
+    private final Performance performance;
+    private long now;
+    private long delivered;
+
+    public ReminderFixture(int... params) {
+        int reminders = params[0];
+        performance = new Performance(new Artist("bench", "摇滚", 50, null, null), TimeSlot.ofMinutes(0, 60), "主舞台");
+        wheel = new ReminderWheel(0, batch -> delivered += batch.size());
+        Random random = new Random(7);
+        for (int i = 0; i < reminders; i++) {
+            long time = BACKLOG_FROM + (random.nextLong() & Integer.MAX_VALUE);
+            wheel.schedule(new FanReminder("fan" + i, performance, time));
+        }
+    }
+
+    @Override
+    public Supplier<Object> operation(String name) {
+        if (!"deliverNext".equals(name)) {
+            throw new IllegalArgumentException("未知操作: " + name);
+        }
+        return () -> {
+            now++;
+            wheel.schedule(new FanReminder("fan", performance, now));
+            wheel.advanceTo(now);
+            return delivered;
+        };
+    }
+
+    @Override
+    public void close() {
+        wheel.close();
+    }
+}
@@ -0,0 +1,58 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import bench.Fixture;
+
+/**
+ * SchedulerFixture.java
+ * 调度器基准夹具：performances 场演出平均分布在 10 个舞台上 (WebSocket 服务器监听随机端口，无客户端)。
+ * stateJson 对应 generateCurrentStateJson，hotRanking 对应 getHotArtistsRanking(10)，
+ * updatePopularity 包含排行榜调整、快照提交和增量发布。
+ */
+public class SchedulerFixture implements Fixture {
+
+    private static final int STAGES = 10;
+
+    private final MusicFestivalScheduler scheduler;
+    private final String[] artists;
+    private final Random random = new Random(42);
+
+    public SchedulerFixture(int... params) {
+        int performances = params[0];
+        scheduler = new MusicFestivalScheduler(0);
+        List<Performance> batch = new ArrayList<>(performances);
+        artists = new String[performances];
+        for (int i = 0; i < performances; i++) {
+            String stage = "舞台" + (i % STAGES);
+            if (i < STAGES) {
+                scheduler.addStage(stage);
+            }
+            int slot = i / STAGES;
+            artists[i] = "艺人" + i;
+            batch.add(new Performance(new Artist(artists[i], i % 3 == 0 ? "R&B/摇滚" : "流行", random.nextInt(100), null, null),
+                    TimeSlot.ofMinutes(slot * 60, slot * 60 + 50), stage));
+        }
+        scheduler.addPerformances(batch);
+    }
+
+    @Override
+    public Supplier<Object> operation(String name) {
+        switch (name) {
+            case "stateJson":
+                return scheduler::generateCurrentStateJson;
+            case "hotRanking":
+                return () -> scheduler.getHotArtistsRanking(10);
+            case "updatePopularity":
+                return () -> scheduler.updatePopularity(artists[random.nextInt(artists.length)], random.nextInt(1000));
+            default:
+                throw new IllegalArgumentException("未知操作: " + name);
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.close();
+    }
+}
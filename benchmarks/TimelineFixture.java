@@ -0,0 +1,57 @@
+import java.util.function.Supplier;
+
+import bench.Fixture;
+
+/**
+ * TimelineFixture.java
+ * 时间轴基准夹具：单个舞台上预先排好 performances 场演出 (每场 50 分钟，间隔 10 分钟)。
+ * checkConflict 探测与已有演出重叠的时间段；insertRemove 在空档中插入一场再移除，时间轴规模保持不变。
+ */
+public class TimelineFixture implements Fixture {
+
+    private static final int PROBES = 1024;
+
+    private final DoublyLinkedList timeline = new DoublyLinkedList();
+    private final Performance[] conflicting = new Performance[PROBES];
+    private final Performance[] gaps = new Performance[PROBES];
+    private int cursor;
+
+    public TimelineFixture(int... params) {
+        int performances = params[0];
+        Artist artist = new Artist("bench", "摇滚", 50, null, null);
+        for (int i = 0; i < performances; i++) {
+            timeline.insertPerformance(new Performance(artist, TimeSlot.ofMinutes(i * 60, i * 60 + 50), "主舞台"));
+        }
+        // 探测用的演出：均匀分布在整条时间轴上
+        for (int k = 0; k < PROBES; k++) {
+            int i = (int) ((long) k * performances / PROBES);
+            conflicting[k] = new Performance(artist, TimeSlot.ofMinutes(i * 60 + 20, i * 60 + 70), "主舞台");
+            gaps[k] = new Performance(artist, TimeSlot.ofMinutes(i * 60 + 50, i * 60 + 60), "主舞台");
+        }
+    }
+
+    @Override
+    public Supplier<Object> operation(String name) {
+        switch (name) {
+            case "checkConflict":
+                return () -> timeline.checkConflict(conflicting[next()]);
+            case "insertRemove":
+                return () -> {
+                    Performance p = gaps[next()];
+                    boolean inserted = timeline.insertPerformance(p);
+                    timeline.removePerformance(p);
+                    return inserted;
+                };
+            default:
+                throw new IllegalArgumentException("未知操作: " + name);
+        }
+    }
+
+    private int next() {
+        return cursor = (cursor + 1) & (PROBES - 1);
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,31 @@
+package bench;
+
+import java.util.function.Supplier;
+
+/**
+ * Fixture.java
+ * JMH 基准与调度器代码之间的桥接接口。
+ * JMH 要求基准类位于具名包中，而调度器的类都在默认包里 (具名包无法引用默认包)，
+ * 因此被测对象由默认包中的 *Fixture 类构建，基准类只通过本接口取得要测量的操作。
+ * 反射只在 @Setup 中使用一次，测量循环内只有一次接口调用。
+ */
+public interface Fixture extends AutoCloseable {
+
+    // 按名称返回要测量的操作；返回值交给 Blackhole，避免被 JIT 消除
+    Supplier<Object> operation(String name);
+
+    @Override
+    void close();
+
+    /**
+     * 按类名构建默认包中的 Fixture，参数依次传给其 (int...) 构造函数。
+     */
+    static Fixture load(String className, int... params) {
+        try {
+            Class<?> type = Class.forName(className);
+            return (Fixture) type.getConstructor(int[].class).newInstance((Object) params);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("无法创建基准夹具: " + className, e);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SchedulerBenchmark.java
+ * 调度器整体：全量状态 JSON 生成、人气榜 Top 10、人气更新 (含快照提交与增量发布)。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchedulerBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int performances;
+
+    private Fixture fixture;
+    private Supplier<Object> stateJson;
+    private Supplier<Object> hotRanking;
+    private Supplier<Object> updatePopularity;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = Fixture.load("SchedulerFixture", performances);
+        stateJson = fixture.operation("stateJson");
+        hotRanking = fixture.operation("hotRanking");
+        updatePopularity = fixture.operation("updatePopularity");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public Object stateJson() {
+        return stateJson.get();
+    }
+
+    @Benchmark
+    public Object hotRanking() {
+        return hotRanking.get();
+    }
+
+    @Benchmark
+    public Object updatePopularity() {
+        return updatePopularity.get();
+    }
+}
@@ -0,0 +1,60 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * TimelineBenchmark.java
+ * 单舞台时间轴：冲突检测 (DoublyLinkedList.checkConflict) 与插入 + 移除，规模 10 ~ 100000 场演出。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimelineBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int performances;
+
+    private Fixture fixture;
+    private Supplier<Object> checkConflict;
+    private Supplier<Object> insertRemove;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = Fixture.load("TimelineFixture", performances);
+        checkConflict = fixture.operation("checkConflict");
+        insertRemove = fixture.operation("insertRemove");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public Object checkConflict() {
+        return checkConflict.get();
+    }
+
+    @Benchmark
+    public Object insertRemove() {
+        return insertRemove.get();
+    }
+}
@@ -7,7 +7,7 @@ import java.util.Comparator;
 public class Artist implements Comparable<Artist> {
     private final String name;
     private final String genre; 
-    private int popularity;
+    private volatile int popularity; // 投票折叠线程会更新
     
     // 【新增字段】用于存储本地资源路径
     private final String posterPath; 
@@ -0,0 +1,159 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+/**
+ * ArtistCatalog.java
+ * 艺人资源目录：启动时从 assets/artists.json 读取代表作、音频和海报，
+ * 每个艺人名驻留为一个整数 id，资源 URL 只在登记时拼接一次。
+ * 名字到 id 的映射只保存在目录内部 (同一个 Artist 可以登记到多个调度器各自的目录)，
+ * 序列化演出时按名字查一次 id，再做一次数组下标访问。
+ */
+public class ArtistCatalog {
+
+    private static final AsyncLog LOG = AsyncLog.get("资源");
+
+    public static final Path DEFAULT_MANIFEST = Path.of("assets", "artists.json");
+
+    // 单个艺人的已解析资源
+    public static final class Entry {
+        private final String name;
+        private final String songTitle;
+        private final String audioUrl;
+        private final String posterUrl;
+
+        Entry(String name, String songTitle, String audioUrl, String posterUrl) {
+            this.name = name;
+            this.songTitle = songTitle;
+            this.audioUrl = audioUrl;
+            this.posterUrl = posterUrl;
+        }
+
+        public String getName() { return name; }
+        public String getSongTitle() { return songTitle; }
+        public String getAudioUrl() { return audioUrl; }
+        public String getPosterUrl() { return posterUrl; }
+    }
+
+    private final String audioDir;
+    private final String imageDir;
+    private final String defaultSongTitle;
+    private final String defaultAudioUrl;
+    private final String defaultPosterUrl;
+
+    private final Map<String, Integer> idsByName = new ConcurrentHashMap<>();
+    // 按 id 存放的条目；扩容时整体替换，读线程无需加锁
+    private volatile Entry[] entries = new Entry[16];
+    private int count;
+
+    private ArtistCatalog(Manifest manifest) {
+        this.audioDir = manifest.audioDir == null ? "assets/audio/" : manifest.audioDir;
+        this.imageDir = manifest.imageDir == null ? "assets/images/" : manifest.imageDir;
+        ManifestArtist defaults = manifest.defaults == null ? new ManifestArtist() : manifest.defaults;
+        this.defaultSongTitle = defaults.songTitle == null ? "未知代表作" : defaults.songTitle;
+        this.defaultAudioUrl = audioDir + (defaults.audio == null ? "default_audio.mp3" : defaults.audio);
+        this.defaultPosterUrl = imageDir + (defaults.poster == null ? "default_poster.jpg" : defaults.poster);
+        if (manifest.artists != null) {
+            for (ManifestArtist artist : manifest.artists) {
+                if (artist.name != null) {
+                    register(artist.name, artist.songTitle, resolve(audioDir, artist.audio), resolve(imageDir, artist.poster));
+                }
+            }
+        }
+    }
+
+    /**
+     * 读取资源清单；文件不存在或格式错误时返回只含默认资源的空目录。
+     */
+    public static ArtistCatalog load(Path manifestPath) {
+        if (Files.isRegularFile(manifestPath)) {
+            try (Reader reader = Files.newBufferedReader(manifestPath, StandardCharsets.UTF_8)) {
+                Manifest manifest = new Gson().fromJson(reader, Manifest.class);
+                if (manifest != null) {
+                    ArtistCatalog catalog = new ArtistCatalog(manifest);
+                    LOG.info("🎵 已加载艺人资源清单: {} ({} 位艺人)", manifestPath, catalog.size());
+                    return catalog;
+                }
+            } catch (IOException | JsonParseException e) {
+                LOG.warn("⚠️ 艺人资源清单读取失败，使用默认资源: {}", e.getMessage());
+            }
+        }
+        return new ArtistCatalog(new Manifest());
+    }
+
+    public static ArtistCatalog loadDefault() {
+        return load(DEFAULT_MANIFEST);
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * 返回艺人在本目录中的 id。清单中没有的艺人自动登记：
+     * 优先使用 Artist 自带的 posterPath / audioPath，否则使用默认资源。
+     */
+    public int intern(Artist artist) {
+        Integer id = idsByName.get(artist.getName());
+        return id != null ? id : register(artist.getName(), null, artist.getAudioPath(), artist.getPosterPath());
+    }
+
+    // 按 id 取资源条目 (O(1) 数组访问)
+    public Entry get(int id) {
+        return entries[id];
+    }
+
+    // 艺人已登记时返回其资源条目，否则返回 null
+    public Entry find(String artistName) {
+        Integer id = idsByName.get(artistName);
+        return id == null ? null : entries[id];
+    }
+
+    private synchronized int register(String name, String songTitle, String audioUrl, String posterUrl) {
+        Integer existing = idsByName.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        Entry entry = new Entry(name,
+                songTitle == null ? defaultSongTitle : songTitle,
+                audioUrl == null ? defaultAudioUrl : audioUrl,
+                posterUrl == null ? defaultPosterUrl : posterUrl);
+        Entry[] current = entries;
+        if (count == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[count] = entry;
+        entries = current; // 先写入条目再发布数组
+        idsByName.put(name, count);
+        return count++;
+    }
+
+    private static String resolve(String dir, String file) {
+        return file == null ? null : dir + file;
+    }
+
+    // --- 清单文件结构 (Gson 反序列化) ---
+
+    private static final class Manifest {
+        String audioDir;
+        String imageDir;
+        ManifestArtist defaults;
+        List<ManifestArtist> artists;
+    }
+
+    private static final class ManifestArtist {
+        String name;
+        String songTitle;
+        String audio;
+        String poster;
+    }
+}
@@ -0,0 +1,343 @@
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.event.Level;
+import org.slf4j.helpers.FormattingTuple;
+import org.slf4j.helpers.MessageFormatter;
+
+/**
+ * AsyncLog.java
+ * 异步分级日志：调用线程只把 (时间、级别、线程、模板、参数) 放进一个预分配的环形缓冲区，
+ * 字符串拼接和控制台 I/O 都由后台写线程完成，写锁内和推送线程上的日志不再阻塞在控制台上。
+ *
+ * 用法与 slf4j 相同：模板中的 {} 依次由参数替换，最后一个参数是 Throwable 时输出其堆栈。
+ *   private static final AsyncLog LOG = AsyncLog.get("调度器");
+ *   LOG.info("✅ 成功录入演出: {}", performance);
+ * 低于当前级别的日志在调用处直接返回，不格式化；参数在写线程上才转成字符串，
+ * 因此可变对象按格式化时的状态输出。
+ *
+ * 路由：DEBUG / INFO 写到 System.out，WARN / ERROR 写到 System.err (可用 setStreams 改写，例如写入文件)。
+ * 缓冲区满时丢弃新日志并计数，不阻塞调用线程；写线程随后输出一条丢弃提示。
+ * 级别和缓冲区大小可由系统属性 festival.log.level (默认 INFO) 和 festival.log.buffer (默认 8192) 配置。
+ */
+public final class AsyncLog {
+
+    private static final int CAPACITY = Integer.highestOneBit(
+            Math.max(64, Integer.getInteger("festival.log.buffer", 8192)));
+    private static final int MASK = CAPACITY - 1;
+    // 写线程一次最多取出的条数，之后统一写出
+    private static final int DRAIN_BATCH = 256;
+    private static final long IDLE_PARK_NANOS = 100_000_000L;
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss.SSS")
+            .withZone(ZoneId.systemDefault());
+
+    private static final Event[] RING = new Event[CAPACITY];
+    // 槽位 i 中事件的序号 + 1，发布后才对写线程可见
+    private static final AtomicLongArray PUBLISHED = new AtomicLongArray(CAPACITY);
+    private static final AtomicLong TAIL = new AtomicLong(); // 下一个可领取的序号
+    private static volatile long head; // 写线程下一个要读取的序号
+    private static final LongAdder DROPPED = new LongAdder();
+
+    private static volatile int threshold = levelOf(System.getProperty("festival.log.level", "INFO")).toInt();
+    private static volatile PrintStream out = System.out;
+    private static volatile PrintStream err = System.err;
+
+    private static final Thread WRITER;
+    private static volatile boolean writerWaiting;
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) {
+            RING[i] = new Event();
+        }
+        WRITER = new Thread(AsyncLog::drainLoop, "async-log-writer");
+        WRITER.setDaemon(true);
+        WRITER.start();
+        // 进程退出前把缓冲区中剩余的日志写完
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> flush(1000), "async-log-flush"));
+    }
+
+    private final String name;
+
+    private AsyncLog(String name) {
+        this.name = name;
+    }
+
+    public static AsyncLog get(String name) {
+        return new AsyncLog(name);
+    }
+
+    // --- 配置 ---
+
+    public static void setLevel(Level level) {
+        threshold = level.toInt();
+    }
+
+    public static void setStreams(PrintStream infoStream, PrintStream errorStream) {
+        out = infoStream;
+        err = errorStream;
+    }
+
+    // 因缓冲区满被丢弃的日志条数
+    public static long getDropped() {
+        return DROPPED.sum();
+    }
+
+    /**
+     * 等待此前提交的日志全部写出 (最多 timeoutMillis)，返回是否已写完。
+     * 演示程序在直接打印到控制台之前调用，保证输出顺序。
+     */
+    public static boolean flush(long timeoutMillis) {
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+        while (head < TAIL.get()) {
+            if (Thread.currentThread() == WRITER || System.nanoTime() > deadline) {
+                return false;
+            }
+            LockSupport.unpark(WRITER);
+            LockSupport.parkNanos(100_000L);
+        }
+        out.flush();
+        err.flush();
+        return true;
+    }
+
+    public static boolean flush() {
+        return flush(1000);
+    }
+
+    // --- 记录 ---
+
+    public boolean isEnabled(Level level) {
+        return level.toInt() >= threshold;
+    }
+
+    public boolean isDebugEnabled() {
+        return isEnabled(Level.DEBUG);
+    }
+
+    public void debug(String pattern) {
+        log(Level.DEBUG, pattern, null, null, null, 0);
+    }
+
+    public void debug(String pattern, Object arg) {
+        log(Level.DEBUG, pattern, arg, null, null, 1);
+    }
+
+    public void debug(String pattern, Object arg1, Object arg2) {
+        log(Level.DEBUG, pattern, arg1, arg2, null, 2);
+    }
+
+    public void debug(String pattern, Object... args) {
+        log(Level.DEBUG, pattern, null, null, args, -1);
+    }
+
+    public void info(String pattern) {
+        log(Level.INFO, pattern, null, null, null, 0);
+    }
+
+    public void info(String pattern, Object arg) {
+        log(Level.INFO, pattern, arg, null, null, 1);
+    }
+
+    public void info(String pattern, Object arg1, Object arg2) {
+        log(Level.INFO, pattern, arg1, arg2, null, 2);
+    }
+
+    public void info(String pattern, Object... args) {
+        log(Level.INFO, pattern, null, null, args, -1);
+    }
+
+    public void warn(String pattern) {
+        log(Level.WARN, pattern, null, null, null, 0);
+    }
+
+    public void warn(String pattern, Object arg) {
+        log(Level.WARN, pattern, arg, null, null, 1);
+    }
+
+    public void warn(String pattern, Object arg1, Object arg2) {
+        log(Level.WARN, pattern, arg1, arg2, null, 2);
+    }
+
+    public void warn(String pattern, Object... args) {
+        log(Level.WARN, pattern, null, null, args, -1);
+    }
+
+    public void error(String pattern) {
+        log(Level.ERROR, pattern, null, null, null, 0);
+    }
+
+    public void error(String pattern, Object arg) {
+        log(Level.ERROR, pattern, arg, null, null, 1);
+    }
+
+    public void error(String pattern, Object arg1, Object arg2) {
+        log(Level.ERROR, pattern, arg1, arg2, null, 2);
+    }
+
+    public void error(String pattern, Object... args) {
+        log(Level.ERROR, pattern, null, null, args, -1);
+    }
+
+    // arity: 0 / 1 / 2 个参数存放在 arg1、arg2 中，-1 表示使用 args 数组
+    private void log(Level level, String pattern, Object arg1, Object arg2, Object[] args, int arity) {
+        if (level.toInt() < threshold) {
+            return;
+        }
+        long seq;
+        do {
+            seq = TAIL.get();
+            if (seq - head >= CAPACITY) {
+                DROPPED.increment();
+                return;
+            }
+        } while (!TAIL.compareAndSet(seq, seq + 1));
+
+        int index = (int) (seq & MASK);
+        Event event = RING[index];
+        event.time = System.currentTimeMillis();
+        event.level = level;
+        event.thread = Thread.currentThread().getName();
+        event.logger = name;
+        event.pattern = pattern;
+        event.arg1 = arg1;
+        event.arg2 = arg2;
+        event.args = args;
+        event.arity = arity;
+        PUBLISHED.set(index, seq + 1);
+        if (writerWaiting) {
+            LockSupport.unpark(WRITER);
+        }
+    }
+
+    // --- 写线程 ---
+
+    private static void drainLoop() {
+        StringBuilder outBuffer = new StringBuilder(16 * 1024);
+        StringBuilder errBuffer = new StringBuilder(4 * 1024);
+        long reportedDrops = 0;
+        while (true) {
+            int drained = 0;
+            long seq = head;
+            while (drained < DRAIN_BATCH) {
+                int index = (int) (seq & MASK);
+                if (PUBLISHED.get(index) != seq + 1) {
+                    break;
+                }
+                Event event = RING[index];
+                // WARN / ERROR 与 INFO 分属两个流：切换流之前先写出另一个流中已积累的内容，保持先后顺序
+                boolean error = event.level.toInt() >= Level.WARN.toInt();
+                StringBuilder target = error ? errBuffer : outBuffer;
+                StringBuilder other = error ? outBuffer : errBuffer;
+                if (other.length() > 0) {
+                    write(other, error ? out : err);
+                }
+                render(event, target);
+                event.clear();
+                head = ++seq;
+                drained++;
+            }
+            long drops = DROPPED.sum();
+            if (drops != reportedDrops) {
+                errBuffer.append("⚠️ 日志缓冲区已满，累计丢弃 ").append(drops).append(" 条日志\n");
+                reportedDrops = drops;
+            }
+            write(outBuffer, out);
+            write(errBuffer, err);
+            if (drained > 0) {
+                continue;
+            }
+            writerWaiting = true;
+            if (PUBLISHED.get((int) (head & MASK)) != head + 1) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+            writerWaiting = false;
+        }
+    }
+
+    private static void write(StringBuilder buffer, PrintStream stream) {
+        if (buffer.length() == 0) {
+            return;
+        }
+        stream.print(buffer);
+        stream.flush();
+        buffer.setLength(0);
+    }
+
+    // 12:00:01.234 INFO  [调度器] (main) 消息
+    private static void render(Event event, StringBuilder sb) {
+        TIME.formatTo(Instant.ofEpochMilli(event.time), sb);
+        sb.append(' ').append(event.level.name());
+        for (int pad = event.level.name().length(); pad < 5; pad++) {
+            sb.append(' ');
+        }
+        sb.append(" [").append(event.logger).append("] (").append(event.thread).append(") ");
+        Throwable thrown = null;
+        try {
+            FormattingTuple tuple;
+            switch (event.arity) {
+                case 0:
+                    tuple = new FormattingTuple(event.pattern);
+                    break;
+                case 1:
+                    tuple = MessageFormatter.format(event.pattern, event.arg1);
+                    break;
+                case 2:
+                    tuple = MessageFormatter.format(event.pattern, event.arg1, event.arg2);
+                    break;
+                default:
+                    tuple = MessageFormatter.arrayFormat(event.pattern, event.args);
+                    break;
+            }
+            sb.append(tuple.getMessage());
+            thrown = tuple.getThrowable();
+        } catch (RuntimeException e) {
+            sb.append(event.pattern).append(" (日志参数格式化失败: ").append(e).append(')');
+        }
+        sb.append('\n');
+        if (thrown != null) {
+            StringWriter trace = new StringWriter();
+            thrown.printStackTrace(new PrintWriter(trace));
+            sb.append(trace);
+        }
+    }
+
+    private static Level levelOf(String name) {
+        try {
+            return Level.valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return Level.INFO;
+        }
+    }
+
+    // 环形缓冲区的槽位，反复复用
+    private static final class Event {
+        long time;
+        Level level;
+        String thread;
+        String logger;
+        String pattern;
+        Object arg1;
+        Object arg2;
+        Object[] args;
+        int arity;
+
+        void clear() {
+            level = null;
+            thread = null;
+            logger = null;
+            pattern = null;
+            arg1 = null;
+            arg2 = null;
+            args = null;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BinaryStateCodec.java
+ * 时间轴快照的紧凑二进制编码 (WebSocket 子协议 "swarm.bin.v1")。
+ * 艺人、风格、舞台、资源路径等字符串只在字符串表中出现一次，
+ * 每场演出是一条定长记录，前端 index.html 用 DataView 直接解码。
+ *
+ * 布局 (大端序)：
+ *   u8 'S' | u8 'W' | u8 格式版本 | u8 消息类型 (1 = 快照)
+ *   u32 版本号高位 | u32 版本号低位
+ *   u32 字符串数量 | 每个字符串: u16 UTF-8 字节长度 + 字节
+ *   u32 记录数量   | 每条记录 RECORD_BYTES 字节:
+ *     i32 id | i32 开始 | i32 结束 | i32 人气 |
+ *     i32 舞台 | i32 艺人 | i32 风格 | i32 代表作 | i32 音频路径 | i32 海报路径 (均为字符串表下标)
+ */
+public final class BinaryStateCodec {
+
+    public static final String SUBPROTOCOL = "swarm.bin.v1";
+
+    public static final byte FORMAT_VERSION = 1;
+    public static final byte KIND_SNAPSHOT = 1;
+    public static final int RECORD_BYTES = 40;
+
+    // 记录中以字符串表下标存储的字段，顺序即记录中的顺序
+    private static final String[] STRING_FIELDS = {"stage", "artist", "genre", "songTitle", "audioUrl", "posterImage"};
+
+    private BinaryStateCodec() {
+    }
+
+    /**
+     * 把快照行 (与 JSON 快照相同的字段) 编码为只读缓冲区。
+     */
+    public static ByteBuffer encodeSnapshot(long version, List<Map<String, Object>> rows) {
+        // 1. 构建字符串表，并把每条记录的字符串字段换成下标
+        Map<String, Integer> stringIds = new HashMap<>();
+        List<byte[]> strings = new ArrayList<>();
+        int[] refs = new int[rows.size() * STRING_FIELDS.length];
+        int stringBytes = 0;
+        int r = 0;
+        for (Map<String, Object> row : rows) {
+            for (String field : STRING_FIELDS) {
+                String value = String.valueOf(row.get(field));
+                Integer id = stringIds.get(value);
+                if (id == null) {
+                    byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+                    if (utf8.length > 0xFFFF) {
+                        throw new IllegalArgumentException("字符串过长，无法编码: " + field);
+                    }
+                    id = strings.size();
+                    stringIds.put(value, id);
+                    strings.add(utf8);
+                    stringBytes += 2 + utf8.length;
+                }
+                refs[r++] = id;
+            }
+        }
+
+        // 2. 一次分配，顺序写出
+        int size = 4 + 8 + 4 + stringBytes + 4 + rows.size() * RECORD_BYTES;
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put((byte) 'S').put((byte) 'W').put(FORMAT_VERSION).put(KIND_SNAPSHOT);
+        buffer.putInt((int) (version >>> 32)).putInt((int) version);
+        buffer.putInt(strings.size());
+        for (byte[] utf8 : strings) {
+            buffer.putShort((short) utf8.length).put(utf8);
+        }
+        buffer.putInt(rows.size());
+        r = 0;
+        for (Map<String, Object> row : rows) {
+            buffer.putInt(intField(row, "id"));
+            buffer.putInt(intField(row, "startTime"));
+            buffer.putInt(intField(row, "endTime"));
+            buffer.putInt(intField(row, "popularity"));
+            for (int i = 0; i < STRING_FIELDS.length; i++) {
+                buffer.putInt(refs[r++]);
+            }
+        }
+        buffer.flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    private static int intField(Map<String, Object> row, String field) {
+        Object value = row.get(field);
+        return value instanceof Number ? ((Number) value).intValue() : 0;
+    }
+}
@@ -0,0 +1,103 @@
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BroadcastCoalescer.java
+ * 广播合并器：变更只标记 "脏"，由单独的调度线程在每个时间窗口内最多刷新一次。
+ * 批量导入时可以用 beginBatch / commitBatch 包裹，批次提交时立即刷新一次，
+ * 避免把在发送前就已过时的中间状态推给客户端。
+ */
+public class BroadcastCoalescer implements AutoCloseable {
+
+    private static final AsyncLog LOG = AsyncLog.get("广播");
+
+    public static final long DEFAULT_FLUSH_INTERVAL_MS = 50;
+
+    private final long flushIntervalNanos;
+    private final Runnable flushAction;
+    private final ScheduledExecutorService executor;
+
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicInteger batchDepth = new AtomicInteger();
+    // 上一次刷新的时间，仅由调度线程读写
+    private volatile long lastFlushNanos;
+
+    public BroadcastCoalescer(long flushIntervalMillis, Runnable flushAction) {
+        if (flushIntervalMillis < 0) {
+            throw new IllegalArgumentException("刷新间隔不能为负数。");
+        }
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.flushAction = flushAction;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "broadcast-coalescer");
+            t.setDaemon(true);
+            return t;
+        });
+        this.lastFlushNanos = System.nanoTime() - flushIntervalNanos;
+    }
+
+    /**
+     * 标记状态已变更。距上次刷新已超过一个窗口时立即刷新，否则等到窗口结束时统一刷新。
+     */
+    public void markDirty() {
+        dirty.set(true);
+        if (batchDepth.get() > 0) {
+            return; // 批次提交时再刷新
+        }
+        scheduleFlush();
+    }
+
+    // 开始一个批次：批次内的变更不会触发刷新 (支持嵌套)
+    public void beginBatch() {
+        batchDepth.incrementAndGet();
+    }
+
+    // 提交批次：最外层提交时立即刷新一次
+    public void commitBatch() {
+        int depth = batchDepth.decrementAndGet();
+        if (depth < 0) {
+            batchDepth.incrementAndGet();
+            throw new IllegalStateException("commitBatch 调用次数多于 beginBatch。");
+        }
+        if (depth == 0 && dirty.get()) {
+            executor.execute(this::flush);
+        }
+    }
+
+    // 立即在调度线程上刷新 (不等待窗口)
+    public void flushNow() {
+        executor.execute(this::flush);
+    }
+
+    private void scheduleFlush() {
+        if (!scheduled.compareAndSet(false, true)) {
+            return; // 当前窗口已有一次刷新在排队
+        }
+        long delay = lastFlushNanos + flushIntervalNanos - System.nanoTime();
+        executor.schedule(() -> {
+            scheduled.set(false);
+            flush();
+        }, Math.max(0, delay), TimeUnit.NANOSECONDS);
+    }
+
+    private void flush() {
+        if (batchDepth.get() > 0 || !dirty.getAndSet(false)) {
+            return;
+        }
+        lastFlushNanos = System.nanoTime();
+        try {
+            flushAction.run();
+        } catch (RuntimeException e) {
+            LOG.error("广播刷新失败: {}", e.toString());
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,137 @@
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * ChunkedList.java
+ * 不可变的分块列表：元素按顺序存放在若干个小数组 (块) 中，插入、删除、替换只复制受影响的那一块
+ * 和块索引，O(B + n/B)，其余块与旧列表共享。调度器快照用它保存各舞台的时间轴和数据行，
+ * 每次变更不必复制整个舞台。随机访问先二分查找所在的块，O(log(n/B))。
+ */
+final class ChunkedList<T> extends AbstractList<T> implements RandomAccess {
+
+    private static final int CHUNK = 64; // 块的目标大小，超过两倍时拆分
+    private static final ChunkedList<?> EMPTY = new ChunkedList<>(new Object[0][]);
+
+    private final Object[][] chunks;
+    private final int[] offsets; // offsets[c] 为第 c 块第一个元素的下标
+    private final int size;
+
+    private ChunkedList(Object[][] chunks) {
+        this.chunks = chunks;
+        this.offsets = new int[chunks.length];
+        int total = 0;
+        for (int c = 0; c < chunks.length; c++) {
+            offsets[c] = total;
+            total += chunks[c].length;
+        }
+        this.size = total;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> ChunkedList<T> empty() {
+        return (ChunkedList<T>) EMPTY;
+    }
+
+    static <T> ChunkedList<T> of(List<? extends T> items) {
+        if (items.isEmpty()) {
+            return empty();
+        }
+        Object[][] chunks = new Object[(items.size() + CHUNK - 1) / CHUNK][];
+        for (int c = 0; c < chunks.length; c++) {
+            int from = c * CHUNK;
+            chunks[c] = items.subList(from, Math.min(from + CHUNK, items.size())).toArray();
+        }
+        return new ChunkedList<>(chunks);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        int c = chunkOf(index);
+        return (T) chunks[c][index - offsets[c]];
+    }
+
+    // 在 index 处插入 item 后的新列表 (0 <= index <= size)
+    ChunkedList<T> inserting(int index, T item) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        if (chunks.length == 0) {
+            return new ChunkedList<>(new Object[][]{{item}});
+        }
+        int c = index == size ? chunks.length - 1 : chunkOf(index);
+        Object[] old = chunks[c];
+        int at = index - offsets[c];
+        Object[] grown = new Object[old.length + 1];
+        System.arraycopy(old, 0, grown, 0, at);
+        grown[at] = item;
+        System.arraycopy(old, at, grown, at + 1, old.length - at);
+        if (grown.length <= 2 * CHUNK) {
+            return replace(c, 1, grown);
+        }
+        int half = grown.length / 2;
+        Object[] left = new Object[half];
+        Object[] right = new Object[grown.length - half];
+        System.arraycopy(grown, 0, left, 0, half);
+        System.arraycopy(grown, half, right, 0, right.length);
+        return replace(c, 1, left, right);
+    }
+
+    // 删除 index 处元素后的新列表；块变小后与后一块合并，避免删除多了留下大量碎块
+    ChunkedList<T> removing(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        int c = chunkOf(index);
+        Object[] old = chunks[c];
+        int at = index - offsets[c];
+        if (old.length == 1) {
+            return replace(c, 1);
+        }
+        if (c + 1 < chunks.length && old.length - 1 + chunks[c + 1].length <= CHUNK) {
+            Object[] next = chunks[c + 1];
+            Object[] merged = new Object[old.length - 1 + next.length];
+            System.arraycopy(old, 0, merged, 0, at);
+            System.arraycopy(old, at + 1, merged, at, old.length - at - 1);
+            System.arraycopy(next, 0, merged, old.length - 1, next.length);
+            return replace(c, 2, merged);
+        }
+        Object[] shrunk = new Object[old.length - 1];
+        System.arraycopy(old, 0, shrunk, 0, at);
+        System.arraycopy(old, at + 1, shrunk, at, old.length - at - 1);
+        return replace(c, 1, shrunk);
+    }
+
+    // 最后一个 offsets[c] <= index 的块
+    private int chunkOf(int index) {
+        int lo = 0;
+        int hi = chunks.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (offsets[mid] <= index) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    // 用 with 替换从第 c 块开始的 count 个块，其余块原样共享
+    private ChunkedList<T> replace(int c, int count, Object[]... with) {
+        Object[][] next = new Object[chunks.length - count + with.length][];
+        System.arraycopy(chunks, 0, next, 0, c);
+        System.arraycopy(with, 0, next, c, with.length);
+        System.arraycopy(chunks, c + count, next, c + with.length, chunks.length - c - count);
+        return new ChunkedList<>(next);
+    }
+}
@@ -0,0 +1,91 @@
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ClientSession.java
+ * 单个 WebSocket 连接的发送状态，用于慢消费者背压控制。
+ * 客户端积压过多时不再发送中间增量，只记住 "已落后"；积压消化后补发一次最新快照，
+ * 落后时间过长则断开连接。所有字段由 SwarmWebSocketServer 在本会话的锁 (lock() / unlock()) 内读写，
+ * 同一连接的刷新、快照和补发因此互相排队。用 ReentrantLock 而不是 synchronized：发送分片跑在虚拟线程上，
+ * 等待 monitor 会钉住载体线程，等待 ReentrantLock 时虚拟线程可以让出载体。sentVersion 记录已推送给该连接的最后版本，
+ * 晚到的批次据此跳过快照已包含的增量。
+ * 设置了订阅的连接只接收与订阅匹配的增量，快照也换成订阅范围内的演出。
+ */
+public class ClientSession {
+    // 是否协商了二进制子协议 (快照以二进制帧发送)
+    private final boolean binary;
+
+    private boolean lagging;
+    private long laggingSinceMillis;
+    private long droppedFrames;
+    private long queuedBytes;
+    private Subscription subscription; // null 表示接收完整的状态流
+    private long sentVersion; // 已推送给该连接的最后版本 (快照或批次)
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public ClientSession(boolean binary) {
+        this.binary = binary;
+    }
+
+    void lock() {
+        lock.lock();
+    }
+
+    void unlock() {
+        lock.unlock();
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    public boolean isLagging() {
+        return lagging;
+    }
+
+    // 丢弃一帧，并在首次落后时记录开始时间
+    void dropFrame(long nowMillis) {
+        if (!lagging) {
+            lagging = true;
+            laggingSinceMillis = nowMillis;
+        }
+        droppedFrames++;
+    }
+
+    // 已补发最新快照，恢复正常推送
+    void resume() {
+        lagging = false;
+        laggingSinceMillis = 0;
+    }
+
+    long lagMillis(long nowMillis) {
+        return lagging ? nowMillis - laggingSinceMillis : 0;
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    public long getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    void setQueuedBytes(long queuedBytes) {
+        this.queuedBytes = queuedBytes;
+    }
+
+    long getSentVersion() {
+        return sentVersion;
+    }
+
+    void setSentVersion(long sentVersion) {
+        this.sentVersion = sentVersion;
+    }
+
+    public Subscription getSubscription() {
+        return subscription;
+    }
+
+    void setSubscription(Subscription subscription) {
+        this.subscription = subscription;
+    }
+}
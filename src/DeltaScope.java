@@ -0,0 +1,72 @@
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * DeltaScope.java
+ * 一条增量涉及的范围：相关艺人和时间段 (打包的音乐节分钟)。
+ * 发布增量时由调度器给出，服务器据此只把增量推送给订阅了对应艺人或时间段的连接。
+ */
+public final class DeltaScope {
+    private final String[] artists;
+    private final long[] slots;
+
+    private DeltaScope(String[] artists, long[] slots) {
+        this.artists = artists;
+        this.slots = slots;
+    }
+
+    public static DeltaScope of(Performance... performances) {
+        return of(Arrays.asList(performances));
+    }
+
+    public static DeltaScope of(Collection<Performance> performances) {
+        String[] artists = new String[performances.size()];
+        long[] slots = new long[performances.size()];
+        int i = 0;
+        for (Performance p : performances) {
+            artists[i] = p.getArtist().getName();
+            slots[i] = p.getSlot();
+            i++;
+        }
+        return new DeltaScope(artists, slots);
+    }
+
+    // 艺人级别的变更 (如人气)：涉及该艺人的全部演出时间段
+    public static DeltaScope ofArtist(String artist, Collection<Performance> bookings) {
+        long[] slots = new long[bookings == null ? 0 : bookings.size()];
+        int i = 0;
+        if (bookings != null) {
+            for (Performance p : bookings) {
+                slots[i++] = p.getSlot();
+            }
+        }
+        return new DeltaScope(new String[]{artist}, slots);
+    }
+
+    // 追加一个时间段 (改期时旧时间段的订阅者也需要收到)
+    public DeltaScope plusSlot(TimeSlot slot) {
+        long[] more = Arrays.copyOf(slots, slots.length + 1);
+        more[slots.length] = slot.getPacked();
+        return new DeltaScope(artists, more);
+    }
+
+    public boolean touchesArtist(Set<String> names) {
+        for (String artist : artists) {
+            if (names.contains(artist)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean overlaps(int from, int to) {
+        long range = TimeSlot.pack(from, to);
+        for (long slot : slots) {
+            if (TimeSlot.overlaps(slot, range)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
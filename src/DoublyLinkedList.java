@@ -4,57 +4,169 @@ import java.util.List;
 /**
  * DoublyLinkedList.java
  * 自定义双向链表，用于管理演出时间轴。
+ * 链表按开始时间保存演出顺序 (调换、前后挪动都是原地的指针操作)，
+ * 同时维护一个区间索引 TimelineIndex 用于快速冲突检测和定位前驱节点。
  */
 public class DoublyLinkedList {
     private Performance head;
     private Performance tail;
 
+    // 区间索引：与链表节点一一对应
+    private final TimelineIndex index;
+
     public DoublyLinkedList() {
         this.head = null;
         this.tail = null;
+        this.index = new TimelineIndex();
     }
 
     public Performance getHead() {
         return head;
     }
 
-    // 检查冲突
+    public int size() {
+        return index.size();
+    }
+
+    // 检查冲突 (通过区间索引，O(log n))
     public boolean checkConflict(Performance newPerformance) {
-        Performance current = head;
-        while (current != null) {
-            if (current != newPerformance && current.getTimeSlot().conflictsWith(newPerformance.getTimeSlot())) {
-                // System.err.println("冲突检测: " + newPerformance + " 与 " + current + " 冲突!");
-                return true;
-            }
-            current = current.next;
-        }
-        return false;
+        return findConflict(newPerformance) != null;
     }
 
-    // 插入演出
+    // 返回与给定演出冲突的已有演出，没有冲突时返回 null
+    public Performance findConflict(Performance newPerformance) {
+        long slot = newPerformance.getSlot();
+        return index.findFirstOverlap(TimeSlot.startOf(slot), TimeSlot.endOf(slot), newPerformance);
+    }
+
+    // 查询与给定时间段重叠的所有演出，按开始时间升序
+    public List<Performance> findOverlapping(TimeSlot slot) {
+        return index.findOverlapping(slot.getStartMinute(), slot.getEndMinute());
+    }
+
+    // 查询时刻 t 正在进行的演出
+    public List<Performance> findLiveAt(int t) {
+        return index.findLiveAt(t);
+    }
+
+    // 插入演出：通过区间索引找到前驱节点，链表始终按开始时间排序 (O(log n))
     public boolean insertPerformance(Performance newPerformance) {
         if (checkConflict(newPerformance)) {
             return false;
         }
-
-        if (head == null) {
-            head = newPerformance;
-            tail = newPerformance;
-            newPerformance.prev = null;
-            newPerformance.next = null;
-        } else {
-            tail.next = newPerformance;
-            newPerformance.prev = tail;
-            newPerformance.next = null;
-            tail = newPerformance;
-        }
+        linkAfter(newPerformance, index.findPredecessor(newPerformance));
+        index.insert(newPerformance);
         return true;
     }
 
     // 移除演出
     public void removePerformance(Performance target) {
         if (target == null) return;
+        // 不在本链表中的节点直接忽略，避免破坏 head/tail
+        if (!index.remove(target)) return;
+        unlink(target);
+    }
+
+    /**
+     * 调换两场演出：交换时间段，并在链表中原地交换两个节点的指针 (O(1)，各自的原位置保持不变)。
+     * 时间段冲突只需检查两个新时间段与其余演出是否重叠，与其他演出冲突时不做任何修改。
+     */
+    public boolean swapPerformance(Performance p1, Performance p2) {
+        if (p1 == p2) return true;
+        TimeSlot s1 = p1.getTimeSlot();
+        TimeSlot s2 = p2.getTimeSlot();
+        if (!index.remove(p1)) return false;
+        if (!index.remove(p2)) {
+            index.insert(p1);
+            return false;
+        }
+        // 两者已移出索引：各自的新时间段只需与其余演出比较
+        boolean conflict = index.findFirstOverlap(s2.getStartMinute(), s2.getEndMinute(), null) != null
+                || index.findFirstOverlap(s1.getStartMinute(), s1.getEndMinute(), null) != null;
+        if (!conflict) {
+            p1.setTimeSlot(s2);
+            p2.setTimeSlot(s1);
+            swapNodes(p1, p2);
+        }
+        index.insert(p1);
+        index.insert(p2);
+        return !conflict;
+    }
+
+    /**
+     * 修改演出的时间段：新时间段与其他演出冲突时返回 false 且不做任何修改。
+     * 区间索引以开始时间为键，因此先移出索引、修改后再放回；
+     * 新时间段越过了前后相邻的演出时，通过索引找到新的前驱并把节点挪过去，保持链表有序。
+     */
+    public boolean updateTimeSlot(Performance target, TimeSlot newSlot) {
+        if (index.findFirstOverlap(newSlot.getStartMinute(), newSlot.getEndMinute(), target) != null) {
+            return false;
+        }
+        if (!index.remove(target)) {
+            return false;
+        }
+        target.setTimeSlot(newSlot);
+        if ((target.prev != null && target.prev.getStartMinute() > newSlot.getStartMinute())
+                || (target.next != null && target.next.getStartMinute() < newSlot.getStartMinute())) {
+            unlink(target);
+            linkAfter(target, index.findPredecessor(target));
+        }
+        index.insert(target);
+        return true;
+    }
+
+    /**
+     * 把演出挪到 anchor 之前，时长不变，与 anchor 之间留出 gapMinutes 的换场时间。
+     * 只需检查新时间段与前一场是否重叠 (通过区间索引)，冲突时不做任何修改。
+     */
+    public boolean moveBefore(Performance target, Performance anchor, int gapMinutes) {
+        TimeSlot slot = slotBefore(target, anchor, gapMinutes);
+        return slot != null && updateTimeSlot(target, slot);
+    }
+
+    // 把演出挪到 anchor 之后，时长不变，与 anchor 之间留出 gapMinutes 的换场时间
+    public boolean moveAfter(Performance target, Performance anchor, int gapMinutes) {
+        TimeSlot slot = slotAfter(target, anchor, gapMinutes);
+        return slot != null && updateTimeSlot(target, slot);
+    }
+
+    // 挪到 anchor 之前时的新时间段；target 就是 anchor 时返回 null
+    public static TimeSlot slotBefore(Performance target, Performance anchor, int gapMinutes) {
+        if (target == anchor) {
+            return null;
+        }
+        int end = anchor.getStartMinute() - gapMinutes;
+        return TimeSlot.ofMinutes(end - target.getTimeSlot().getDurationMinutes(), end);
+    }
+
+    // 挪到 anchor 之后时的新时间段；target 就是 anchor 时返回 null
+    public static TimeSlot slotAfter(Performance target, Performance anchor, int gapMinutes) {
+        if (target == anchor) {
+            return null;
+        }
+        int start = anchor.getEndMinute() + gapMinutes;
+        return TimeSlot.ofMinutes(start, start + target.getTimeSlot().getDurationMinutes());
+    }
 
+    // --- 指针操作 (均为 O(1)) ---
+
+    // 把节点接在 anchor 之后，anchor 为 null 时放在表头
+    private void linkAfter(Performance node, Performance anchor) {
+        node.prev = anchor;
+        node.next = anchor == null ? head : anchor.next;
+        if (node.next != null) {
+            node.next.prev = node;
+        } else {
+            tail = node;
+        }
+        if (anchor != null) {
+            anchor.next = node;
+        } else {
+            head = node;
+        }
+    }
+
+    private void unlink(Performance target) {
         if (target.prev != null) {
             target.prev.next = target.next;
         } else {
@@ -66,28 +178,30 @@ public class DoublyLinkedList {
         } else {
             tail = target.prev;
         }
-        
+
         target.prev = null;
         target.next = null;
     }
 
-    // 调换位置 (简单实现：移除后重新插入)
-    // 注意：实际项目中应交换节点指针，此处为演示简化处理
-    public boolean swapPerformance(Performance p1, Performance p2) {
-        if (p1 == p2) return true;
-
-        System.out.println(">> 正在执行链表节点交换...");
-        
-        // 1. 移除两个节点
-        removePerformance(p1);
-        removePerformance(p2);
-
-        // 2. 重新插入 (注意顺序，这里简单地按 p2 然后 p1 插入到尾部)
-        // 在严谨的实现中，应该记录它们原先的插入位置索引
-        insertPerformance(p2);
-        insertPerformance(p1);
-        
-        return true;
+    // 交换两个节点在链表中的位置 (相邻时也成立)
+    private void swapNodes(Performance a, Performance b) {
+        if (b.next == a) {
+            Performance t = a;
+            a = b;
+            b = t;
+        }
+        if (a.next == b) {
+            // a 紧挨在 b 前面：摘下 a，再接到 b 之后
+            unlink(a);
+            linkAfter(a, b);
+            return;
+        }
+        Performance aPrev = a.prev;
+        Performance bPrev = b.prev;
+        unlink(a);
+        unlink(b);
+        linkAfter(b, aPrev);
+        linkAfter(a, bPrev);
     }
 
     // 获取完整列表
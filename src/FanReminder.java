@@ -0,0 +1,41 @@
+/**
+ * FanReminder.java
+ * 粉丝预约提醒：粉丝 ID、演出场次和提醒时间 (音乐节分钟，与 TimeSlot 相同)。
+ * 同时作为时间轮 ReminderWheel 槽位链表的节点，入轮、取消都是 O(1) 的指针操作。
+ */
+public class FanReminder implements Comparable<FanReminder> {
+    private final String fanId;
+    private final Performance performance;
+    private volatile long reminderTime; // 演出改期时由时间轮整体平移
+
+    // 时间轮槽位链表指针，由 ReminderWheel 在其锁内维护
+    FanReminder wheelPrev;
+    FanReminder wheelNext;
+    int wheelLevel = -1; // -1 表示不在时间轮中
+    int wheelSlot;
+
+    public FanReminder(String fanId, Performance performance, long reminderTime) {
+        this.fanId = fanId;
+        this.performance = performance;
+        this.reminderTime = reminderTime;
+    }
+
+    public String getFanId() { return fanId; }
+    public Performance getPerformance() { return performance; }
+    public long getReminderTime() { return reminderTime; }
+
+    // 只能由 ReminderWheel 在其锁内、提醒不在槽位中时修改
+    void setReminderTime(long reminderTime) {
+        this.reminderTime = reminderTime;
+    }
+
+    @Override
+    public int compareTo(FanReminder other) {
+        return Long.compare(this.reminderTime, other.reminderTime);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("提醒[粉丝 %s -> %s @ %s]", fanId, performance.getArtist().getName(), TimeSlot.formatMinute(reminderTime));
+    }
+}
@@ -0,0 +1,776 @@
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+import org.slf4j.event.Level;
+
+/**
+ * FestivalLoadGenerator.java
+ * 合成负载与长时间浸泡测试：生成大规模的合成阵容 (艺人、风格、舞台、时间段)，按给定的操作比例
+ * 持续驱动调度器 (增删演出、调换、投票、设置提醒、查询)，同时在本机开启大量 WebSocket 客户端接收推送，
+ * 定期报告端到端更新延迟的分位数、查询往返延迟和内存 / GC 情况。全部走回环地址，不依赖任何外部服务。
+ *
+ * 端到端延迟：驱动线程记录每次变更开始的时刻，变更恰好发布了一个增量时登记 (版本号 -> 时刻)；
+ * 客户端收到 batch 帧后按其中各增量的版本号查表，记录 "调用调度器 -> 客户端收到" 的耗时。
+ * 投票折算等后台线程发布的增量无法对应到调用时刻，不计入延迟。
+ * 内存为整个进程的堆 (含客户端一侧，客户端只保留正在拼接的帧)；"存活" 为最近一次 GC 后仍占用的堆，
+ * 长时间运行中持续上涨说明有泄漏。
+ *
+ * 操作比例格式: add=10,swap=10,vote=50,reminder=20,query=10 (权重，未列出的操作为 0)。
+ * 每 10 个客户端中有 1 个以查询模式连接，负责发送查询；其余接收完整的状态流。
+ * 连接数较多时需要调大进程的文件句柄上限 (每个连接在本进程内占两个)，例如 ulimit -n 20000。
+ * 调度器和服务器的日志默认只输出 ERROR，可用 -Dfestival.log.level=WARN 等改回。
+ *
+ * 用法: java FestivalLoadGenerator [客户端数, 默认 1000] [持续分钟 (可带小数), 默认 10] [每秒操作数, 默认 500]
+ *       [舞台数, 默认 16] [天数, 默认 3] [操作比例, 默认见上] [端口, 默认 8084] [报告间隔秒, 默认 10]
+ */
+public class FestivalLoadGenerator {
+
+    private static final String[] GENRES = {"摇滚", "流行", "电子", "民谣", "嘻哈", "爵士", "金属", "说唱",
+            "流行/电子", "摇滚/民谣", "嘻哈/说唱", "爵士/流行", "电子/嘻哈", "金属/摇滚"};
+    private static final String[] BASE_GENRES = {"摇滚", "流行", "电子", "民谣", "嘻哈", "爵士", "金属", "说唱"};
+    private static final String DEFAULT_MIX = "add=10,swap=10,vote=50,reminder=20,query=10";
+    private static final int SLOTS_PER_DAY = 12;   // 每个舞台每天 12 场，12:00 开始，每小时一场
+    private static final int SET_MINUTES = 50;
+    private static final double INITIAL_FILL = 0.8; // 初始阵容占满的时间段比例，其余留给增删演出
+    private static final int QUERY_CLIENT_EVERY = 10;
+    private static final int CONNECT_CONCURRENCY = 64;
+    private static final int FANS = 100_000;
+    private static final long RECONNECT_DELAY_MS = 1000;
+    // 发布时刻和在途查询保留 60 秒，过期仍未收到的视为丢失
+    private static final long RETENTION_NANOS = TimeUnit.SECONDS.toNanos(60);
+    private static final long NANOS_PER_FESTIVAL_MINUTE = TimeUnit.SECONDS.toNanos(1); // 音乐节时钟: 1 秒 = 1 分钟
+
+    private enum Op { ADD, SWAP, VOTE, REMINDER, QUERY }
+
+    private final int clientCount;
+    private final long durationNanos;
+    private final int opsPerSecond;
+    private final int port;
+    private final long reportNanos;
+    private final int[] weights = new int[Op.values().length];
+    private int totalWeight;
+
+    private final MusicFestivalScheduler scheduler;
+    private final Random random = new Random(2024); // 只在驱动线程上使用
+    private final List<String> stageNames = new ArrayList<>();
+    private final Map<String, List<TimeSlot>> stageSlots = new HashMap<>();
+    private final ArtistPool booked = new ArtistPool();
+    private final ArtistPool idle = new ArtistPool();
+    private final long clockStartNanos = System.nanoTime();
+    private final long clockBase = TimeSlot.minuteOf(1, 11, 0);
+
+    // 端到端延迟：版本号 -> 发布该增量的调用开始时刻
+    private final ConcurrentHashMap<Long, Long> publishedAt = new ConcurrentHashMap<>();
+    private final LatencyHistogram updateLatency = new LatencyHistogram("load_update_latency", "端到端更新延迟", true);
+    private volatile LatencyHistogram updateWindow = new LatencyHistogram("load_update_latency", "端到端更新延迟", true);
+    // 查询往返：请求编号 -> 发出时刻
+    private final ConcurrentHashMap<Long, Long> queriesInFlight = new ConcurrentHashMap<>();
+    private final LatencyHistogram queryLatency = new LatencyHistogram("load_query_latency", "查询往返延迟", true);
+    private volatile LatencyHistogram queryWindow = new LatencyHistogram("load_query_latency", "查询往返延迟", true);
+    private long querySequence;
+
+    private final LongAdder[] opCounts = new LongAdder[Op.values().length];
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder behind = new LongAdder();
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder snapshots = new LongAdder();
+    private final LongAdder untimedDeltas = new LongAdder();
+    private final LongAdder queryErrors = new LongAdder();
+    private final LongAdder queryTimeouts = new LongAdder();
+    private final LongAdder remindersDelivered = new LongAdder();
+    private final LongAdder disconnects = new LongAdder();
+    private final LongAdder connectFailures = new LongAdder();
+    private final AtomicInteger connected = new AtomicInteger();
+
+    private final List<LoadClient> queryClients = new CopyOnWriteArrayList<>();
+    private final HttpClient http;
+    private final ScheduledExecutorService background;
+    private volatile boolean running = true;
+
+    private FestivalLoadGenerator(int clientCount, double minutes, int opsPerSecond, int stageCount, int days,
+                                  String mix, int port, int reportSeconds) {
+        this.clientCount = clientCount;
+        this.durationNanos = (long) (minutes * TimeUnit.MINUTES.toNanos(1));
+        this.opsPerSecond = Math.max(1, opsPerSecond);
+        this.port = port;
+        this.reportNanos = TimeUnit.SECONDS.toNanos(Math.max(1, reportSeconds));
+        parseMix(mix);
+        for (int i = 0; i < opCounts.length; i++) {
+            opCounts[i] = new LongAdder();
+        }
+
+        this.scheduler = new MusicFestivalScheduler(port);
+        scheduler.setReminderSink(batch -> remindersDelivered.add(batch.size()));
+        buildLineup(stageCount, days);
+        scheduler.startVoteFolding(200);
+        scheduler.startReminderDispatcher(this::festivalClock, 100);
+
+        this.background = Executors.newScheduledThreadPool(2, daemon("load-background"));
+        this.http = HttpClient.newBuilder()
+                .executor(Executors.newFixedThreadPool(2, daemon("load-client")))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        double minutes = args.length > 1 ? Double.parseDouble(args[1]) : 10;
+        int opsPerSecond = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+        int stageCount = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+        int days = args.length > 4 ? Integer.parseInt(args[4]) : 3;
+        String mix = args.length > 5 ? args[5] : DEFAULT_MIX;
+        int port = args.length > 6 ? Integer.parseInt(args[6]) : 8084;
+        int reportSeconds = args.length > 7 ? Integer.parseInt(args[7]) : 10;
+
+        // 每次操作都会产生 INFO / WARN 日志，压测时只保留错误，除非显式指定了级别
+        if (System.getProperty("festival.log.level") == null) {
+            AsyncLog.setLevel(Level.ERROR);
+        }
+        FestivalLoadGenerator generator = new FestivalLoadGenerator(clients, minutes, opsPerSecond, stageCount, days,
+                mix, port, reportSeconds);
+        generator.run();
+        System.exit(0);
+    }
+
+    private void run() throws InterruptedException {
+        try {
+            scheduler.getMetrics().startHttp(FestivalMetrics.DEFAULT_HTTP_PORT);
+        } catch (IOException e) {
+            System.out.println("⚠️ 指标端点未启动: " + e.getMessage());
+        }
+        AsyncLog.flush();
+        System.out.println("\n--- 🏋️ 合成负载: " + (booked.size() + idle.size()) + " 位艺人 (已排 " + booked.size() + " 场)，"
+                + stageNames.size() + " 个舞台，" + clientCount + " 个客户端，目标 " + opsPerSecond + " 次操作/秒，持续 "
+                + String.format(Locale.ROOT, "%.1f", durationNanos / 6e10) + " 分钟 (CPU 核数: "
+                + Runtime.getRuntime().availableProcessors() + ") ---");
+        System.out.println("操作比例: " + describeMix());
+
+        long connectStart = System.nanoTime();
+        connectAll();
+        System.out.printf(Locale.ROOT, "已连接 %d / %d 个客户端 (查询模式 %d 个)，用时 %.1f 秒，失败 %d 次%n",
+                connected.get(), clientCount, queryClients.size(),
+                (System.nanoTime() - connectStart) / 1e9, connectFailures.sum());
+
+        Report report = new Report();
+        background.scheduleAtFixedRate(report::print, reportNanos, reportNanos, TimeUnit.NANOSECONDS);
+        drive();
+        running = false;
+        background.shutdown();
+        background.awaitTermination(5, TimeUnit.SECONDS);
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(500)); // 等最后一批推送到达
+        report.printFinal();
+        scheduler.close();
+    }
+
+    // --- 合成阵容 ---
+
+    private void buildLineup(int stageCount, int days) {
+        List<Performance> lineup = new ArrayList<>();
+        List<Performance> candidates = new ArrayList<>();
+        for (int s = 0; s < stageCount; s++) {
+            String stage = String.format(Locale.ROOT, "舞台%02d", s + 1);
+            scheduler.addStage(stage);
+            stageNames.add(stage);
+            List<TimeSlot> slots = new ArrayList<>(days * SLOTS_PER_DAY);
+            for (int day = 1; day <= days; day++) {
+                for (int k = 0; k < SLOTS_PER_DAY; k++) {
+                    int start = TimeSlot.minuteOf(day, 12 + k, 0);
+                    TimeSlot slot = TimeSlot.ofMinutes(start, start + SET_MINUTES);
+                    slots.add(slot);
+                    candidates.add(new Performance(null, slot, stage));
+                }
+            }
+            stageSlots.put(stage, slots);
+        }
+
+        // 艺人数与时间段数相同：初始阵容占 80%，其余艺人留作增删演出时的替补
+        Collections.shuffle(candidates, random);
+        int filled = (int) (candidates.size() * INITIAL_FILL);
+        for (int i = 0; i < candidates.size(); i++) {
+            // 人气呈长尾分布：少数艺人人气很高
+            int popularity = (int) (100 * Math.pow(random.nextDouble(), 3)) + 1;
+            Artist artist = new Artist("艺人" + (i + 1), GENRES[random.nextInt(GENRES.length)], popularity, null, null);
+            if (i < filled) {
+                Performance slot = candidates.get(i);
+                lineup.add(new Performance(artist, slot.getTimeSlot(), slot.getStageName()));
+            } else {
+                idle.add(artist);
+            }
+        }
+        MusicFestivalScheduler.PlacementResult result = scheduler.addPerformances(lineup);
+        for (Performance performance : result.getAccepted()) {
+            booked.add(performance.getArtist());
+        }
+        for (Performance performance : result.getRejected().keySet()) {
+            idle.add(performance.getArtist());
+        }
+    }
+
+    private void parseMix(String mix) {
+        for (String part : mix.split(",")) {
+            String[] pair = part.trim().split("=");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("无法解析操作比例: " + part);
+            }
+            Op op = Op.valueOf(pair[0].trim().toUpperCase(Locale.ROOT));
+            int weight = Integer.parseInt(pair[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("操作比例不能为负数: " + part);
+            }
+            weights[op.ordinal()] = weight;
+        }
+        for (int weight : weights) {
+            totalWeight += weight;
+        }
+        if (totalWeight == 0) {
+            throw new IllegalArgumentException("操作比例全部为 0: " + mix);
+        }
+    }
+
+    private String describeMix() {
+        List<String> parts = new ArrayList<>();
+        for (Op op : Op.values()) {
+            parts.add(op.name().toLowerCase(Locale.ROOT) + "=" + weights[op.ordinal()]);
+        }
+        return String.join(",", parts);
+    }
+
+    // 音乐节时钟 (分钟)：从第一天 11:00 开始，按真实时间推进
+    private long festivalClock() {
+        return clockBase + (System.nanoTime() - clockStartNanos) / NANOS_PER_FESTIVAL_MINUTE;
+    }
+
+    // --- 驱动调度器 ---
+
+    // 按固定速率执行操作；落后超过 1 秒时放弃追赶，从当前时刻重新计时
+    private void drive() {
+        long interval = 1_000_000_000L / opsPerSecond;
+        long start = System.nanoTime();
+        long deadline = start + durationNanos;
+        long next = start;
+        while (System.nanoTime() < deadline) {
+            Op op = pick();
+            execute(op);
+            opCounts[op.ordinal()].increment();
+            next += interval;
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            } else if (-wait > 1_000_000_000L) {
+                behind.increment();
+                next = System.nanoTime();
+            }
+        }
+    }
+
+    private Op pick() {
+        int r = random.nextInt(totalWeight);
+        for (Op op : Op.values()) {
+            r -= weights[op.ordinal()];
+            if (r < 0) {
+                return op;
+            }
+        }
+        return Op.VOTE;
+    }
+
+    private void execute(Op op) {
+        boolean ok;
+        switch (op) {
+            case ADD:
+                ok = churn();
+                break;
+            case SWAP:
+                ok = swap();
+                break;
+            case VOTE:
+                ok = booked.size() > 0 && scheduler.vote(booked.random(random).getName(), 1 + random.nextInt(5));
+                break;
+            case REMINDER:
+                ok = booked.size() > 0 && scheduler.addFanReminder("粉丝" + random.nextInt(FANS),
+                        booked.random(random).getName(), festivalClock() + 5 + random.nextInt(120)) != null;
+                break;
+            default:
+                ok = query();
+                break;
+        }
+        if (!ok) {
+            rejected.increment();
+        }
+    }
+
+    /**
+     * 增删演出：舞台排满时 (或一半概率) 先撤下一场，再把一位替补艺人排进空出来的时间段，
+     * 否则排进一个空闲时间段。阵容规模因此保持稳定，长时间运行时内存不会因演出越来越多而上涨。
+     */
+    private boolean churn() {
+        String stage = stageNames.get(random.nextInt(stageNames.size()));
+        List<Performance> timeline = scheduler.getPerformances(stage);
+        List<TimeSlot> slots = stageSlots.get(stage);
+        TimeSlot slot;
+        if (!timeline.isEmpty() && (timeline.size() >= slots.size() || random.nextBoolean())) {
+            Performance victim = timeline.get(random.nextInt(timeline.size()));
+            if (!timed(() -> scheduler.removePerformance(victim))) {
+                return false;
+            }
+            booked.remove(victim.getArtist());
+            idle.add(victim.getArtist());
+            slot = victim.getTimeSlot();
+        } else {
+            Set<Integer> taken = new HashSet<>();
+            for (Performance performance : timeline) {
+                taken.add(performance.getStartMinute());
+            }
+            List<TimeSlot> free = new ArrayList<>();
+            for (TimeSlot candidate : slots) {
+                if (!taken.contains(candidate.getStartMinute())) {
+                    free.add(candidate);
+                }
+            }
+            slot = free.get(random.nextInt(free.size()));
+        }
+        if (idle.size() == 0) {
+            return false;
+        }
+        Artist artist = idle.random(random);
+        idle.remove(artist);
+        TimeSlot target = slot;
+        if (!timed(() -> scheduler.addPerformance(stage, artist, target))) {
+            idle.add(artist);
+            return false;
+        }
+        booked.add(artist);
+        return true;
+    }
+
+    private boolean swap() {
+        List<Performance> timeline = scheduler.getPerformances(stageNames.get(random.nextInt(stageNames.size())));
+        if (timeline.size() < 2) {
+            return false;
+        }
+        int i = random.nextInt(timeline.size());
+        int j = random.nextInt(timeline.size() - 1);
+        Performance first = timeline.get(i);
+        Performance second = timeline.get(j >= i ? j + 1 : j);
+        return timed(() -> scheduler.swapPerformance(first, second));
+    }
+
+    // 执行一次变更；恰好发布了一个增量时登记其版本号与调用开始时刻 (期间有其他线程发布时无法区分，不登记)
+    private boolean timed(BooleanSupplier mutation) {
+        long before = scheduler.getStreamVersion();
+        long start = System.nanoTime();
+        boolean ok = mutation.getAsBoolean();
+        long after = scheduler.getStreamVersion();
+        if (after == before + 1) {
+            publishedAt.put(after, start);
+        }
+        return ok;
+    }
+
+    // 随机挑一个查询模式的客户端发送查询；上一条查询还没发完的客户端跳过本次
+    private boolean query() {
+        if (queryClients.isEmpty()) {
+            return !scheduler.getHotArtistsRanking(10).isEmpty();
+        }
+        LoadClient client = queryClients.get(random.nextInt(queryClients.size()));
+        long id = ++querySequence;
+        String command;
+        switch (random.nextInt(4)) {
+            case 0:
+                command = "{\"type\":\"query\",\"query\":\"top\",\"k\":10,\"id\":" + id + "}";
+                break;
+            case 1:
+                command = booked.size() == 0 ? null
+                        : "{\"type\":\"query\",\"query\":\"artist\",\"artist\":\"" + booked.random(random).getName() + "\",\"id\":" + id + "}";
+                break;
+            case 2:
+                command = "{\"type\":\"query\",\"query\":\"genre\",\"genre\":\""
+                        + BASE_GENRES[random.nextInt(BASE_GENRES.length)] + "\",\"id\":" + id + "}";
+                break;
+            default:
+                List<TimeSlot> slots = stageSlots.get(stageNames.get(0));
+                int from = slots.get(random.nextInt(slots.size())).getStartMinute();
+                command = "{\"type\":\"query\",\"query\":\"window\",\"from\":" + from + ",\"to\":" + (from + 60)
+                        + ",\"id\":" + id + "}";
+                break;
+        }
+        if (command == null) {
+            return false;
+        }
+        queriesInFlight.put(id, System.nanoTime());
+        if (!client.send(command)) {
+            queriesInFlight.remove(id);
+            return false;
+        }
+        return true;
+    }
+
+    // --- 客户端 ---
+
+    // 分批建立连接，同时最多 CONNECT_CONCURRENCY 个握手在进行
+    private void connectAll() throws InterruptedException {
+        Semaphore permits = new Semaphore(CONNECT_CONCURRENCY);
+        for (int i = 0; i < clientCount; i++) {
+            LoadClient client = new LoadClient(i % QUERY_CLIENT_EVERY == QUERY_CLIENT_EVERY - 1);
+            permits.acquire();
+            client.connect().whenComplete((ws, error) -> permits.release());
+        }
+        permits.acquire(CONNECT_CONCURRENCY);
+    }
+
+    // 从 from 开始解析一个非负整数
+    private static long number(String text, int from) {
+        long value = 0;
+        for (int i = from; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * 一个回环 WebSocket 客户端 (JDK HttpClient，所有连接共享一个选择器线程)。
+     * 只拼接 batch 和查询结果帧，全量快照只计数、不保留内容；连接被断开后稍后自动重连。
+     */
+    private final class LoadClient implements WebSocket.Listener {
+        private static final int PEEK = 16;
+
+        private final boolean queryMode;
+        private volatile WebSocket socket;
+        private volatile CompletableFuture<WebSocket> lastSend = CompletableFuture.completedFuture(null);
+        private final StringBuilder frame = new StringBuilder();
+        private boolean decided;
+        private boolean skipping;
+
+        LoadClient(boolean queryMode) {
+            this.queryMode = queryMode;
+        }
+
+        CompletableFuture<WebSocket> connect() {
+            URI uri = URI.create("ws://127.0.0.1:" + port + (queryMode ? "/?mode=query" : "/"));
+            return http.newWebSocketBuilder().buildAsync(uri, this).whenComplete((ws, error) -> {
+                if (error != null) {
+                    connectFailures.increment();
+                    reconnectLater();
+                }
+            });
+        }
+
+        private void reconnectLater() {
+            if (running) {
+                try {
+                    background.schedule(this::connect, RECONNECT_DELAY_MS, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    // 已经停止
+                }
+            }
+        }
+
+        boolean send(String text) {
+            WebSocket ws = socket;
+            if (ws == null || !lastSend.isDone()) {
+                return false;
+            }
+            lastSend = ws.sendText(text, true);
+            return true;
+        }
+
+        @Override
+        public void onOpen(WebSocket webSocket) {
+            socket = webSocket;
+            connected.incrementAndGet();
+            if (queryMode) {
+                queryClients.add(this);
+            }
+            webSocket.request(1);
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            if (!skipping) {
+                frame.append(data);
+                if (!decided && (frame.length() >= PEEK || last)) {
+                    decided = true;
+                    frames.increment();
+                    String head = frame.substring(0, Math.min(PEEK, frame.length()));
+                    if (head.startsWith("{\"type\":\"snapsh")) {
+                        snapshots.increment();
+                    }
+                    skipping = !head.startsWith("{\"type\":\"batch\"") && !head.startsWith("{\"type\":\"result")
+                            && !head.startsWith("{\"type\":\"error\"");
+                }
+            }
+            if (last) {
+                if (!skipping) {
+                    handle(frame.toString(), System.nanoTime());
+                }
+                frame.setLength(0);
+                if (frame.capacity() > 64 * 1024) {
+                    frame.trimToSize();
+                }
+                decided = false;
+                skipping = false;
+            }
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onBinary(WebSocket webSocket, ByteBuffer data, boolean last) {
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+            closed();
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket webSocket, Throwable error) {
+            closed();
+        }
+
+        private void closed() {
+            if (socket == null) {
+                return;
+            }
+            socket = null;
+            queryClients.remove(this);
+            connected.decrementAndGet();
+            disconnects.increment();
+            frame.setLength(0);
+            decided = false;
+            skipping = false;
+            reconnectLater();
+        }
+
+        // batch 帧：逐个增量取版本号查发布时刻；查询结果：按请求编号取发出时刻
+        private void handle(String text, long now) {
+            if (text.charAt(9) == 'b') {
+                LatencyHistogram window = updateWindow;
+                int at = text.indexOf("\"deltas\":[");
+                while (at >= 0 && (at = text.indexOf("\"version\":", at)) >= 0) {
+                    at += 10;
+                    Long published = publishedAt.get(number(text, at));
+                    if (published == null) {
+                        untimedDeltas.increment();
+                        continue;
+                    }
+                    updateLatency.record(now - published);
+                    window.record(now - published);
+                }
+                return;
+            }
+            int at = text.indexOf("\"id\":");
+            if (at < 0) {
+                return;
+            }
+            Long sent = queriesInFlight.remove(number(text, at + 5));
+            if (sent != null) {
+                queryLatency.record(now - sent);
+                queryWindow.record(now - sent);
+            }
+            if (text.charAt(9) == 'e') {
+                queryErrors.increment();
+            }
+        }
+    }
+
+    // --- 报告 ---
+
+    /**
+     * 定期报告：本周期的吞吐量和延迟分位数、连接状态、堆与 GC；结束时输出全程汇总和调度器自身的指标。
+     */
+    private final class Report {
+        private final long start = System.nanoTime();
+        private long lastTime = start;
+        private long lastOps;
+        private long lastGcCount;
+        private long lastGcMillis;
+        private long firstLive = -1;
+        private long peakLive;
+        private long peakUsed;
+
+        void print() {
+            long now = System.nanoTime();
+            expire(now);
+            LatencyHistogram updates = updateWindow;
+            updateWindow = new LatencyHistogram(updates.getName(), updates.getHelp(), true);
+            LatencyHistogram queries = queryWindow;
+            queryWindow = new LatencyHistogram(queries.getName(), queries.getHelp(), true);
+
+            long ops = totalOps();
+            double rate = (ops - lastOps) / ((now - lastTime) / 1e9);
+            lastOps = ops;
+            lastTime = now;
+
+            long gcCount = 0;
+            long gcMillis = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                gcCount += Math.max(0, gc.getCollectionCount());
+                gcMillis += Math.max(0, gc.getCollectionTime());
+            }
+            long used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+            long live = liveHeap();
+            if (firstLive < 0 && live > 0) {
+                firstLive = live;
+            }
+            peakLive = Math.max(peakLive, live);
+            peakUsed = Math.max(peakUsed, used);
+
+            AsyncLog.flush();
+            System.out.printf(Locale.ROOT,
+                    "[%6ds] 操作 %.0f/s | 更新延迟 %s | 查询 %s | 连接 %d 断开 %d 快照 %d | 堆 %s 存活 %s GC %d 次 %d ms | 待投递提醒 %d%n",
+                    TimeUnit.NANOSECONDS.toSeconds(now - start), rate, percentiles(updates), percentiles(queries),
+                    connected.get(), disconnects.sum(), snapshots.sum(), megabytes(used), megabytes(live),
+                    gcCount - lastGcCount, gcMillis - lastGcMillis, scheduler.getPendingReminderCount());
+            lastGcCount = gcCount;
+            lastGcMillis = gcMillis;
+        }
+
+        void printFinal() {
+            long seconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start));
+            AsyncLog.flush();
+            System.out.println("\n--- 📋 压测汇总 (" + seconds + " 秒) ---");
+            for (Op op : Op.values()) {
+                System.out.printf(Locale.ROOT, "  %-9s %10d 次%n", op.name().toLowerCase(Locale.ROOT),
+                        opCounts[op.ordinal()].sum());
+            }
+            System.out.printf(Locale.ROOT, "  平均 %.0f 次操作/秒，未成功 %d 次，落后超过 1 秒 %d 次%n",
+                    (double) totalOps() / seconds, rejected.sum(), behind.sum());
+            System.out.println("  端到端更新延迟: " + percentiles(updateLatency)
+                    + " (未计时的增量 " + untimedDeltas.sum() + " 个)");
+            System.out.println("  查询往返延迟:   " + percentiles(queryLatency)
+                    + " (错误 " + queryErrors.sum() + "，超时 " + queryTimeouts.sum() + ")");
+            System.out.println("  收到帧 " + frames.sum() + "，其中全量快照 " + snapshots.sum()
+                    + "；断开 " + disconnects.sum() + " 次，连接失败 " + connectFailures.sum() + " 次");
+            System.out.println("  投递提醒 " + remindersDelivered.sum() + " 条，累计票数 " + scheduler.getTotalVotes());
+            System.out.println("  堆: 峰值 " + megabytes(peakUsed) + "，GC 后存活 首次 " + megabytes(Math.max(0, firstLive))
+                    + " / 峰值 " + megabytes(peakLive) + " / 结束 " + megabytes(liveHeap()));
+            System.out.println("  日志丢弃 " + AsyncLog.getDropped() + " 条");
+            System.out.println("📊 " + scheduler.getMetrics().summary());
+        }
+
+        // 清理过期的发布时刻和在途查询
+        private void expire(long now) {
+            publishedAt.values().removeIf(published -> now - published > RETENTION_NANOS);
+            int before = queriesInFlight.size();
+            queriesInFlight.values().removeIf(sent -> now - sent > RETENTION_NANOS);
+            queryTimeouts.add(before - queriesInFlight.size());
+        }
+
+        private long totalOps() {
+            long sum = 0;
+            for (LongAdder count : opCounts) {
+                sum += count.sum();
+            }
+            return sum;
+        }
+    }
+
+    private static String percentiles(LatencyHistogram histogram) {
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        if (snapshot.getTotal() == 0) {
+            return "n=0";
+        }
+        return String.format(Locale.ROOT, "n=%d p50=%s p99=%s p999=%s max=%s", snapshot.getTotal(),
+                millis(snapshot.valueAt(0.5)), millis(snapshot.valueAt(0.99)), millis(snapshot.valueAt(0.999)),
+                millis(histogram.getMax()));
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.2fms", nanos / 1e6);
+    }
+
+    private static String megabytes(long bytes) {
+        return String.format(Locale.ROOT, "%.0fMB", bytes / (1024.0 * 1024.0));
+    }
+
+    // 最近一次 GC 后各堆内存池仍占用的字节数之和
+    private static long liveHeap() {
+        long live = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getCollectionUsage() != null) {
+                live += pool.getCollectionUsage().getUsed();
+            }
+        }
+        return live;
+    }
+
+    private static ThreadFactory daemon(String prefix) {
+        AtomicInteger sequence = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + sequence.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * 可随机抽取的艺人集合 (只在驱动线程上使用)：数组 + 下标表，增删和随机抽取都是 O(1)。
+     */
+    private static final class ArtistPool {
+        private final List<Artist> artists = new ArrayList<>();
+        private final Map<String, Integer> positions = new HashMap<>();
+
+        void add(Artist artist) {
+            if (positions.putIfAbsent(artist.getName(), artists.size()) == null) {
+                artists.add(artist);
+            }
+        }
+
+        void remove(Artist artist) {
+            Integer index = positions.remove(artist.getName());
+            if (index == null) {
+                return;
+            }
+            Artist last = artists.remove(artists.size() - 1);
+            if (index < artists.size()) {
+                artists.set(index, last);
+                positions.put(last.getName(), index);
+            }
+        }
+
+        Artist random(Random random) {
+            return artists.get(random.nextInt(artists.size()));
+        }
+
+        int size() {
+            return artists.size();
+        }
+    }
+}
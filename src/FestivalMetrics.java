@@ -0,0 +1,239 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * FestivalMetrics.java
+ * 调度器与 WebSocket 服务器的运行指标：延迟直方图、计数器，以及注册的即时值 (连接数、积压字节等)。
+ * 直方图和计数器是预先创建好的字段，埋点处直接持有引用，记录时不查表、不分配对象。
+ *
+ * 两种查看方式：
+ *   startDump(periodMillis)  定期在控制台打印一行摘要
+ *   startHttp(port)          在本机端口提供文本格式的 /metrics (Prometheus 可直接抓取)，例如 curl http://127.0.0.1:9464/metrics
+ */
+public final class FestivalMetrics {
+
+    private static final AsyncLog LOG = AsyncLog.get("指标");
+
+    public static final int DEFAULT_HTTP_PORT = 9464;
+
+    // 导出顺序即注册顺序；必须先于下面的指标字段初始化
+    private final List<Metric> metrics = new CopyOnWriteArrayList<>();
+
+    // --- 直方图 (纳秒，导出为秒) ---
+    public final LatencyHistogram addPerformance = histogram("festival_add_performance_seconds",
+            "录入单场演出的耗时 (含等待写锁、冲突检测和增量发布)", true);
+    public final LatencyHistogram stateEncode = histogram("festival_state_encode_seconds",
+            "全量状态快照的编码耗时 (JSON 与二进制)", true);
+    public final LatencyHistogram broadcastFanout = histogram("festival_broadcast_fanout_seconds",
+            "一次广播 (含批次编码) 向所有连接写出帧的耗时", true);
+    public final LatencyHistogram reminderDelivery = histogram("festival_reminder_delivery_seconds",
+            "一批到期提醒交给投递出口的耗时", true);
+    // --- 直方图 (音乐节分钟) ---
+    public final LatencyHistogram reminderLag = histogram("festival_reminder_lag_minutes",
+            "提醒实际投递时间与设定时间之差 (音乐节分钟)", false);
+
+    // --- 计数器 ---
+    public final LongAdder performancesAdded = counter("festival_performances_added_total", "成功录入的演出场数");
+    public final LongAdder performancesRejected = counter("festival_performances_rejected_total", "因冲突被拒绝的录入次数");
+    public final LongAdder stateBytes = counter("festival_state_encoded_bytes_total", "全量状态快照编码的累计字节数");
+    public final LongAdder framesSent = counter("festival_frames_sent_total", "广播写出的帧数 (每个连接计一次)");
+    public final LongAdder remindersDelivered = counter("festival_reminders_delivered_total", "已投递的提醒条数");
+
+    private ScheduledExecutorService dumper;
+    private HttpServer http;
+    private ExecutorService httpThread;
+
+    private LatencyHistogram histogram(String name, String help, boolean nanos) {
+        LatencyHistogram histogram = new LatencyHistogram(name, help, nanos);
+        metrics.add(new Metric(name, help, histogram, null, null));
+        return histogram;
+    }
+
+    private LongAdder counter(String name, String help) {
+        LongAdder counter = new LongAdder();
+        metrics.add(new Metric(name, help, null, counter, null));
+        return counter;
+    }
+
+    /**
+     * 注册一个即时值 (连接数、待投递提醒数等)，导出时调用 value 读取。同名重复注册时替换旧的读取方式。
+     */
+    public void gauge(String name, String help, LongSupplier value) {
+        metrics.removeIf(metric -> metric.name.equals(name));
+        metrics.add(new Metric(name, help, null, null, value));
+    }
+
+    // --- 文本导出 ---
+
+    /**
+     * Prometheus 文本格式：直方图导出为 summary (p50 / p90 / p99 / p999 与 _sum、_count、_max)。
+     */
+    public String renderText() {
+        StringBuilder sb = new StringBuilder(4096);
+        for (Metric metric : metrics) {
+            sb.append("# HELP ").append(metric.name).append(' ').append(metric.help).append('\n');
+            if (metric.histogram != null) {
+                LatencyHistogram h = metric.histogram;
+                LatencyHistogram.Snapshot snapshot = h.snapshot();
+                double scale = h.isNanos() ? 1e-9 : 1;
+                sb.append("# TYPE ").append(metric.name).append(" summary\n");
+                for (double q : new double[]{0.5, 0.9, 0.99, 0.999}) {
+                    sb.append(metric.name).append("{quantile=\"").append(q).append("\"} ")
+                            .append(number(snapshot.valueAt(q) * scale)).append('\n');
+                }
+                sb.append(metric.name).append("_sum ").append(number(h.getSum() * scale)).append('\n');
+                sb.append(metric.name).append("_count ").append(h.getCount()).append('\n');
+                sb.append(metric.name).append("_max ").append(number(h.getMax() * scale)).append('\n');
+            } else if (metric.counter != null) {
+                sb.append("# TYPE ").append(metric.name).append(" counter\n");
+                sb.append(metric.name).append(' ').append(metric.counter.sum()).append('\n');
+            } else {
+                sb.append("# TYPE ").append(metric.name).append(" gauge\n");
+                sb.append(metric.name).append(' ').append(metric.gauge.getAsLong()).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String number(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    /**
+     * 控制台摘要：各直方图的次数、p50 / p99 / 最大值，计数器与即时值的当前值。
+     */
+    public String summary() {
+        List<String> parts = new ArrayList<>();
+        for (Metric metric : metrics) {
+            String name = metric.name.replaceFirst("^festival_", "");
+            if (metric.histogram != null) {
+                LatencyHistogram h = metric.histogram;
+                if (h.getCount() == 0) {
+                    continue;
+                }
+                LatencyHistogram.Snapshot snapshot = h.snapshot();
+                parts.add(name + " n=" + h.getCount()
+                        + " p50=" + format(snapshot.valueAt(0.5), h.isNanos())
+                        + " p99=" + format(snapshot.valueAt(0.99), h.isNanos())
+                        + " max=" + format(h.getMax(), h.isNanos()));
+            } else if (metric.counter != null) {
+                parts.add(name + "=" + metric.counter.sum());
+            } else {
+                parts.add(name + "=" + metric.gauge.getAsLong());
+            }
+        }
+        return String.join(" | ", parts);
+    }
+
+    private static String format(long value, boolean nanos) {
+        if (!nanos) {
+            return Long.toString(value);
+        }
+        if (value < 1_000) {
+            return value + "ns";
+        }
+        if (value < 1_000_000) {
+            return String.format(Locale.ROOT, "%.1fµs", value / 1e3);
+        }
+        if (value < 1_000_000_000) {
+            return String.format(Locale.ROOT, "%.1fms", value / 1e6);
+        }
+        return String.format(Locale.ROOT, "%.2fs", value / 1e9);
+    }
+
+    // --- 定期输出与抓取端点 ---
+
+    public synchronized void startDump(long periodMillis) {
+        if (dumper != null) {
+            return;
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        dumper.scheduleAtFixedRate(() -> LOG.info("📊 [运行指标] {}", summary()),
+                periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopDump() {
+        if (dumper != null) {
+            dumper.shutdown();
+            dumper = null;
+        }
+    }
+
+    /**
+     * 在本机 (127.0.0.1) 的 port 端口提供 /metrics，port 为 0 时随机分配，返回实际端口。
+     */
+    public synchronized int startHttp(int port) throws IOException {
+        if (http != null) {
+            return http.getAddress().getPort();
+        }
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", this::serve);
+        httpThread = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "metrics-http");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(httpThread);
+        server.start();
+        http = server;
+        LOG.info("📊 指标端点已启动: http://127.0.0.1:{}/metrics", server.getAddress().getPort());
+        return server.getAddress().getPort();
+    }
+
+    public synchronized void stopHttp() {
+        if (http != null) {
+            http.stop(0);
+            httpThread.shutdown();
+            http = null;
+        }
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        try {
+            byte[] body = renderText().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static final class Metric {
+        final String name;
+        final String help;
+        final LatencyHistogram histogram;
+        final LongAdder counter;
+        final LongSupplier gauge;
+
+        Metric(String name, String help, LatencyHistogram histogram, LongAdder counter, LongSupplier gauge) {
+            this.name = name;
+            this.help = help;
+            this.histogram = histogram;
+            this.counter = counter;
+            this.gauge = gauge;
+        }
+    }
+}
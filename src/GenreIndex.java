@@ -0,0 +1,230 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * GenreIndex.java
+ * 风格倒排索引：规范化后的风格词 -> 演出 id 位图。
+ * 风格字符串按 "/" 拆分 ("R&B/摇滚" 同时属于 "r&b" 和 "摇滚")，去掉首尾空白并统一小写。
+ * 位图按 4096 个 id 分块，没有在场演出的块不分配，占用随在场演出数而不是 id 序列增长；
+ * AND / OR 查询展开为 BitSet 后逐字做位运算。
+ *
+ * 本类的实例不可变，随 ScheduleSnapshot 一起发布，读线程不加锁；
+ * 调度器在写锁内通过 Writer 增量维护：每次增删只复制该风格词被改动的那一块和块索引，
+ * 提交快照时只替换变化的风格词所在的分片，风格词集合只在出现新词或词被删空时复制。
+ */
+public final class GenreIndex {
+
+    public static final GenreIndex EMPTY = new GenreIndex(Collections.emptyNavigableSet(), SnapshotMap.empty());
+
+    private final NavigableSet<String> tokens;
+    private final SnapshotMap<String, Posting> postings;
+
+    private GenreIndex(NavigableSet<String> tokens, SnapshotMap<String, Posting> postings) {
+        this.tokens = tokens;
+        this.postings = postings;
+    }
+
+    // 风格字符串拆分为规范化的风格词 (去重，保持原顺序)
+    public static List<String> tokenize(String genre) {
+        if (genre == null) {
+            return Collections.emptyList();
+        }
+        List<String> tokens = new ArrayList<>(2);
+        for (String part : genre.split("/")) {
+            String token = normalize(part);
+            if (!token.isEmpty() && !tokens.contains(token)) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    public static String normalize(String token) {
+        return token.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // 属于任一风格的演出 (OR)，返回新的位图
+    public BitSet anyOf(Collection<String> genres) {
+        BitSet result = new BitSet();
+        for (String genre : genres) {
+            Posting ids = postings.get(normalize(genre));
+            if (ids != null) {
+                result.or(ids.toBitSet());
+            }
+        }
+        return result;
+    }
+
+    // 同时属于全部风格的演出 (AND)，返回新的位图
+    public BitSet allOf(Collection<String> genres) {
+        BitSet result = null;
+        for (String genre : genres) {
+            Posting ids = postings.get(normalize(genre));
+            if (ids == null) {
+                return new BitSet();
+            }
+            if (result == null) {
+                result = ids.toBitSet();
+            } else {
+                result.and(ids.toBitSet());
+            }
+        }
+        return result == null ? new BitSet() : result;
+    }
+
+    // 风格词以 prefix 开头的演出 (例如 "r" 匹配 "r&b" 和 "rock")
+    public BitSet withPrefix(String prefix) {
+        String from = normalize(prefix);
+        BitSet result = new BitSet();
+        for (String token : tokens.subSet(from, true, from + Character.MAX_VALUE, false)) {
+            result.or(postings.get(token).toBitSet());
+        }
+        return result;
+    }
+
+    // 某风格的演出场数
+    public int count(String genre) {
+        Posting ids = postings.get(normalize(genre));
+        return ids == null ? 0 : ids.cardinality;
+    }
+
+    // 全部风格词，按字典序
+    public NavigableSet<String> tokens() {
+        return tokens;
+    }
+
+    /**
+     * 写入端：由调度器在写锁内维护各风格词的当前位图，freeze 时生成新的只读版本。
+     */
+    public static final class Writer {
+        private final Map<String, Posting> live = new HashMap<>();
+        private final Set<String> dirty = new HashSet<>();
+
+        public void add(Performance performance) {
+            for (String token : tokenize(performance.getArtist().getGenre())) {
+                live.put(token, live.getOrDefault(token, Posting.EMPTY).with(performance.getId()));
+                dirty.add(token);
+            }
+        }
+
+        public void remove(Performance performance) {
+            for (String token : tokenize(performance.getArtist().getGenre())) {
+                Posting ids = live.get(token);
+                if (ids != null) {
+                    ids = ids.without(performance.getId());
+                    if (ids.cardinality == 0) {
+                        live.remove(token);
+                    } else {
+                        live.put(token, ids);
+                    }
+                    dirty.add(token);
+                }
+            }
+        }
+
+        public boolean isDirty() {
+            return !dirty.isEmpty();
+        }
+
+        // 以 previous 为基础，只替换发生变化的风格词
+        public GenreIndex freeze(GenreIndex previous) {
+            if (dirty.isEmpty()) {
+                return previous;
+            }
+            Map<String, Posting> changes = new HashMap<>();
+            boolean tokensChanged = false;
+            for (String token : dirty) {
+                Posting ids = live.get(token);
+                changes.put(token, ids);
+                tokensChanged |= (ids == null) == previous.tokens.contains(token);
+            }
+            NavigableSet<String> tokens = previous.tokens;
+            if (tokensChanged) {
+                tokens = Collections.unmodifiableNavigableSet(new TreeSet<>(live.keySet()));
+            }
+            dirty.clear();
+            return new GenreIndex(tokens, previous.postings.with(changes));
+        }
+    }
+
+    /**
+     * 不可变的分块位图：第 b 块保存 id [b * 4096, (b + 1) * 4096) 的位，全空的块为 null。
+     * with / without 只复制被改动的块和块索引，其余块与旧版本共享。
+     */
+    private static final class Posting {
+        private static final int WORDS = 64; // 每块 64 个 long，即 4096 个 id
+        private static final int SHIFT = 12;
+        static final Posting EMPTY = new Posting(new long[0][], 0);
+
+        private final long[][] blocks;
+        final int cardinality;
+
+        private Posting(long[][] blocks, int cardinality) {
+            this.blocks = blocks;
+            this.cardinality = cardinality;
+        }
+
+        Posting with(int id) {
+            int b = id >>> SHIFT;
+            long[] block = b < blocks.length ? blocks[b] : null;
+            long bit = 1L << id;
+            int word = (id >>> 6) & (WORDS - 1);
+            if (block != null && (block[word] & bit) != 0) {
+                return this;
+            }
+            long[][] next = Arrays.copyOf(blocks, Math.max(blocks.length, b + 1));
+            next[b] = block == null ? new long[WORDS] : block.clone();
+            next[b][word] |= bit;
+            return new Posting(next, cardinality + 1);
+        }
+
+        Posting without(int id) {
+            int b = id >>> SHIFT;
+            long[] block = b < blocks.length ? blocks[b] : null;
+            long bit = 1L << id;
+            int word = (id >>> 6) & (WORDS - 1);
+            if (block == null || (block[word] & bit) == 0) {
+                return this;
+            }
+            long[] changed = block.clone();
+            changed[word] &= ~bit;
+            int length = blocks.length;
+            long[][] next = blocks.clone();
+            next[b] = isEmpty(changed) ? null : changed;
+            while (length > 0 && next[length - 1] == null) {
+                length--; // 尾部的空块一并去掉
+            }
+            return new Posting(length == next.length ? next : Arrays.copyOf(next, length), cardinality - 1);
+        }
+
+        BitSet toBitSet() {
+            long[] words = new long[blocks.length * WORDS];
+            for (int b = 0; b < blocks.length; b++) {
+                if (blocks[b] != null) {
+                    System.arraycopy(blocks[b], 0, words, b * WORDS, WORDS);
+                }
+            }
+            return BitSet.valueOf(words);
+        }
+
+        private static boolean isEmpty(long[] block) {
+            for (long word : block) {
+                if (word != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * InMemoryReminderSink.java
+ * 内存中的提醒出口：只记录收到的提醒，用于本地演示和压测，代替真实的推送服务。
+ */
+public class InMemoryReminderSink implements ReminderSink {
+    private final List<FanReminder> delivered = new ArrayList<>();
+    private long batches;
+
+    @Override
+    public synchronized void deliver(List<FanReminder> batch) {
+        delivered.addAll(batch);
+        batches++;
+        notifyAll();
+    }
+
+    public synchronized int size() {
+        return delivered.size();
+    }
+
+    public synchronized long getBatchCount() {
+        return batches;
+    }
+
+    // 取出并清空已收到的提醒
+    public synchronized List<FanReminder> drain() {
+        List<FanReminder> copy = new ArrayList<>(delivered);
+        delivered.clear();
+        return copy;
+    }
+
+    /**
+     * 等待累计收到至少 count 条提醒，超时返回 false。
+     */
+    public synchronized boolean await(int count, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (delivered.size() < count) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,138 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyHistogram.java
+ * HDR 风格的对数-线性直方图：每个 2 的幂区间再均分为 32 个子桶，任意取值的相对误差不超过 1/32 (约 3%)。
+ * 桶数固定 (1888 个 long)，record 只是几次原子自增，不分配对象，可以放在写锁内和推送线程的热路径上。
+ * 计数是累计的；读取时复制一份桶计数，与并发的 record 之间不要求严格一致。
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    // 最大的正 long 最高位为 62：(62 - SUB_BITS) * 32 + 63 是最后一个桶
+    private static final int BUCKETS = (62 - SUB_BITS) * SUB_BUCKETS + 2 * SUB_BUCKETS;
+
+    private final String name;
+    private final String help;
+    private final boolean nanos; // true: 取值为纳秒，导出为秒；false: 原样导出 (如音乐节分钟)
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public LatencyHistogram(String name, String help, boolean nanos) {
+        this.name = name;
+        this.help = help;
+        this.nanos = nanos;
+    }
+
+    // 记录一个取值，负数按 0 计
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(indexOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    // 记录从 startNanos (System.nanoTime) 到现在的耗时
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    // 桶内的最大取值：分位数按桶上界报告，只会略微高估，不会低估
+    static long highestValueOf(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long low = (long) (index - shift * SUB_BUCKETS) << shift;
+        return low + (1L << shift) - 1;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getHelp() {
+        return help;
+    }
+
+    public boolean isNanos() {
+        return nanos;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getSum() {
+        return sum.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    // 复制当前的桶计数，用于计算分位数
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            total += copy[i];
+        }
+        return new Snapshot(copy, total, max.get());
+    }
+
+    /**
+     * 某一时刻的桶计数副本。
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long total;
+        private final long max;
+
+        private Snapshot(long[] counts, long total, long max) {
+            this.counts = counts;
+            this.total = total;
+            this.max = max;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        // 分位数 (0 < quantile <= 1)，没有数据时返回 0
+        public long valueAt(double quantile) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValueOf(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,434 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * LineupImporter.java
+ * 从 CSV / JSON 阵容文件批量导入演出。
+ *
+ * 文件按行 (CSV) 或按对象 (JSON，使用 Gson 的流式 JsonReader) 逐条读取，不把整个文件读入内存；
+ * 每积累 BATCH_ROWS 行就校验字段并构建 Artist / TimeSlot / Performance。
+ * 全部读完后交给 MusicFestivalScheduler.addPerformances 一次提交：按舞台排序后一次扫描找出冲突，
+ * 时间轴、档期表和热度榜在同一次写锁内更新，前端只收到一条 addAll 增量。
+ * 字段错误和冲突都记入 Report，附带行号和原因。
+ *
+ * 字段 (CSV 表头不区分大小写、顺序任意；JSON 对象键同名)：
+ *   stage (可选，默认主舞台) | artist | genre | popularity | start | end | poster (可选) | audio (可选)
+ * start / end 接受 "14"、"20:30" 或 "D2 20:30" (见 TimeSlot.parseMinute)，结束时钟早于开始且未写天数时视为跨午夜。
+ * JSON 文件可以是对象数组，也可以是 {"performances": [...]}。
+ */
+public class LineupImporter {
+
+    private static final AsyncLog LOG = AsyncLog.get("导入");
+
+    public static final int BATCH_ROWS = 4096;
+
+    private static final String[] COLUMNS = {"stage", "artist", "genre", "popularity", "start", "end", "poster", "audio"};
+
+    // 被拒绝的一行：行号 (CSV 为文件行号，JSON 为第几个对象，从 1 开始)、艺人名和原因
+    public static final class RejectedRow {
+        private final long line;
+        private final String artist;
+        private final String reason;
+
+        RejectedRow(long line, String artist, String reason) {
+            this.line = line;
+            this.artist = artist;
+            this.reason = reason;
+        }
+
+        public long getLine() { return line; }
+        public String getArtist() { return artist; }
+        public String getReason() { return reason; }
+
+        @Override
+        public String toString() {
+            return "第 " + line + " 行" + (artist == null ? "" : " (" + artist + ")") + ": " + reason;
+        }
+    }
+
+    // 导入结果
+    public static final class Report {
+        private final List<Performance> accepted = new ArrayList<>();
+        private final List<RejectedRow> rejected = new ArrayList<>();
+        private long rows;
+        private long elapsedMillis;
+
+        public List<Performance> getAccepted() { return accepted; }
+        public List<RejectedRow> getRejected() { return rejected; }
+        public long getRows() { return rows; }
+        public long getElapsedMillis() { return elapsedMillis; }
+
+        @Override
+        public String toString() {
+            return String.format("共 %d 行，导入 %d 场，拒绝 %d 行，用时 %d ms",
+                    rows, accepted.size(), rejected.size(), elapsedMillis);
+        }
+    }
+
+    private final MusicFestivalScheduler scheduler;
+    private final boolean createStages;
+
+    // 本次导入中的状态
+    private final Map<String, Artist> artists = new HashMap<>();
+    private final List<Performance> candidates = new ArrayList<>();
+    private final Map<Performance, Long> sourceLines = new HashMap<>();
+    // 文件中出现、调度器里还没有的舞台，在 finish 中提交演出前才创建 (文件损坏时不留下空舞台)
+    private final Set<String> newStages = new LinkedHashSet<>();
+    private final List<Map<String, String>> pendingRows = new ArrayList<>(BATCH_ROWS);
+    private final List<Long> pendingLines = new ArrayList<>(BATCH_ROWS);
+    private Report report;
+    private long startNanos;
+
+    public LineupImporter(MusicFestivalScheduler scheduler) {
+        this(scheduler, true);
+    }
+
+    /**
+     * @param createStages 文件中出现不存在的舞台时是否自动创建；为 false 时该行被拒绝
+     */
+    public LineupImporter(MusicFestivalScheduler scheduler, boolean createStages) {
+        this.scheduler = scheduler;
+        this.createStages = createStages;
+    }
+
+    /**
+     * 按扩展名 (.json / 其余按 CSV) 导入文件。文件结构损坏时抛出 IOException，不会提交任何演出。
+     */
+    public Report importFile(Path file) throws IOException {
+        boolean json = file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".json");
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            Report result = json ? importJson(reader) : importCsv(reader);
+            LOG.info("📥 阵容导入完成 {}: {}", file.getFileName(), result);
+            return result;
+        }
+    }
+
+    // --- CSV ---
+
+    public synchronized Report importCsv(Reader source) throws IOException {
+        begin();
+        CsvReader csv = new CsvReader(source instanceof BufferedReader ? source : new BufferedReader(source));
+        List<String> header = csv.next();
+        if (header == null) {
+            return finish();
+        }
+        int[] columns = new int[COLUMNS.length];
+        for (int c = 0; c < COLUMNS.length; c++) {
+            columns[c] = -1;
+            for (int i = 0; i < header.size(); i++) {
+                if (COLUMNS[c].equalsIgnoreCase(header.get(i).trim())) {
+                    columns[c] = i;
+                }
+            }
+        }
+        if (columns[1] < 0 || columns[4] < 0 || columns[5] < 0) {
+            throw new IOException("CSV 表头缺少必需的列 artist / start / end: " + header);
+        }
+        List<String> record;
+        while (true) {
+            long line = csv.nextLine;
+            record = csv.next();
+            if (record == null) {
+                break;
+            }
+            if (record.size() == 1 && record.get(0).isBlank()) {
+                continue; // 空行
+            }
+            Map<String, String> row = new HashMap<>();
+            for (int c = 0; c < COLUMNS.length; c++) {
+                if (columns[c] >= 0 && columns[c] < record.size()) {
+                    row.put(COLUMNS[c], record.get(columns[c]));
+                }
+            }
+            accept(line, row);
+        }
+        return finish();
+    }
+
+    // 最小的 RFC 4180 读取器：逗号分隔，双引号包裹的字段可含逗号、换行和 "" 转义
+    private static final class CsvReader {
+        private final Reader in;
+        private long nextLine = 1; // 下一条记录起始的行号
+        private int peeked = -2;
+
+        CsvReader(Reader in) {
+            this.in = in;
+        }
+
+        private int read() throws IOException {
+            if (peeked != -2) {
+                int c = peeked;
+                peeked = -2;
+                return c;
+            }
+            return in.read();
+        }
+
+        List<String> next() throws IOException {
+            int c = read();
+            if (c == -1) {
+                return null;
+            }
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            while (true) {
+                if (quoted) {
+                    if (c == -1) {
+                        throw new IOException("CSV 第 " + nextLine + " 行起的引号字段没有结束");
+                    }
+                    if (c == '"') {
+                        int n = read();
+                        if (n == '"') {
+                            field.append('"');
+                        } else {
+                            quoted = false;
+                            c = n;
+                            continue;
+                        }
+                    } else {
+                        if (c == '\n') {
+                            nextLine++;
+                        }
+                        field.append((char) c);
+                    }
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\r' || c == '\n' || c == -1) {
+                    if (c == '\r') {
+                        int n = read();
+                        if (n != '\n') {
+                            peeked = n;
+                        }
+                    }
+                    if (c != -1) {
+                        nextLine++;
+                    }
+                    fields.add(field.toString());
+                    return fields;
+                } else if (c != '\uFEFF' || nextLine > 1 || !fields.isEmpty() || field.length() > 0) {
+                    field.append((char) c); // 文件开头的 BOM 忽略
+                }
+                c = read();
+            }
+        }
+    }
+
+    // --- JSON ---
+
+    public synchronized Report importJson(Reader source) throws IOException {
+        begin();
+        JsonReader json = new JsonReader(source);
+        try {
+            if (json.peek() == JsonToken.BEGIN_OBJECT) {
+                // {"performances": [...]}，其余字段忽略
+                json.beginObject();
+                while (json.hasNext()) {
+                    if ("performances".equals(json.nextName()) && json.peek() == JsonToken.BEGIN_ARRAY) {
+                        readJsonArray(json);
+                    } else {
+                        json.skipValue();
+                    }
+                }
+                json.endObject();
+            } else {
+                readJsonArray(json);
+            }
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("JSON 阵容文件格式错误: " + e.getMessage(), e);
+        }
+        return finish();
+    }
+
+    private void readJsonArray(JsonReader json) throws IOException {
+        json.beginArray();
+        long index = 0;
+        while (json.hasNext()) {
+            index++;
+            if (json.peek() != JsonToken.BEGIN_OBJECT) {
+                json.skipValue();
+                report.rows++;
+                reject(index, null, "不是 JSON 对象");
+                continue;
+            }
+            Map<String, String> row = new HashMap<>();
+            json.beginObject();
+            while (json.hasNext()) {
+                String name = json.nextName().toLowerCase(Locale.ROOT);
+                switch (json.peek()) {
+                    case STRING:
+                    case NUMBER:
+                        row.put(name, json.nextString());
+                        break;
+                    case NULL:
+                        json.nextNull();
+                        break;
+                    default:
+                        json.skipValue();
+                        row.put(name, null);
+                        row.put("#invalid", name);
+                }
+            }
+            json.endObject();
+            accept(index, row);
+        }
+        json.endArray();
+    }
+
+    // --- 校验与提交 ---
+
+    private void begin() {
+        report = new Report();
+        startNanos = System.nanoTime();
+        artists.clear();
+        candidates.clear();
+        sourceLines.clear();
+        newStages.clear();
+        pendingRows.clear();
+        pendingLines.clear();
+    }
+
+    private void accept(long line, Map<String, String> row) {
+        report.rows++;
+        pendingRows.add(row);
+        pendingLines.add(line);
+        if (pendingRows.size() >= BATCH_ROWS) {
+            buildBatch();
+        }
+    }
+
+    // 校验一批原始行并构建演出对象，原始字段随即释放
+    private void buildBatch() {
+        for (int i = 0; i < pendingRows.size(); i++) {
+            Map<String, String> row = pendingRows.get(i);
+            long line = pendingLines.get(i);
+            String name = trimmed(row.get("artist"));
+            if (row.containsKey("#invalid")) {
+                reject(line, name, "字段 " + row.get("#invalid") + " 的类型不正确");
+                continue;
+            }
+            if (name == null) {
+                reject(line, null, "缺少艺人名");
+                continue;
+            }
+            String startText = trimmed(row.get("start"));
+            String endText = trimmed(row.get("end"));
+            int start;
+            int end;
+            try {
+                start = TimeSlot.parseMinute(startText == null ? "" : startText);
+                end = TimeSlot.parseMinute(endText == null ? "" : endText);
+            } catch (IllegalArgumentException e) {
+                reject(line, name, "开始或结束时间格式错误 (应为 14、20:30 或 D2 20:30)");
+                continue;
+            }
+            if (end <= start && endText.indexOf(' ') < 0 && end + TimeSlot.MINUTES_PER_DAY > start) {
+                end += TimeSlot.MINUTES_PER_DAY; // 结束时钟早于开始且未写天数：跨午夜到次日
+            }
+            if (start >= end) {
+                reject(line, name, "结束时间必须晚于开始时间");
+                continue;
+            }
+            String popularityText = trimmed(row.get("popularity"));
+            Integer popularity = popularityText == null ? Integer.valueOf(0) : parseInt(popularityText);
+            if (popularity == null || popularity < 0) {
+                reject(line, name, "人气不是非负整数");
+                continue;
+            }
+            String stage = trimmed(row.get("stage"));
+            if (stage == null) {
+                stage = MusicFestivalScheduler.DEFAULT_STAGE;
+            }
+            if (!scheduler.getSnapshot().hasStage(stage) && !newStages.contains(stage)) {
+                if (!createStages) {
+                    reject(line, name, "舞台 " + stage + " 不存在");
+                    continue;
+                }
+                newStages.add(stage);
+            }
+            Artist artist = resolveArtist(name, trimmed(row.get("genre")), popularity,
+                    trimmed(row.get("poster")), trimmed(row.get("audio")));
+            Performance performance = new Performance(artist, TimeSlot.ofMinutes(start, end), stage);
+            candidates.add(performance);
+            sourceLines.put(performance, line);
+        }
+        pendingRows.clear();
+        pendingLines.clear();
+    }
+
+    // 同名艺人共用一个对象：已有排期的沿用调度器中的艺人，文件中首次出现的字段为准
+    private Artist resolveArtist(String name, String genre, int popularity, String poster, String audio) {
+        Artist artist = artists.get(name);
+        if (artist == null) {
+            Performance booked = scheduler.getPerformanceByArtistName(name);
+            artist = booked != null ? booked.getArtist() : new Artist(name, genre, popularity, poster, audio);
+            artists.put(name, artist);
+        }
+        return artist;
+    }
+
+    private Report finish() {
+        buildBatch();
+        Report result = report;
+        if (!candidates.isEmpty()) {
+            for (String stage : newStages) {
+                scheduler.addStage(stage);
+            }
+            MusicFestivalScheduler.PlacementResult placed = scheduler.addPerformances(candidates);
+            result.accepted.addAll(placed.getAccepted());
+            for (Map.Entry<Performance, String> entry : placed.getRejected().entrySet()) {
+                Performance p = entry.getKey();
+                result.rejected.add(new RejectedRow(sourceLines.get(p), p.getArtist().getName(), entry.getValue()));
+            }
+        }
+        result.rejected.sort((a, b) -> Long.compare(a.line, b.line));
+        result.elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        artists.clear();
+        candidates.clear();
+        sourceLines.clear();
+        newStages.clear();
+        report = null;
+        return result;
+    }
+
+    private void reject(long line, String artist, String reason) {
+        report.rejected.add(new RejectedRow(line, artist, reason));
+    }
+
+    private static String trimmed(String value) {
+        if (value == null) {
+            return null;
+        }
+        String t = value.trim();
+        return t.isEmpty() ? null : t;
+    }
+
+    private static Integer parseInt(String value) {
+        String t = trimmed(value);
+        if (t == null) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(t);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
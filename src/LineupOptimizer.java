@@ -0,0 +1,568 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * LineupOptimizer.java
+ * 自动排阵容：把一组艺人分配到各舞台的可用时间段上，兼顾 "避免头牌撞场" 与 "观众动线"。
+ *
+ * 目标函数 (越小越好) 由以下几项组成：
+ *   - 头牌撞场：两位头牌在不同舞台同时演出 (观众只能二选一)
+ *   - 头牌连演：同一舞台相邻两场都是头牌
+ *   - 风格重复：同一舞台相邻两场风格有交集 (风格按 "/" 拆分)
+ *   - 换场不足：相邻两场的间隔小于换场时间 (头牌前后需要更长的换场)
+ *   - 人流对冲：不同舞台同时段的两场人气都很高，人群集中在少数舞台
+ *   - 黄金时段 (奖励)：人气越高的艺人越靠近晚间黄金时段
+ *
+ * 求解方式：Fork/Join 线程池上的多路并行模拟退火。每个搜索线程从贪心初始解出发、用不同的随机种子
+ * 交换两个时间段上的艺人，只重新计算与这两个时间段相关的项 (增量估值)；
+ * 各线程定期把自己的最好解提交到全局最优，落后太多的线程从全局最优重新出发。
+ * 到达时间预算即停止，随时可以拿到当前最好的方案 (onImprovement 回调)。
+ */
+public class LineupOptimizer {
+
+    // 目标函数权重
+    private static final double HEADLINER_CLASH = 1000;
+    private static final double HEADLINER_BACK_TO_BACK = 200;
+    private static final double SHORT_CHANGEOVER = 100;
+    private static final double GENRE_REPEAT = 20;
+    private static final double DRAW_CLASH = 50;
+    private static final double PRIME_TIME = 30;
+
+    // 黄金时段中心 21:00，距离越远吸引力越低
+    private static final int PRIME_TIME_MINUTE = 21 * TimeSlot.MINUTES_PER_HOUR;
+
+    private static final int CHECK_INTERVAL = 1024;      // 每隔多少次迭代检查一次时间
+    private static final long SYNC_INTERVAL_NANOS = 50_000_000L; // 与全局最优同步的间隔
+    private static final long REPORT_INTERVAL_NANOS = 100_000_000L;
+
+    // 一个可用时间段
+    public static final class Slot {
+        private final String stage;
+        private final TimeSlot timeSlot;
+
+        public Slot(String stage, TimeSlot timeSlot) {
+            this.stage = stage;
+            this.timeSlot = timeSlot;
+        }
+
+        public String getStage() { return stage; }
+        public TimeSlot getTimeSlot() { return timeSlot; }
+    }
+
+    // 一次优化的结果
+    public static final class Plan {
+        private final List<Slot> slots;
+        private final List<Artist> assigned; // 与 slots 一一对应，null 表示空场
+        private final List<Artist> unassigned;
+        private final double cost;
+        private final int headlinerClashes;
+        private final int headlinerBackToBack;
+        private final int shortChangeovers;
+        private final int genreRepeats;
+        private final long iterations;
+        private final long elapsedMillis;
+
+        Plan(List<Slot> slots, List<Artist> assigned, List<Artist> unassigned, double cost, int[] violations,
+             long iterations, long elapsedMillis) {
+            this.slots = slots;
+            this.assigned = assigned;
+            this.unassigned = unassigned;
+            this.cost = cost;
+            this.headlinerClashes = violations[0];
+            this.headlinerBackToBack = violations[1];
+            this.shortChangeovers = violations[2];
+            this.genreRepeats = violations[3];
+            this.iterations = iterations;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public List<Slot> getSlots() { return slots; }
+        // 第 i 个时间段上的艺人，空场为 null
+        public Artist getArtistAt(int i) { return assigned.get(i); }
+        public List<Artist> getUnassigned() { return unassigned; }
+        public double getCost() { return cost; }
+        public int getHeadlinerClashes() { return headlinerClashes; }
+        public int getHeadlinerBackToBack() { return headlinerBackToBack; }
+        public int getShortChangeovers() { return shortChangeovers; }
+        public int getGenreRepeats() { return genreRepeats; }
+        public long getIterations() { return iterations; }
+        public long getElapsedMillis() { return elapsedMillis; }
+
+        // 按方案生成待录入的演出 (交给 MusicFestivalScheduler.addPerformances 一次提交)
+        public List<Performance> toPerformances() {
+            List<Performance> performances = new ArrayList<>();
+            for (int i = 0; i < slots.size(); i++) {
+                Artist artist = assigned.get(i);
+                if (artist != null) {
+                    performances.add(new Performance(artist, slots.get(i).getTimeSlot(), slots.get(i).getStage()));
+                }
+            }
+            return performances;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("代价 %.1f | 头牌撞场 %d，头牌连演 %d，换场不足 %d，风格重复 %d | 未安排 %d 位 | %d 次迭代，%d ms",
+                    cost, headlinerClashes, headlinerBackToBack, shortChangeovers, genreRepeats,
+                    unassigned.size(), iterations, elapsedMillis);
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private int headlinerCount = -1; // -1 表示取人气前 10%
+    private int minChangeoverMinutes = 15;
+    private int headlinerChangeoverMinutes = 30;
+
+    public LineupOptimizer(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    // 人气最高的前 count 位视为头牌
+    public void setHeadlinerCount(int count) {
+        this.headlinerCount = count;
+    }
+
+    // 相邻两场之间的最短换场时间 (分钟)，涉及头牌时使用 headlinerMinutes
+    public void setChangeover(int minutes, int headlinerMinutes) {
+        if (minutes < 0 || headlinerMinutes < 0) {
+            throw new IllegalArgumentException("换场时间不能为负数。");
+        }
+        this.minChangeoverMinutes = minutes;
+        this.headlinerChangeoverMinutes = headlinerMinutes;
+    }
+
+    public Plan optimize(List<Artist> artists, List<Slot> slots, long budgetMillis) {
+        return optimize(artists, slots, Artist::getPopularity, budgetMillis, null);
+    }
+
+    /**
+     * 在 budgetMillis 内求解，返回找到的最好方案。
+     * @param popularity    艺人人气来源 (调度器传入热度榜中的分数)
+     * @param onImprovement 全局最优改进时回调 (最多每 100ms 一次)，可为 null
+     */
+    public Plan optimize(List<Artist> artists, List<Slot> slots, ToIntFunction<Artist> popularity,
+                         long budgetMillis, Consumer<Plan> onImprovement) {
+        long begin = System.nanoTime();
+        Problem problem = new Problem(artists, slots, popularity);
+        Search search = new Search(problem, begin, begin + budgetMillis * 1_000_000L, onImprovement);
+        int[] initial = problem.greedy();
+        search.offer(initial, problem.cost(initial), 0);
+
+        int walkers = Math.max(1, pool.getParallelism());
+        pool.submit(() -> IntStream.range(0, walkers).parallel().forEach(w -> search.walk(w, initial))).join();
+        return search.bestPlan();
+    }
+
+    // --- 问题的预处理表示 ---
+
+    private final class Problem {
+        final List<Artist> artists;
+        final List<Slot> slots;
+        final int slotCount;     // 真实时间段数
+        final int positions;     // 真实时间段 + 候补位置 (艺人多于时间段时)
+        final double[] pop;      // 归一化人气 0..1
+        final boolean[] headliner;
+        final long[] genres;     // 风格位图
+        final int[] start;
+        final int[] end;
+        final double[] desirability;
+        final int[] prev;        // 同一舞台的前一个时间段，-1 表示没有
+        final int[] next;
+        final int[][] clashes;   // 其他舞台上同时段的时间段
+
+        Problem(List<Artist> artists, List<Slot> slots, ToIntFunction<Artist> popularity) {
+            this.artists = artists;
+            this.slots = slots;
+            int n = artists.size();
+            this.slotCount = slots.size();
+            this.positions = Math.max(slotCount, n);
+
+            // 人气、头牌、风格
+            int[] raw = new int[n];
+            int max = 1;
+            for (int i = 0; i < n; i++) {
+                raw[i] = Math.max(0, popularity.applyAsInt(artists.get(i)));
+                max = Math.max(max, raw[i]);
+            }
+            pop = new double[n];
+            for (int i = 0; i < n; i++) {
+                pop[i] = raw[i] / (double) max;
+            }
+            Integer[] byPopularity = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                byPopularity[i] = i;
+            }
+            Arrays.sort(byPopularity, (a, b) -> Integer.compare(raw[b], raw[a]));
+            headliner = new boolean[n];
+            int headliners = headlinerCount >= 0 ? Math.min(headlinerCount, n) : Math.max(1, n / 10);
+            for (int i = 0; i < headliners && i < n; i++) {
+                headliner[byPopularity[i]] = true;
+            }
+            genres = new long[n];
+            Map<String, Integer> tokens = new HashMap<>();
+            for (int i = 0; i < n; i++) {
+                String genre = artists.get(i).getGenre();
+                if (genre == null) {
+                    continue;
+                }
+                for (String token : genre.split("/")) {
+                    String t = token.trim();
+                    if (!t.isEmpty()) {
+                        int bit = tokens.computeIfAbsent(t, k -> tokens.size()) & 63;
+                        genres[i] |= 1L << bit;
+                    }
+                }
+            }
+
+            // 时间段：按舞台分组、按开始时间排序，找出前后相邻与跨舞台同时段
+            start = new int[slotCount];
+            end = new int[slotCount];
+            desirability = new double[slotCount];
+            prev = new int[slotCount];
+            next = new int[slotCount];
+            Arrays.fill(prev, -1);
+            Arrays.fill(next, -1);
+            Map<String, List<Integer>> byStage = new HashMap<>();
+            for (int s = 0; s < slotCount; s++) {
+                TimeSlot t = slots.get(s).getTimeSlot();
+                start[s] = t.getStartMinute();
+                end[s] = t.getEndMinute();
+                int middle = Math.floorMod((start[s] + end[s]) / 2, TimeSlot.MINUTES_PER_DAY);
+                int distance = Math.abs(middle - PRIME_TIME_MINUTE);
+                distance = Math.min(distance, TimeSlot.MINUTES_PER_DAY - distance);
+                desirability[s] = Math.max(0, 1 - distance / 720.0);
+                byStage.computeIfAbsent(slots.get(s).getStage(), k -> new ArrayList<>()).add(s);
+            }
+            for (List<Integer> stageSlots : byStage.values()) {
+                stageSlots.sort((a, b) -> Integer.compare(start[a], start[b]));
+                for (int k = 1; k < stageSlots.size(); k++) {
+                    int a = stageSlots.get(k - 1);
+                    int b = stageSlots.get(k);
+                    if (start[b] < end[a]) {
+                        throw new IllegalArgumentException("可用时间段在舞台 " + slots.get(a).getStage() + " 上重叠: "
+                                + slots.get(a).getTimeSlot() + " / " + slots.get(b).getTimeSlot());
+                    }
+                    next[a] = b;
+                    prev[b] = a;
+                }
+            }
+            // 跨舞台同时段：按开始时间扫描
+            Integer[] order = new Integer[slotCount];
+            for (int s = 0; s < slotCount; s++) {
+                order[s] = s;
+            }
+            Arrays.sort(order, (a, b) -> Integer.compare(start[a], start[b]));
+            List<List<Integer>> overlapping = new ArrayList<>(slotCount);
+            for (int s = 0; s < slotCount; s++) {
+                overlapping.add(new ArrayList<>());
+            }
+            for (int x = 0; x < slotCount; x++) {
+                int a = order[x];
+                for (int y = x + 1; y < slotCount && start[order[y]] < end[a]; y++) {
+                    int b = order[y];
+                    if (!slots.get(a).getStage().equals(slots.get(b).getStage())) {
+                        overlapping.get(a).add(b);
+                        overlapping.get(b).add(a);
+                    }
+                }
+            }
+            clashes = new int[slotCount][];
+            for (int s = 0; s < slotCount; s++) {
+                clashes[s] = overlapping.get(s).stream().mapToInt(Integer::intValue).toArray();
+            }
+        }
+
+        // 贪心初始解：人气高的艺人依次放入吸引力高的时间段
+        int[] greedy() {
+            int n = artists.size();
+            Integer[] byPop = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                byPop[i] = i;
+            }
+            Arrays.sort(byPop, (a, b) -> Double.compare(pop[b], pop[a]));
+            Integer[] bySlot = new Integer[slotCount];
+            for (int s = 0; s < slotCount; s++) {
+                bySlot[s] = s;
+            }
+            Arrays.sort(bySlot, (a, b) -> Double.compare(desirability[b], desirability[a]));
+            int[] at = new int[positions];
+            Arrays.fill(at, -1);
+            for (int i = 0; i < n; i++) {
+                at[i < slotCount ? bySlot[i] : i] = byPop[i];
+            }
+            return at;
+        }
+
+        // 单个时间段的一元项 (黄金时段奖励)
+        double unary(int s, int a) {
+            return a < 0 || s >= slotCount ? 0 : -PRIME_TIME * pop[a] * desirability[s];
+        }
+
+        // 同一舞台相邻两场 (s 在前，t 在后)
+        double adjacent(int s, int t, int[] at) {
+            int a = at[s];
+            int b = at[t];
+            if (a < 0 || b < 0) {
+                return 0;
+            }
+            double cost = 0;
+            boolean headliners = headliner[a] | headliner[b];
+            if (headliner[a] & headliner[b]) {
+                cost += HEADLINER_BACK_TO_BACK;
+            }
+            if (start[t] - end[s] < (headliners ? headlinerChangeoverMinutes : minChangeoverMinutes)) {
+                cost += SHORT_CHANGEOVER;
+            }
+            if ((genres[a] & genres[b]) != 0) {
+                cost += GENRE_REPEAT;
+            }
+            return cost;
+        }
+
+        // 不同舞台同时段的两场
+        double clash(int s, int t, int[] at) {
+            int a = at[s];
+            int b = at[t];
+            if (a < 0 || b < 0) {
+                return 0;
+            }
+            return DRAW_CLASH * pop[a] * pop[b] + (headliner[a] & headliner[b] ? HEADLINER_CLASH : 0);
+        }
+
+        // 与时间段 s 有关的全部项
+        double touching(int s, int[] at) {
+            if (s >= slotCount) {
+                return 0;
+            }
+            double cost = unary(s, at[s]);
+            if (prev[s] >= 0) {
+                cost += adjacent(prev[s], s, at);
+            }
+            if (next[s] >= 0) {
+                cost += adjacent(s, next[s], at);
+            }
+            for (int t : clashes[s]) {
+                cost += clash(s, t, at);
+            }
+            return cost;
+        }
+
+        // s 与 t 之间的二元项 (两者无关时为 0)，用于扣除 touching(s) + touching(t) 的重复计算
+        double between(int s, int t, int[] at) {
+            if (s >= slotCount || t >= slotCount) {
+                return 0;
+            }
+            if (next[s] == t) {
+                return adjacent(s, t, at);
+            }
+            if (prev[s] == t) {
+                return adjacent(t, s, at);
+            }
+            for (int c : clashes[s]) {
+                if (c == t) {
+                    return clash(s, t, at);
+                }
+            }
+            return 0;
+        }
+
+        // 交换 s、t 上的艺人引起的代价变化 (调用后 at 保持不变)
+        double swapDelta(int s, int t, int[] at) {
+            double before = touching(s, at) + touching(t, at) - between(s, t, at);
+            swap(at, s, t);
+            double after = touching(s, at) + touching(t, at) - between(s, t, at);
+            swap(at, s, t);
+            return after - before;
+        }
+
+        double cost(int[] at) {
+            double cost = 0;
+            for (int s = 0; s < slotCount; s++) {
+                cost += unary(s, at[s]);
+                if (next[s] >= 0) {
+                    cost += adjacent(s, next[s], at);
+                }
+                for (int t : clashes[s]) {
+                    if (t > s) {
+                        cost += clash(s, t, at);
+                    }
+                }
+            }
+            return cost;
+        }
+
+        // 违反约束的次数：头牌撞场、头牌连演、换场不足、风格重复
+        int[] violations(int[] at) {
+            int[] v = new int[4];
+            for (int s = 0; s < slotCount; s++) {
+                int a = at[s];
+                if (a < 0) {
+                    continue;
+                }
+                int t = next[s];
+                if (t >= 0 && at[t] >= 0) {
+                    int b = at[t];
+                    if (headliner[a] && headliner[b]) {
+                        v[1]++;
+                    }
+                    boolean headliners = headliner[a] || headliner[b];
+                    if (start[t] - end[s] < (headliners ? headlinerChangeoverMinutes : minChangeoverMinutes)) {
+                        v[2]++;
+                    }
+                    if ((genres[a] & genres[b]) != 0) {
+                        v[3]++;
+                    }
+                }
+                for (int c : clashes[s]) {
+                    if (c > s && at[c] >= 0 && headliner[a] && headliner[at[c]]) {
+                        v[0]++;
+                    }
+                }
+            }
+            return v;
+        }
+    }
+
+    private static void swap(int[] at, int s, int t) {
+        int tmp = at[s];
+        at[s] = at[t];
+        at[t] = tmp;
+    }
+
+    // --- 并行搜索 ---
+
+    private final class Search {
+        final Problem problem;
+        final long begin;
+        final long deadline;
+        final Consumer<Plan> onImprovement;
+
+        // 全局最优，由 this 保护
+        private int[] best;
+        private double bestCost = Double.MAX_VALUE;
+        private long iterations;
+        private long lastReport;
+
+        Search(Problem problem, long begin, long deadline, Consumer<Plan> onImprovement) {
+            this.problem = problem;
+            this.begin = begin;
+            this.deadline = deadline;
+            this.onImprovement = onImprovement;
+        }
+
+        // 提交一个解，返回当前全局最优代价
+        synchronized double offer(int[] at, double cost, long walked) {
+            iterations += walked;
+            if (cost < bestCost - 1e-9) {
+                best = at.clone();
+                bestCost = cost;
+                long now = System.nanoTime();
+                if (onImprovement != null && now - lastReport >= REPORT_INTERVAL_NANOS) {
+                    lastReport = now;
+                    onImprovement.accept(toPlan(best, bestCost));
+                }
+            }
+            return bestCost;
+        }
+
+        synchronized int[] snapshot() {
+            return best.clone();
+        }
+
+        synchronized Plan bestPlan() {
+            return toPlan(best, problem.cost(best));
+        }
+
+        private Plan toPlan(int[] at, double cost) {
+            List<Artist> assigned = new ArrayList<>(problem.slotCount);
+            boolean[] placed = new boolean[problem.artists.size()];
+            for (int s = 0; s < problem.slotCount; s++) {
+                assigned.add(at[s] < 0 ? null : problem.artists.get(at[s]));
+                if (at[s] >= 0) {
+                    placed[at[s]] = true;
+                }
+            }
+            List<Artist> unassigned = new ArrayList<>();
+            for (int i = 0; i < placed.length; i++) {
+                if (!placed[i]) {
+                    unassigned.add(problem.artists.get(i));
+                }
+            }
+            return new Plan(Collections.unmodifiableList(problem.slots), Collections.unmodifiableList(assigned),
+                    unassigned, cost, problem.violations(at), iterations, (System.nanoTime() - begin) / 1_000_000);
+        }
+
+        // 单个搜索线程：模拟退火，温度随已用时间按几何级数下降
+        void walk(int walker, int[] initial) {
+            int positions = problem.positions;
+            if (positions < 2) {
+                return;
+            }
+            Random random = new Random(31L * walker + 17);
+            int[] at = initial.clone();
+            // 第 0 号线程从贪心解出发，其余线程先随机打乱一部分，增加多样性
+            for (int k = 0; walker > 0 && k < positions; k++) {
+                swap(at, random.nextInt(positions), random.nextInt(positions));
+            }
+            double cost = problem.cost(at);
+            double localBest = cost;
+
+            // 初始温度：随机交换的平均代价变化
+            double sample = 0;
+            for (int k = 0; k < 200; k++) {
+                sample += Math.abs(problem.swapDelta(random.nextInt(positions), random.nextInt(positions), at));
+            }
+            double t0 = Math.max(1e-3, sample / 200);
+            double tEnd = t0 * 1e-3;
+            double temperature = t0;
+
+            long walked = 0;
+            long nextSync = System.nanoTime() + SYNC_INTERVAL_NANOS;
+            while (true) {
+                for (int k = 0; k < CHECK_INTERVAL; k++) {
+                    int s = random.nextInt(positions);
+                    int t = random.nextInt(positions);
+                    if (s == t || (at[s] < 0 && at[t] < 0)) {
+                        continue;
+                    }
+                    double delta = problem.swapDelta(s, t, at);
+                    if (delta <= 0 || random.nextDouble() < Math.exp(-delta / temperature)) {
+                        swap(at, s, t);
+                        cost += delta;
+                    }
+                }
+                walked += CHECK_INTERVAL;
+                long now = System.nanoTime();
+                if (now >= deadline) {
+                    offer(at, problem.cost(at), walked);
+                    return;
+                }
+                double progress = (now - begin) / (double) (deadline - begin);
+                temperature = t0 * Math.pow(tEnd / t0, progress);
+                if (cost < localBest - 1e-9 || now >= nextSync) {
+                    cost = problem.cost(at); // 定期重算，消除浮点累积误差
+                    localBest = Math.min(localBest, cost);
+                    double global = offer(at, cost, walked);
+                    walked = 0;
+                    if (now >= nextSync) {
+                        nextSync = now + SYNC_INTERVAL_NANOS;
+                        // 落后全局最优较多时从全局最优重新出发
+                        if (cost > global + t0 && random.nextInt(4) == 0) {
+                            at = snapshot();
+                            cost = global;
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
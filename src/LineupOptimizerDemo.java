@@ -0,0 +1,67 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * LineupOptimizerDemo.java
+ * 自动排阵容演示：随机生成若干艺人和多舞台、多天的可用时间段，在时间预算内求解，
+ * 打印搜索过程中不断改进的方案，最后把方案写入调度器。
+ *
+ * 用法: java LineupOptimizerDemo [艺人数, 默认 500] [舞台数, 默认 8] [时间预算毫秒, 默认 3000] [端口, 默认 8082]
+ */
+public class LineupOptimizerDemo {
+
+    private static final String[] GENRES = {"摇滚", "流行", "电子", "民谣", "嘻哈", "爵士", "金属", "说唱",
+            "流行/电子", "摇滚/民谣", "嘻哈/说唱", "爵士/流行", "电子/嘻哈", "金属/摇滚"};
+    private static final int SLOTS_PER_DAY = 9;   // 每个舞台每天 9 场，12:00 开始
+    private static final int SET_MINUTES = 45;
+    private static final int[] GAPS = {15, 30, 45}; // 相邻两场的间隔轮流取值
+
+    public static void main(String[] args) {
+        int acts = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int stageCount = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        long budgetMillis = args.length > 2 ? Long.parseLong(args[2]) : 3000;
+        int port = args.length > 3 ? Integer.parseInt(args[3]) : 8082;
+
+        Random random = new Random(2024);
+        List<Artist> artists = new ArrayList<>(acts);
+        for (int i = 0; i < acts; i++) {
+            // 人气呈长尾分布：少数艺人人气很高
+            int popularity = (int) (100 * Math.pow(random.nextDouble(), 3)) + 1;
+            artists.add(new Artist("艺人" + (i + 1), GENRES[random.nextInt(GENRES.length)], popularity, null, null));
+        }
+
+        int days = (acts + stageCount * SLOTS_PER_DAY - 1) / (stageCount * SLOTS_PER_DAY);
+        List<LineupOptimizer.Slot> slots = new ArrayList<>();
+        for (int s = 0; s < stageCount; s++) {
+            String stage = "舞台" + (char) ('A' + s);
+            for (int day = 1; day <= days; day++) {
+                int start = TimeSlot.minuteOf(day, 12, s * 5); // 各舞台错开几分钟开场
+                for (int k = 0; k < SLOTS_PER_DAY; k++) {
+                    slots.add(new LineupOptimizer.Slot(stage, TimeSlot.ofMinutes(start, start + SET_MINUTES)));
+                    start += SET_MINUTES + GAPS[(k + s) % GAPS.length];
+                }
+            }
+        }
+
+        MusicFestivalScheduler scheduler = new MusicFestivalScheduler(port);
+        AsyncLog.flush();
+        System.out.println("\n--- 🧩 自动排阵容: " + acts + " 位艺人，" + stageCount + " 个舞台，" + days + " 天，"
+                + slots.size() + " 个时间段，预算 " + budgetMillis + " ms (CPU 核数: "
+                + Runtime.getRuntime().availableProcessors() + ") ---");
+        LineupOptimizer.Plan plan = scheduler.planLineup(artists, slots, budgetMillis,
+                improved -> System.out.println("  ⏱️ " + improved));
+        System.out.println("✨ 最终方案: " + plan);
+
+        MusicFestivalScheduler.PlacementResult result = scheduler.applyLineup(plan);
+        AsyncLog.flush();
+        System.out.println("已写入 " + result.getAccepted().size() + " 场演出，" + scheduler.getStages().size() + " 个舞台");
+        System.out.println("--- 🎤 头牌安排 (人气 Top 5) ---");
+        for (Artist artist : scheduler.getHotArtistsRanking(5)) {
+            Performance p = scheduler.getPerformanceByArtistName(artist.getName());
+            System.out.printf("  %s (人气 %d, %s): %s %s%n", artist.getName(), artist.getPopularity(), artist.getGenre(),
+                    p.getStageName(), p.getTimeSlot());
+        }
+        System.exit(0);
+    }
+}
@@ -1,3 +1,5 @@
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
 
 /**
@@ -6,9 +8,15 @@ import java.util.List;
  */
 public class MainApp {
 
+    // 演示段落标题：先等调度器的异步日志写完，保证输出顺序
+    private static void header(String title) {
+        AsyncLog.flush();
+        System.out.println("\n--- " + title + " ---");
+    }
+
     // 打印时间轴的辅助方法
     private static void printTimeline(DoublyLinkedList timeline) {
-        System.out.println("\n--- 🎼 演出时间轴 (双向链表) ---");
+        header("🎼 演出时间轴 (双向链表)");
         List<Performance> performances = timeline.getTimeline();
         if (performances.isEmpty()) {
             System.out.println("时间轴为空。");
@@ -24,6 +32,12 @@ public class MainApp {
         // 1. 初始化调度器 (启动 WebSocket 端口 8080)
     System.out.println(">>> 系统启动中...");
     MusicFestivalScheduler scheduler = new MusicFestivalScheduler(8080);
+    // 运行指标抓取端点：curl http://127.0.0.1:9464/metrics
+    try {
+        scheduler.getMetrics().startHttp(FestivalMetrics.DEFAULT_HTTP_PORT);
+    } catch (IOException e) {
+        System.err.println("⚠️ 指标端点启动失败: " + e.getMessage());
+    }
     
     System.out.println("\n🌐 提示: 请在浏览器打开 index.html 查看 3D 可视化效果。\n");
 
@@ -49,7 +63,8 @@ public class MainApp {
     TimeSlot slot6 = new TimeSlot(21, 22); // 21:00-22:00
     TimeSlot slot7 = new TimeSlot(22, 23); // 22:00-23:00
 
-    // 录入演出，注意排期
+    // 录入演出，注意排期 (批量录入：整批只向前端推送一帧)
+    scheduler.beginBatch();
     scheduler.addPerformance(artistA, slot1); // Beyond (摇滚)
     scheduler.addPerformance(artistG, slot2); // 陶喆 (R&B/摇滚)
     scheduler.addPerformance(artistF, slot3); // 韩红 (民歌/流行)
@@ -57,51 +72,84 @@ public class MainApp {
     scheduler.addPerformance(artistC, slot5); // 泰勒斯威夫特 (流行)
     scheduler.addPerformance(artistE, slot6); // 林俊杰 (流行/抒情)
     scheduler.addPerformance(artistD, slot7); // 方大同 (R&B/灵魂乐)
+    scheduler.commitBatch();
 
 
         // --- 3. 冲突检测演示 ---
-        System.out.println("\n--- ⚠️ 冲突检测演示 ---");
+        header("⚠️ 冲突检测演示");
         scheduler.addPerformance(new Artist("NewBand", "摇滚", 60, null, null), new TimeSlot(15, 17));
 
         printTimeline(scheduler.getTimeline());
 
+        // --- 3.1 多舞台演示：不同舞台可同时段演出，但同一艺人不能分身 ---
+        header("🎪 多舞台排期演示");
+        scheduler.addStage("森林舞台");
+        scheduler.addPerformance("森林舞台", new Artist("NewBand", "摇滚", 60, null, null), new TimeSlot(15, 17));
+        scheduler.addPerformance("森林舞台", artistB, new TimeSlot(19, 20)); // 周杰伦 18-20 已在主舞台
+        // 分钟精度与跨午夜：20:30 开始 45 分钟；23:30 开始持续到第 2 天 01:00
+        scheduler.addPerformance("森林舞台", new Artist("DJ_Elec", "电子", 80, null, null), TimeSlot.of(1, 20, 30, 45));
+        scheduler.addPerformance("森林舞台", new Artist("午夜乐队", "摇滚", 70, null, null), TimeSlot.of(1, 23, 30, 90));
+
+        // --- 3.2 阵容文件批量导入 (可选)：java MainApp lineup.csv ---
+        if (args.length > 0) {
+            header("📥 阵容文件批量导入");
+            try {
+                LineupImporter.Report report = new LineupImporter(scheduler).importFile(Path.of(args[0]));
+                for (LineupImporter.RejectedRow row : report.getRejected()) {
+                    System.out.println("  ⚠️ " + row);
+                }
+            } catch (IOException e) {
+                System.err.println("❌ 导入失败: " + e.getMessage());
+            }
+        }
+
         // --- 4. 艺人风格快速匹配 (哈希表) ---
-        System.out.println("\n--- 🔍 艺人特长风格快速匹配 ---");
+        header("🔍 艺人特长风格快速匹配");
         System.out.println("DJ_Elec 的风格: " + scheduler.findArtistGenre("DJ_Elec"));
         System.out.println("NonExist 的风格: " + scheduler.findArtistGenre("NonExist"));
 
         // --- 5. 人气热度榜 (优先队列) ---
-        System.out.println("\n--- 🏆 人气艺人热度榜 (Top 2) ---");
+        header("🏆 人气艺人热度榜 (Top 2)");
         List<Artist> top2 = scheduler.getHotArtistsRanking(2);
         for (int i = 0; i < top2.size(); i++) {
             System.out.printf("  Top %d: %s\n", i + 1, top2.get(i).toString());
         }
 
         // --- 6. 临时调换 (双向链表) ---
-        System.out.println("\n--- 🔄 临时调换演示 (RockStar <-> IndieBoy) ---");
-        Performance p1 = scheduler.getPerformanceByArtistName("RockStar");
-        Performance p2 = scheduler.getPerformanceByArtistName("IndieBoy");
+        header("🔄 临时调换演示 (韩红 <-> 泰勒斯威夫特)");
+        Performance p1 = scheduler.getPerformanceByArtistName("韩红");
+        Performance p2 = scheduler.getPerformanceByArtistName("泰勒斯威夫特");
         
         if (p1 != null && p2 != null) {
-            scheduler.getTimeline().swapPerformance(p1, p2);
-            // 手动触发广播，更新前端
-            scheduler.broadcastCurrentState();
+            // 链表节点原地交换，调度器会自动推送 swap 增量给前端
+            scheduler.swapPerformance(p1, p2);
         } else {
             System.out.println("找不到指定的演出，无法调换。");
         }
 
         printTimeline(scheduler.getTimeline());
 
+        // 前后挪动：把 DJ_Elec 挪到森林舞台 NewBand 之前，留出 15 分钟换场
+        Performance dj = scheduler.getPerformanceByArtistName("DJ_Elec");
+        Performance newBand = scheduler.getPerformanceByArtistName("NewBand");
+        if (dj != null && newBand != null && dj.getStageName().equals(newBand.getStageName())) {
+            scheduler.movePerformanceBefore(dj, newBand, 15);
+        }
+        printTimeline(scheduler.getStage("森林舞台").getTimeline());
+
         // --- 7. 粉丝预约提醒 (优先队列) ---
-        System.out.println("\n--- 🔔 粉丝预约提醒演示 ---");
+        header("🔔 粉丝预约提醒演示");
         
         // 设置提醒
-        scheduler.addFanReminder("Fan_001", "RockStar", 13); // 13点提醒
-        scheduler.addFanReminder("Fan_002", "DJ_Elec", 15);  // 15点提醒
-        scheduler.addFanReminder("Fan_003", "PopQueen", 21); // 21点提醒
+        scheduler.addFanReminder("Fan_001", "RockStar", TimeSlot.minuteOf(1, 13, 0)); // 13点提醒
+        scheduler.addFanReminder("Fan_002", "DJ_Elec", TimeSlot.minuteOf(1, 15, 0));  // 15点提醒
+        scheduler.addFanReminder("Fan_003", "PopQueen", TimeSlot.minuteOf(1, 21, 0)); // 21点提醒
 
         // 模拟时间推移
-        scheduler.processReminders(13); // 当前时间 13:00
-        scheduler.processReminders(16); // 当前时间 16:00
+        scheduler.processReminders(TimeSlot.minuteOf(1, 13, 0)); // 当前时间 13:00
+        scheduler.processReminders(TimeSlot.minuteOf(1, 16, 0)); // 当前时间 16:00
+
+        AsyncLog.flush();
+        System.out.println("\n📊 [运行指标] " + scheduler.getMetrics().summary());
     }
 }
@@ -1,21 +1,76 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
 import com.google.gson.Gson; 
 
 /**
  * MusicFestivalScheduler.java
  * 主调度系统，封装所有数据结构和核心逻辑。
+ *
+ * 并发模型：所有写操作经由同一把写锁串行执行，每次变更结束时发布一个不可变的 ScheduleSnapshot；
+ * 查询 (艺人风格、档期、人气榜、前端状态) 只读取最新快照，不加锁，也不会与写线程相互阻塞。
  */
-public class MusicFestivalScheduler {
+public class MusicFestivalScheduler implements AutoCloseable {
+    // 默认舞台名称 (单舞台 API 使用)
+    public static final String DEFAULT_STAGE = "主舞台";
+    // 批量录入超过该场数时推送全量快照代替 addAll 增量
+    static final int BULK_SNAPSHOT_THRESHOLD = 2048;
+
+    private static final AsyncLog LOG = AsyncLog.get("调度器");
+    private static final AsyncLog REMINDER_LOG = AsyncLog.get("提醒");
+
     // 数据结构
-    private final DoublyLinkedList timeline; 
-    private final PriorityQueue<Artist> hotArtists; 
+    private final Map<String, Stage> stages; // 舞台名 -> 舞台 (各自独立的时间轴)
+    private final DoublyLinkedList timeline; // 默认舞台的时间轴
+    private final PopularityLeaderboard leaderboard; // 人气排行榜 (跳表，按艺人 id 索引)
+    private final VoteAggregator votes; // 粉丝实时投票的分段计数器
     private final Map<String, Performance> artistSchedule; 
-    private final PriorityQueue<FanReminder> reminders; 
+    private final Map<String, List<Performance>> artistBookings; // 艺人 -> 全部舞台上的演出，用于跨舞台冲突检测
+    private final ReminderWheel reminders; // 粉丝提醒时间轮
+    private final ReminderIndex reminderIndex; // 按粉丝 / 演出查找提醒
+    private volatile ReminderSink reminderSink = MusicFestivalScheduler::printReminders;
+
+    // 艺人资源目录 (代表作、音频、海报)
+    private final ArtistCatalog catalog;
+
+    // 批量排期使用的 Fork/Join 线程池
+    private final ForkJoinPool placementPool;
+
+    // 写锁与已发布的只读快照
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile ScheduleSnapshot state = ScheduleSnapshot.EMPTY;
+    // 自上次发布以来的变更 (写锁保护)：各舞台上增删改过的演出、档期有变化的艺人
+    private final Map<String, Set<Performance>> touched = new HashMap<>();
+    private final Set<String> dirtyArtists = new HashSet<>();
+    private boolean rankingDirty;
+    // 演出 id -> 当前快照中的数据行，提交时未变化的演出直接复用
+    private final Map<Integer, Map<String, Object>> publishedRows = new HashMap<>();
+
+    // 持久化：操作日志 + 定期快照，未启用时为 null；replaying 为 true 时正在回放，不写日志也不推送
+    private volatile SchedulePersistence persistence;
+    private boolean replaying;
+    private final Map<Integer, Performance> performancesById = new ConcurrentHashMap<>();
+    // 风格倒排索引的写入端，提交快照时冻结为只读版本
+    private final GenreIndex.Writer genreIndex = new GenreIndex.Writer();
+
+    // 运行指标 (延迟直方图、计数器)，与 WebSocket 服务器共用一份
+    private final FestivalMetrics metrics;
 
     // 可视化组件
     private final SwarmWebSocketServer server;
@@ -24,199 +79,1392 @@ public class MusicFestivalScheduler {
     // --- 构造函数 ---
 
     public MusicFestivalScheduler(int port) {
-        this.timeline = new DoublyLinkedList();
-        this.hotArtists = new PriorityQueue<>(Artist.popularityComparator());
+        this.stages = new LinkedHashMap<>();
+        this.leaderboard = new PopularityLeaderboard();
+        this.votes = new VoteAggregator(this::applyVotes);
         this.artistSchedule = new HashMap<>();
-        this.reminders = new PriorityQueue<>();
+        this.artistBookings = new HashMap<>();
+        this.reminders = new ReminderWheel(0, this::deliverReminders);
+        this.reminders.guardAdvance(writeLock, this::recordDelivered);
+        this.reminderIndex = new ReminderIndex();
+        this.placementPool = new ForkJoinPool();
+        this.catalog = ArtistCatalog.loadDefault();
+        this.timeline = addStage(DEFAULT_STAGE).getTimeline();
 
         this.gson = new Gson();
         
-        this.server = new SwarmWebSocketServer(port, this::generateCurrentStateJson);
+        this.server = new SwarmWebSocketServer(port, this::collectStateRows);
+        this.server.setQueryHandler(new ScheduleQueries(this::getSnapshot, reminders::currentTime));
+        this.metrics = new FestivalMetrics();
+        this.metrics.gauge("festival_performances", "当前已排期的演出场数", performancesById::size);
+        this.metrics.gauge("festival_reminders_pending", "时间轮中待投递的提醒条数", reminders::size);
+        this.server.setMetrics(metrics);
         
         this.server.start();
-        System.out.println("✅ Scheduler 就绪，WebSocket 服务器运行在端口: " + port);
+        LOG.info("✅ Scheduler 就绪，WebSocket 服务器运行在端口: {}", port);
     }
 
     public MusicFestivalScheduler() {
         this(8080);
     }
 
+    /**
+     * 停止调度器的全部后台线程：投票折叠、提醒投递、指标输出、批量排期线程池和 WebSocket 服务器，并关闭持久化。
+     */
+    @Override
+    public void close() {
+        votes.close();
+        reminders.close();
+        metrics.stopDump();
+        metrics.stopHttp();
+        placementPool.shutdown();
+        try {
+            closePersistence();
+        } catch (IOException e) {
+            LOG.error("❌ 关闭持久化失败: {}", e.getMessage());
+        }
+        try {
+            server.stop(1000, "调度器已关闭");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     // --- 核心业务功能 ---
 
+    // --- 舞台管理 ---
+
+    /**
+     * 添加舞台，已存在时直接返回原舞台。
+     */
+    public Stage addStage(String stageName) {
+        writeLock.lock();
+        try {
+            Stage stage = stages.get(stageName);
+            if (stage == null) {
+                stage = new Stage(stageName);
+                stages.put(stageName, stage);
+                touched.put(stageName, new HashSet<>());
+                if (journaling()) {
+                    persistence.appendAddStage(stageName);
+                }
+                commitState();
+            }
+            return stage;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // 写线程持有的舞台对象 (时间轴会被后续变更原地修改)；只读访问请使用 getSnapshot()
+    public Stage getStage(String stageName) {
+        writeLock.lock();
+        try {
+            return stages.get(stageName);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public Collection<Stage> getStages() {
+        writeLock.lock();
+        try {
+            return Collections.unmodifiableList(new ArrayList<>(stages.values()));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // 某舞台按时间轴顺序的演出 (读取最新快照，不加锁)
+    public List<Performance> getPerformances(String stageName) {
+        return state.getTimeline(stageName);
+    }
+
+    // 最新发布的只读快照
+    public ScheduleSnapshot getSnapshot() {
+        return state;
+    }
+
     public boolean addPerformance(Artist artist, TimeSlot timeSlot) {
-        Performance newPerformance = new Performance(artist, timeSlot);
+        return addPerformance(DEFAULT_STAGE, artist, timeSlot);
+    }
 
-        // A. 冲突检测和插入时间轴 (双向链表)
-        if (!timeline.insertPerformance(newPerformance)) {
-            System.err.println("❌ 录入失败：" + newPerformance.getArtist().getName() + " 存在时间冲突。");
+    public boolean addPerformance(String stageName, Artist artist, TimeSlot timeSlot) {
+        long start = System.nanoTime();
+        boolean added = false;
+        writeLock.lock();
+        try {
+            if (!stages.containsKey(stageName)) {
+                LOG.warn("❌ 录入失败：舞台 {} 不存在。", stageName);
+                return false;
+            }
+            added = placePerformance(new Performance(artist, timeSlot, stageName));
+            return added;
+        } finally {
+            writeLock.unlock();
+            metrics.addPerformance.recordSince(start);
+            (added ? metrics.performancesAdded : metrics.performancesRejected).increment();
+        }
+    }
+
+    // 录入一场演出 (调用方持有写锁，舞台已存在)：冲突检测、写入时间轴、登记、写日志并推送
+    private boolean placePerformance(Performance newPerformance) {
+        Stage stage = stages.get(newPerformance.getStageName());
+        Artist artist = newPerformance.getArtist();
+
+        // A. 跨舞台艺人冲突：同一艺人不能同时出现在两个舞台
+        Performance busy = findArtistConflict(newPerformance, artistBookings.get(artist.getName()));
+        if (busy != null) {
+            LOG.warn("❌ 录入失败：{} 已在 {} 同时段演出。", artist.getName(), busy.getStageName());
             return false;
         }
 
-        // B. 更新热度榜 (优先队列)
-        hotArtists.add(artist);
+        // B. 冲突检测和插入时间轴 (双向链表)
+        if (!stage.getTimeline().insertPerformance(newPerformance)) {
+            LOG.warn("❌ 录入失败：{} 存在时间冲突。", artist.getName());
+            return false;
+        }
+
+        // C/D. 更新热度榜与档期哈希表
+        registerPerformance(newPerformance);
+        if (journaling()) {
+            persistence.appendAdd(newPerformance);
+        }
+
+        info("✅ 成功录入演出: {}", newPerformance);
+
+        // E. 向前端推送增量
+        publish("add", performanceData(newPerformance), DeltaScope.of(newPerformance));
+        return true;
+    }
+
+    /**
+     * 移除一场演出：同步更新时间轴、档期哈希表和热度榜，并推送 remove 增量。
+     */
+    public boolean removePerformance(Performance performance) {
+        writeLock.lock();
+        try {
+            Stage stage = performance == null ? null : stages.get(performance.getStageName());
+            List<Performance> bookings = performance == null ? null : artistBookings.get(performance.getArtist().getName());
+            if (stage == null || bookings == null || !bookings.remove(performance)) {
+                LOG.warn("⚠️ 移除失败: 演出不存在");
+                return false;
+            }
+            stage.getTimeline().removePerformance(performance);
+            performancesById.remove(performance.getId());
+            genreIndex.remove(performance);
+            if (journaling()) {
+                persistence.appendRemove(performance);
+            }
+            touch(performance);
+            dirtyArtists.add(performance.getArtist().getName());
+            int cancelled = cancelReminders(reminderIndex.removeByPerformance(performance));
+            if (cancelled > 0) {
+                info("🔕 已取消该演出的 {} 条粉丝提醒", cancelled);
+            }
+
+            Artist artist = performance.getArtist();
+            if (bookings.isEmpty()) {
+                artistBookings.remove(artist.getName());
+                artistSchedule.remove(artist.getName());
+                leaderboard.remove(catalog.intern(artist));
+                votes.untrack(artist.getName());
+                rankingDirty = true;
+            } else if (artistSchedule.get(artist.getName()) == performance) {
+                artistSchedule.put(artist.getName(), bookings.get(bookings.size() - 1));
+            }
+
+            info("🗑️ 已移除演出: {}", performance);
+            Map<String, Object> delta = new HashMap<>();
+            delta.put("id", performance.getId());
+            delta.put("stage", performance.getStageName());
+            publish("remove", delta, DeltaScope.of(performance));
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 调换同一舞台上的两场演出：交换两者的时间段，并在时间轴链表中原地交换两个节点 (O(1))，
+     * 两场演出的粉丝提醒随之平移，档期表在同一步中重新发布，并推送 swap 增量。
+     */
+    public boolean swapPerformance(Performance p1, Performance p2) {
+        writeLock.lock();
+        try {
+            if (p1 == null || p2 == null || !p1.getStageName().equals(p2.getStageName())) {
+                LOG.warn("⚠️ 调换失败: 只能调换同一舞台上的演出");
+                return false;
+            }
+            TimeSlot s1 = p1.getTimeSlot();
+            TimeSlot s2 = p2.getTimeSlot();
+            Performance busy = findArtistConflict(p1, s2, p2);
+            if (busy == null) {
+                busy = findArtistConflict(p2, s1, p1);
+            }
+            if (busy != null) {
+                LOG.warn("⚠️ 调换失败: {} 已在 {} 同时段演出", busy.getArtist().getName(), busy.getStageName());
+                return false;
+            }
+            DoublyLinkedList stageTimeline = stages.get(p1.getStageName()).getTimeline();
+            if (!stageTimeline.swapPerformance(p1, p2)) {
+                LOG.warn("⚠️ 调换失败: 调换后与其他演出时间冲突");
+                return false;
+            }
+            if (journaling()) {
+                persistence.appendSwap(p1, p2);
+            }
+            touch(p1);
+            touch(p2);
+            retimeReminders(p1, s1);
+            retimeReminders(p2, s2);
+
+            Map<String, Object> delta = new HashMap<>();
+            delta.put("stage", p1.getStageName());
+            delta.put("a", p1.getId());
+            delta.put("b", p2.getId());
+            publish("swap", delta, DeltaScope.of(p1, p2));
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 把一场演出改到新的时间段 (同一舞台)，该演出的粉丝提醒按相同的提前量一次性平移，
+     * 并推送 reschedule 增量。时间轴链表随之挪到新位置，保持按开始时间排序。
+     */
+    public boolean reschedulePerformance(Performance performance, TimeSlot newSlot) {
+        writeLock.lock();
+        try {
+            return retimePerformance(performance, newSlot, "改期");
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 把演出挪到同舞台另一场演出 anchor 之前 (时长不变，与 anchor 之间留出 gapMinutes 换场时间)。
+     * 冲突只检查新位置的前一场 (通过区间索引) 和艺人的其他档期。
+     */
+    public boolean movePerformanceBefore(Performance performance, Performance anchor, int gapMinutes) {
+        writeLock.lock();
+        try {
+            if (!sameStage(performance, anchor)) {
+                return false;
+            }
+            return retimePerformance(performance, DoublyLinkedList.slotBefore(performance, anchor, gapMinutes), "挪动");
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // 把演出挪到同舞台另一场演出 anchor 之后 (时长不变，与 anchor 之间留出 gapMinutes 换场时间)
+    public boolean movePerformanceAfter(Performance performance, Performance anchor, int gapMinutes) {
+        writeLock.lock();
+        try {
+            if (!sameStage(performance, anchor)) {
+                return false;
+            }
+            return retimePerformance(performance, DoublyLinkedList.slotAfter(performance, anchor, gapMinutes), "挪动");
+        } finally {
+            writeLock.unlock();
+        }
+    }
 
-        // C. 更新档期哈希表 (哈希表)
-        artistSchedule.put(artist.getName(), newPerformance);
+    private boolean sameStage(Performance performance, Performance anchor) {
+        if (performance == null || anchor == null || !performance.getStageName().equals(anchor.getStageName())
+                || performancesById.get(anchor.getId()) != anchor) {
+            LOG.warn("⚠️ 挪动失败: 只能挪到同一舞台的演出前后");
+            return false;
+        }
+        return true;
+    }
 
-        System.out.println("✅ 成功录入演出: " + newPerformance.toString());
+    // 改期、挪动共用：校验冲突后修改时间轴，记日志、平移提醒并推送 reschedule 增量 (调用方持有写锁)
+    private boolean retimePerformance(Performance performance, TimeSlot newSlot, String action) {
+        Stage stage = performance == null ? null : stages.get(performance.getStageName());
+        if (stage == null || newSlot == null) {
+            LOG.warn("⚠️ {}失败: 演出不存在", action);
+            return false;
+        }
+        Performance busy = findArtistConflict(performance, newSlot, null);
+        if (busy != null) {
+            LOG.warn("⚠️ {}失败: {} 已在 {} 同时段演出", action, busy.getArtist().getName(), busy.getStageName());
+            return false;
+        }
+        TimeSlot oldSlot = performance.getTimeSlot();
+        if (!stage.getTimeline().updateTimeSlot(performance, newSlot)) {
+            LOG.warn("⚠️ {}失败: {} 与其他演出时间冲突", action, newSlot);
+            return false;
+        }
+        if (journaling()) {
+            persistence.appendReschedule(performance, newSlot);
+        }
+        touch(performance);
+        int moved = retimeReminders(performance, oldSlot);
+        if (moved > 0) {
+            info("🕘 已{}: {}，同步调整 {} 条粉丝提醒", action, performance, moved);
+        } else {
+            info("🕘 已{}: {}", action, performance);
+        }
 
-        // D. 广播更新给前端
-        broadcastCurrentState();
+        Map<String, Object> delta = new HashMap<>();
+        delta.put("id", performance.getId());
+        delta.put("stage", performance.getStageName());
+        delta.put("startTime", newSlot.getStartMinute());
+        delta.put("endTime", newSlot.getEndMinute());
+        publish("reschedule", delta, DeltaScope.of(performance).plusSlot(oldSlot));
         return true;
     }
 
+    /**
+     * 更新艺人人气：排行榜中 O(log n) 调整名次，并推送 popularity 增量。
+     */
+    public boolean updatePopularity(String artistName, int popularity) {
+        writeLock.lock();
+        try {
+            Performance performance = artistSchedule.get(artistName);
+            if (performance == null) {
+                LOG.warn("⚠️ 更新人气失败: 未找到艺人 {}", artistName);
+                return false;
+            }
+            Artist artist = performance.getArtist();
+            artist.setPopularity(popularity);
+            leaderboard.put(artist, catalog.intern(artist), popularity);
+            markArtistDirty(artist);
+            if (journaling()) {
+                persistence.appendPopularity(artistName, popularity);
+            }
+
+            Map<String, Object> delta = new HashMap<>();
+            delta.put("artist", artistName);
+            delta.put("popularity", popularity);
+            publish("popularity", delta, DeltaScope.ofArtist(artistName, artistBookings.get(artistName)));
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // --- 粉丝投票 ---
+
+    /**
+     * 为艺人投票 (点赞)，可由任意线程高频并发调用，只累加分段计数器。
+     * 票数在下一次折叠时计入人气，艺人没有排期时返回 false。
+     */
+    public boolean vote(String artistName) {
+        return votes.vote(artistName, 1);
+    }
+
+    public boolean vote(String artistName, int hearts) {
+        if (hearts <= 0) {
+            return false;
+        }
+        return votes.vote(artistName, hearts);
+    }
+
+    /**
+     * 立即把累积的票数折叠进人气和排行榜，返回人气有变化的艺人数量。
+     */
+    public int foldVotes() {
+        return votes.fold();
+    }
+
+    // 启动后台折叠：每 periodMillis 把票数汇总一次，整批只广播一次
+    public void startVoteFolding(long periodMillis) {
+        votes.start(periodMillis);
+    }
+
+    public void stopVoteFolding() {
+        votes.stop();
+    }
+
+    public long getTotalVotes() {
+        return votes.getTotalVotes();
+    }
+
+    // 折叠出口：人气累加票数增量，同一批的 popularity 增量合并为一次广播
+    private void applyVotes(Map<Artist, Long> deltas) {
+        writeLock.lock();
+        try {
+            // 先更新全部艺人，第一条增量发布时快照即包含整批结果 (popularity 增量是绝对值，重复应用无害)
+            List<Map<String, Object>> changes = new ArrayList<>(deltas.size());
+            for (Map.Entry<Artist, Long> entry : deltas.entrySet()) {
+                Artist artist = entry.getKey();
+                if (!artistBookings.containsKey(artist.getName())) {
+                    continue; // 折叠期间演出已被移除
+                }
+                int popularity = (int) Math.min(Integer.MAX_VALUE, artist.getPopularity() + entry.getValue());
+                artist.setPopularity(popularity);
+                leaderboard.put(artist, catalog.intern(artist), popularity);
+                markArtistDirty(artist);
+                if (journaling()) {
+                    // 日志记录折叠后的绝对人气，回放与票数计数器无关
+                    persistence.appendPopularity(artist.getName(), popularity);
+                }
+
+                Map<String, Object> delta = new HashMap<>();
+                delta.put("artist", artist.getName());
+                delta.put("popularity", popularity);
+                changes.add(delta);
+            }
+            beginBatch();
+            try {
+                for (Map<String, Object> delta : changes) {
+                    String name = (String) delta.get("artist");
+                    publish("popularity", delta, DeltaScope.ofArtist(name, artistBookings.get(name)));
+                }
+            } finally {
+                commitBatch();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 批量排期：先按舞台、按艺人并行校验与已有排期的冲突 (每个舞台 / 艺人一个 Fork/Join 任务)，
+     * 再按开始时间顺序扫描一次处理批内冲突，最后按舞台并行写入时间轴，整批只广播一次。
+     * 批内冲突按开始时间贪心处理：先开始的演出优先保留；舞台和艺人两类冲突在同一次扫描中判断，
+     * 被拒绝的演出不会再挡住后面的演出。
+     */
+    public PlacementResult addPerformances(List<Performance> candidates) {
+        writeLock.lock();
+        try {
+            PlacementResult result = new PlacementResult();
+            Map<Performance, String> rejected = new ConcurrentHashMap<>();
+
+            // 1. 按舞台、按艺人分组
+            Map<String, List<Performance>> byStage = new LinkedHashMap<>();
+            Map<String, List<Performance>> byArtist = new HashMap<>();
+            for (Performance p : candidates) {
+                if (!stages.containsKey(p.getStageName())) {
+                    rejected.put(p, "舞台 " + p.getStageName() + " 不存在");
+                    continue;
+                }
+                byStage.computeIfAbsent(p.getStageName(), k -> new ArrayList<>()).add(p);
+                byArtist.computeIfAbsent(p.getArtist().getName(), k -> new ArrayList<>()).add(p);
+            }
+
+            // 2. 各舞台并行校验：与已有时间轴比较
+            placementPool.submit(() -> byStage.entrySet().parallelStream().forEach(entry -> {
+                Stage stage = stages.get(entry.getKey());
+                for (Performance p : entry.getValue()) {
+                    Performance conflict = stage.findConflict(p);
+                    if (conflict != null) {
+                        rejected.put(p, "与 " + conflict + " 时间冲突");
+                    }
+                }
+            })).join();
+
+            // 3. 各艺人并行校验：与该艺人已有的演出比较 (跨舞台)
+            placementPool.submit(() -> byArtist.entrySet().parallelStream().forEach(entry -> {
+                List<Performance> existing = artistBookings.get(entry.getKey());
+                for (Performance p : entry.getValue()) {
+                    Performance busy = findArtistConflict(p, existing);
+                    if (busy != null) {
+                        rejected.putIfAbsent(p, "艺人已在 " + busy.getStageName() + " 同时段演出");
+                    }
+                }
+            })).join();
+
+            // 4. 批内冲突：按开始时间顺序扫描，只和已保留的演出比较
+            List<Performance> sorted = new ArrayList<>(candidates.size());
+            for (Performance p : candidates) {
+                if (!rejected.containsKey(p)) {
+                    sorted.add(p);
+                }
+            }
+            sorted.sort(Comparator.comparingInt(Performance::getStartMinute)
+                    .thenComparingInt(Performance::getEndMinute));
+            Map<String, Integer> stageEnds = new HashMap<>();
+            Map<String, Integer> artistEnds = new HashMap<>();
+            Map<String, List<Performance>> stageAccepted = new LinkedHashMap<>();
+            for (Performance p : sorted) {
+                String artist = p.getArtist().getName();
+                if (p.getStartMinute() < stageEnds.getOrDefault(p.getStageName(), Integer.MIN_VALUE)) {
+                    rejected.put(p, "与同批次演出时间冲突");
+                } else if (p.getStartMinute() < artistEnds.getOrDefault(artist, Integer.MIN_VALUE)) {
+                    rejected.put(p, "艺人在同批次中时间重叠");
+                } else {
+                    stageEnds.put(p.getStageName(), p.getEndMinute());
+                    artistEnds.merge(artist, p.getEndMinute(), Math::max);
+                    stageAccepted.computeIfAbsent(p.getStageName(), k -> new ArrayList<>()).add(p);
+                }
+            }
+
+            // 5. 按舞台并行写入时间轴 (各舞台链表互不共享)
+            placementPool.submit(() -> stageAccepted.entrySet().parallelStream().forEach(entry -> {
+                DoublyLinkedList stageTimeline = stages.get(entry.getKey()).getTimeline();
+                for (Performance p : entry.getValue()) {
+                    stageTimeline.insertPerformance(p);
+                }
+            })).join();
+
+            // 6. 共享结构顺序更新
+            for (Performance p : candidates) {
+                String reason = rejected.get(p);
+                if (reason != null) {
+                    result.rejected.put(p, reason);
+                } else {
+                    registerPerformance(p);
+                    result.accepted.add(p);
+                    if (journaling()) {
+                        persistence.appendAdd(p);
+                    }
+                }
+            }
+
+            LOG.info("✅ 批量录入完成: 成功 {} 场，拒绝 {} 场", result.accepted.size(), result.rejected.size());
+            if (result.accepted.size() > BULK_SNAPSHOT_THRESHOLD) {
+                // 大批量导入：一条逐行的 addAll 增量比全量快照还大，直接推送一次快照
+                publishSnapshot();
+            } else if (!result.accepted.isEmpty()) {
+                List<Map<String, Object>> added = new ArrayList<>(result.accepted.size());
+                for (Performance p : result.accepted) {
+                    added.add(performanceData(p));
+                }
+                Map<String, Object> delta = new HashMap<>();
+                delta.put("performances", added);
+                publish("addAll", delta, DeltaScope.of(result.accepted));
+            }
+            return result;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 自动排阵容：在 budgetMillis 内为 artists 在给定时间段上求一个方案 (只计算，不写入)。
+     * 已上榜艺人的人气取自热度榜，其余使用艺人自身人气；搜索在批量排期所用的 Fork/Join 线程池上并行进行。
+     */
+    public LineupOptimizer.Plan planLineup(List<Artist> artists, List<LineupOptimizer.Slot> slots, long budgetMillis) {
+        return planLineup(artists, slots, budgetMillis, null);
+    }
+
+    // onImprovement 在找到更好的方案时回调 (随时可用的中间结果)
+    public LineupOptimizer.Plan planLineup(List<Artist> artists, List<LineupOptimizer.Slot> slots, long budgetMillis,
+                                           Consumer<LineupOptimizer.Plan> onImprovement) {
+        return planLineup(new LineupOptimizer(placementPool), artists, slots, budgetMillis, onImprovement);
+    }
+
+    public LineupOptimizer.Plan planLineup(LineupOptimizer optimizer, List<Artist> artists, List<LineupOptimizer.Slot> slots,
+                                           long budgetMillis, Consumer<LineupOptimizer.Plan> onImprovement) {
+        return optimizer.optimize(artists, slots, artist -> {
+            int score = leaderboard.scoreOf(catalog.intern(artist));
+            return score >= 0 ? score : artist.getPopularity();
+        }, budgetMillis, onImprovement);
+    }
+
+    /**
+     * 按方案写入：缺少的舞台先创建，再整批交给 addPerformances (校验与广播规则相同)。
+     */
+    public PlacementResult applyLineup(LineupOptimizer.Plan plan) {
+        List<Performance> performances = plan.toPerformances();
+        for (LineupOptimizer.Slot slot : plan.getSlots()) {
+            if (!state.hasStage(slot.getStage())) {
+                addStage(slot.getStage());
+            }
+        }
+        return addPerformances(performances);
+    }
+
+    // 在艺人已有的演出中查找与新演出时间重叠的一场
+    private static Performance findArtistConflict(Performance candidate, List<Performance> bookings) {
+        if (bookings == null) {
+            return null;
+        }
+        for (Performance booked : bookings) {
+            if (booked != candidate && TimeSlot.overlaps(booked.getSlot(), candidate.getSlot())) {
+                return booked;
+            }
+        }
+        return null;
+    }
+
+    // 艺人在其他演出中是否与 slot 时间重叠 (忽略演出本身和 ignore)
+    private Performance findArtistConflict(Performance performance, TimeSlot slot, Performance ignore) {
+        List<Performance> bookings = artistBookings.get(performance.getArtist().getName());
+        if (bookings == null) {
+            return null;
+        }
+        long packed = slot.getPacked();
+        for (Performance booked : bookings) {
+            if (booked != performance && booked != ignore && TimeSlot.overlaps(booked.getSlot(), packed)) {
+                return booked;
+            }
+        }
+        return null;
+    }
+
+    // 将已写入时间轴的演出登记到热度榜和档期哈希表
+    private void registerPerformance(Performance performance) {
+        Artist artist = performance.getArtist();
+        int catalogId = catalog.intern(artist);
+        List<Performance> bookings = artistBookings.computeIfAbsent(artist.getName(), k -> new ArrayList<>());
+        if (bookings.isEmpty()) {
+            leaderboard.put(artist, catalogId, artist.getPopularity());
+            votes.track(artist);
+            rankingDirty = true;
+        }
+        bookings.add(performance);
+        artistSchedule.put(artist.getName(), performance);
+        performancesById.put(performance.getId(), performance);
+        genreIndex.add(performance);
+        touch(performance);
+        dirtyArtists.add(artist.getName());
+    }
+
+    // 人气变化：排行榜顺序和该艺人各场演出的数据行都需要重新生成
+    private void markArtistDirty(Artist artist) {
+        rankingDirty = true;
+        List<Performance> bookings = artistBookings.get(artist.getName());
+        if (bookings != null) {
+            for (Performance p : bookings) {
+                touch(p);
+            }
+        }
+    }
+
+    // 记录一场演出的数据行需要在下次提交时重新生成 (新增、移除、改期或人气变化)
+    private void touch(Performance performance) {
+        touched.computeIfAbsent(performance.getStageName(), k -> new HashSet<>()).add(performance);
+    }
+
+    /**
+     * 发布新的只读快照 (调用方持有写锁)：只为变更过的演出生成数据行，在上一个快照的分块列表中
+     * 按开始时间二分定位、删除旧行并插入新行，每场 O(log n + 块大小)；新舞台或变更很多时整舞台重建，
+     * 未变化的演出复用已发布的数据行。档期表只更新有变化的艺人，人气榜只保留前 RANKING_SIZE 名。
+     */
+    private void commitState() {
+        if (touched.isEmpty() && dirtyArtists.isEmpty() && !rankingDirty && !genreIndex.isDirty()) {
+            return;
+        }
+        ScheduleSnapshot previous = state;
+        Map<String, ChunkedList<Performance>> timelines = new LinkedHashMap<>();
+        Map<String, ChunkedList<Map<String, Object>>> stageRows = new LinkedHashMap<>();
+        for (Stage stage : stages.values()) {
+            String name = stage.getName();
+            ChunkedList<Performance> timeline = previous.timelineOf(name);
+            ChunkedList<Map<String, Object>> rows = previous.getStageRows(name);
+            Set<Performance> changed = touched.get(name);
+            if (changed != null && (rows == null || changed.size() > Math.max(16, rows.size() / 16))) {
+                // 整舞台重建：按链表顺序生成，只有变更过的演出新建数据行
+                for (Performance p : changed) {
+                    publishedRows.remove(p.getId());
+                }
+                List<Performance> performances = stage.getTimeline().getTimeline();
+                List<Map<String, Object>> built = new ArrayList<>(performances.size());
+                for (Performance p : performances) {
+                    Map<String, Object> row = publishedRows.get(p.getId());
+                    if (row == null) {
+                        row = Collections.unmodifiableMap(performanceData(p));
+                        publishedRows.put(p.getId(), row);
+                    }
+                    built.add(row);
+                }
+                timeline = ChunkedList.of(performances);
+                rows = ChunkedList.of(built);
+            } else if (changed != null) {
+                // 先删掉变更演出的旧行，剩下的都是时间未变的演出，再按当前开始时间插入新行
+                for (Performance p : changed) {
+                    Map<String, Object> old = publishedRows.remove(p.getId());
+                    if (old != null) {
+                        int i = indexOfRow(rows, old);
+                        rows = rows.removing(i);
+                        timeline = timeline.removing(i);
+                    }
+                }
+                for (Performance p : changed) {
+                    if (performancesById.get(p.getId()) != p) {
+                        continue; // 已移除
+                    }
+                    Map<String, Object> row = Collections.unmodifiableMap(performanceData(p));
+                    publishedRows.put(p.getId(), row);
+                    int i = lowerBound(rows, p.getStartMinute());
+                    rows = rows.inserting(i, row);
+                    timeline = timeline.inserting(i, p);
+                }
+            }
+            timelines.put(name, timeline);
+            stageRows.put(name, rows);
+        }
+        SnapshotMap<String, Performance> schedule = previous.getArtistSchedule();
+        if (!dirtyArtists.isEmpty()) {
+            Map<String, Performance> changes = new HashMap<>();
+            for (String artistName : dirtyArtists) {
+                changes.put(artistName, artistSchedule.get(artistName));
+            }
+            schedule = schedule.with(changes);
+        }
+        List<Artist> ranking = rankingDirty
+                ? Collections.unmodifiableList(leaderboard.top(ScheduleSnapshot.RANKING_SIZE))
+                : previous.getRanking();
+
+        state = new ScheduleSnapshot(timelines, stageRows, schedule, ranking,
+                genreIndex.freeze(previous.getGenres()));
+        touched.clear();
+        dirtyArtists.clear();
+        rankingDirty = false;
+    }
+
+    // 已发布数据行在舞台行列表中的下标：同一舞台的开始时间互不相同，二分后按 id 核对
+    private static int indexOfRow(List<Map<String, Object>> rows, Map<String, Object> row) {
+        int i = lowerBound(rows, ((Number) row.get("startTime")).intValue());
+        while (rows.get(i) != row) {
+            i++;
+        }
+        return i;
+    }
+
+    // 第一行开始时间不早于 minute 的下标
+    private static int lowerBound(List<Map<String, Object>> rows, int minute) {
+        int lo = 0;
+        int hi = rows.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (((Number) rows.get(mid).get("startTime")).intValue() < minute) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
     public String findArtistGenre(String artistName) {
-        Performance p = artistSchedule.get(artistName);
+        Performance p = state.getPerformanceByArtistName(artistName);
         if (p != null) {
             return p.getArtist().getGenre();
         }
         return "未找到该艺人或未安排演出。";
     }
 
+    /**
+     * 按风格查询演出 (风格倒排索引，读取快照不加锁)：matchAll 为 true 时要求同时属于全部风格，否则属于任一风格即可；
+     * window 不为 null 时只返回与该时间段重叠的演出，例如 "今晚所有摇滚演出"。
+     */
+    public List<Performance> findPerformancesByGenre(Collection<String> genres, boolean matchAll, TimeSlot window) {
+        ScheduleSnapshot snapshot = state;
+        BitSet ids = matchAll ? snapshot.getGenres().allOf(genres) : snapshot.getGenres().anyOf(genres);
+        int from = window == null ? Integer.MIN_VALUE : window.getStartMinute();
+        int to = window == null ? Integer.MAX_VALUE : window.getEndMinute();
+        List<Performance> result = new ArrayList<>();
+        for (Map<String, Object> row : snapshot.findRowsIn(ids, null, from, to)) {
+            Performance p = performancesById.get(((Number) row.get("id")).intValue());
+            if (p != null) {
+                result.add(p);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 风格相近的艺人 (用于推荐)：与该艺人共享风格词越多越靠前，相同时按人气排序。
+     */
+    public List<Artist> findSimilarArtists(String artistName, int k) {
+        ScheduleSnapshot snapshot = state;
+        Performance self = snapshot.getPerformanceByArtistName(artistName);
+        if (self == null || k <= 0) {
+            return Collections.emptyList();
+        }
+        List<String> tokens = GenreIndex.tokenize(self.getArtist().getGenre());
+        BitSet ids = snapshot.getGenres().anyOf(tokens);
+        Map<Artist, Integer> score = new HashMap<>();
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            Performance p = performancesById.get(id);
+            if (p == null || p.getArtist().getName().equals(artistName) || score.containsKey(p.getArtist())) {
+                continue;
+            }
+            int common = 0;
+            for (String token : GenreIndex.tokenize(p.getArtist().getGenre())) {
+                if (tokens.contains(token)) {
+                    common++;
+                }
+            }
+            score.put(p.getArtist(), common);
+        }
+        List<Artist> result = new ArrayList<>(score.keySet());
+        result.sort(Comparator.comparingInt((Artist a) -> -score.get(a))
+                .thenComparingInt(a -> -a.getPopularity())
+                .thenComparing(Artist::getName));
+        return result.size() > k ? new ArrayList<>(result.subList(0, k)) : result;
+    }
+
+    // 人气最高的前 N 位艺人 (按名次排列)：快照中的榜单够长时直接截取，否则查询跳表，O(n)
     public List<Artist> getHotArtistsRanking(int n) {
-        // 创建副本以避免破坏原队列
-        PriorityQueue<Artist> tempQueue = new PriorityQueue<>(hotArtists);
-        // 使用 Java Stream 取前 N 个
-        return tempQueue.stream()
-                .limit(n)
-                .collect(Collectors.toList());
+        List<Artist> ranking = state.getRanking();
+        if (n > ranking.size() && ranking.size() >= ScheduleSnapshot.RANKING_SIZE) {
+            return leaderboard.top(n);
+        }
+        return new ArrayList<>(ranking.subList(0, Math.max(0, Math.min(n, ranking.size()))));
+    }
+
+    // 艺人当前名次 (从 1 开始)，未上榜时返回 -1
+    public int getArtistRank(String artistName) {
+        Performance p = state.getPerformanceByArtistName(artistName);
+        return p == null ? -1 : leaderboard.rankOf(catalog.intern(p.getArtist()));
     }
 
     // --- 粉丝提醒功能 ---
 
-    public void addFanReminder(String fanId, String artistName, long reminderTime) {
-        Performance performance = artistSchedule.get(artistName);
-        if (performance != null) {
-            reminders.add(new FanReminder(fanId, performance, reminderTime));
-            System.out.println("🔔 提醒已设置: 粉丝 " + fanId + " 预约了 " + artistName + " (提醒时间: " + reminderTime + "h)");
-        } else {
-            System.out.println("⚠️ 设置提醒失败: 未找到艺人 " + artistName);
+    /**
+     * 为粉丝预约艺人当前档期的演出，reminderTime 为音乐节分钟 (见 TimeSlot.minuteOf)。
+     * 同一粉丝对同一场演出重复预约时返回已有的提醒，不会重复投递。
+     */
+    public FanReminder addFanReminder(String fanId, String artistName, long reminderTime) {
+        writeLock.lock();
+        try {
+            Performance performance = artistSchedule.get(artistName);
+            if (performance != null) {
+                return scheduleReminder(fanId, performance, reminderTime);
+            } else {
+                LOG.warn("⚠️ 设置提醒失败: 未找到艺人 {}", artistName);
+                return null;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // 登记并排入时间轮 (调用方持有写锁)，重复预约时返回已有的提醒
+    private FanReminder scheduleReminder(String fanId, Performance performance, long reminderTime) {
+        String artistName = performance.getArtist().getName();
+        FanReminder reminder = new FanReminder(fanId, performance, reminderTime);
+        FanReminder existing = reminderIndex.add(reminder);
+        if (existing != null) {
+            info("ℹ️ 提醒已存在: 粉丝 {} 已预约 {} (提醒时间: {})", fanId, artistName, TimeSlot.formatMinute(existing.getReminderTime()));
+            return existing;
+        }
+        reminders.schedule(reminder);
+        if (journaling()) {
+            persistence.appendReminderAdd(reminder);
+        }
+        info("🔔 提醒已设置: 粉丝 {} 预约了 {} (提醒时间: {})", fanId, artistName, TimeSlot.formatMinute(reminderTime));
+        return reminder;
+    }
+
+    // 取消一条尚未投递的提醒 (O(1))
+    public boolean cancelFanReminder(FanReminder reminder) {
+        writeLock.lock();
+        try {
+            if (reminder == null || !reminderIndex.remove(reminder)) {
+                return false;
+            }
+            if (journaling()) {
+                persistence.appendReminderCancel(reminder);
+            }
+            return reminders.cancel(reminder);
+        } finally {
+            writeLock.unlock();
         }
     }
 
+    // 取消粉丝对某位艺人当前档期的提醒 (O(1))
+    public boolean cancelFanReminder(String fanId, String artistName) {
+        Performance performance = state.getPerformanceByArtistName(artistName);
+        return performance != null && cancelFanReminder(reminderIndex.find(fanId, performance));
+    }
+
+    // 取消某位粉丝的全部提醒，返回取消的数量
+    public int cancelFanReminders(String fanId) {
+        writeLock.lock();
+        try {
+            List<FanReminder> removed = reminderIndex.removeByFan(fanId);
+            if (journaling()) {
+                for (FanReminder reminder : removed) {
+                    persistence.appendReminderCancel(reminder);
+                }
+            }
+            return cancelReminders(removed);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public List<FanReminder> getFanReminders(String fanId) {
+        return reminderIndex.getByFan(fanId);
+    }
+
+    public List<FanReminder> getRemindersFor(Performance performance) {
+        return reminderIndex.getByPerformance(performance);
+    }
+
+    private int cancelReminders(List<FanReminder> removed) {
+        int cancelled = 0;
+        for (FanReminder reminder : removed) {
+            if (reminders.cancel(reminder)) {
+                cancelled++;
+            }
+        }
+        return cancelled;
+    }
+
+    // 演出从 oldSlot 改期后，按开始时间的变化量一次性平移其全部提醒
+    private int retimeReminders(Performance performance, TimeSlot oldSlot) {
+        long shift = performance.getStartMinute() - oldSlot.getStartMinute();
+        if (shift == 0) {
+            return 0;
+        }
+        return reminders.retime(reminderIndex.getByPerformance(performance), shift);
+    }
+
+    /**
+     * 手动推进提醒时间轮到 currentTime (音乐节分钟)，到期提醒按批次交给当前的投递出口。
+     */
     public void processReminders(long currentTime) {
-        System.out.println("\n--- ⏰ 实时提醒处理 (当前时间: " + currentTime + "h) ---");
-        while (!reminders.isEmpty() && reminders.peek().getReminderTime() <= currentTime) {
-            FanReminder reminder = reminders.poll();
-            System.out.println("📩 [发送通知] 粉丝 " + reminder.getFanId() + ": 您的艺人 " 
-                    + reminder.getPerformance().getArtist().getName() + " 即将登台！");
+        LOG.info("--- ⏰ 实时提醒处理 (当前时间: {}) ---", TimeSlot.formatMinute(currentTime));
+        reminders.advanceTo(currentTime);
+    }
+
+    /**
+     * 启动后台提醒投递线程：每 periodMillis 读取一次 clock (音乐节分钟) 并推进时间轮，不再需要手动调用 processReminders。
+     */
+    public void startReminderDispatcher(LongSupplier clock, long periodMillis) {
+        reminders.start(clock, periodMillis);
+    }
+
+    public void stopReminderDispatcher() {
+        reminders.stop();
+    }
+
+    // 替换提醒投递出口 (默认输出到控制台)
+    public void setReminderSink(ReminderSink sink) {
+        this.reminderSink = sink;
+    }
+
+    public int getPendingReminderCount() {
+        return reminders.size();
+    }
+
+    // 时间轮出轮时调用 (与出轮在同一写锁临界区)：移出索引，启用持久化时登记一条推进记录 (到本批最晚的提醒时间)。
+    // 之后新加入的提醒在日志中一定排在这条推进之后，回放时不会被这次推进提前取出
+    private void recordDelivered(List<FanReminder> batch) {
+        reminderIndex.removeAll(batch);
+        if (!replaying && journaling()) {
+            long latest = Long.MIN_VALUE;
+            for (FanReminder reminder : batch) {
+                latest = Math.max(latest, reminder.getReminderTime());
+            }
+            persistence.appendReminderAdvance(latest);
+        }
+    }
+
+    // 时间轮投递出的提醒 (已由 recordDelivered 移出索引并记录推进) 在写锁外交给当前投递出口
+    private void deliverReminders(List<FanReminder> batch) {
+        if (replaying) {
+            return; // 回放中的推进只恢复状态，提醒在崩溃前已投递过
+        }
+        // 投递延迟：时间轮当前时间与提醒设定时间之差 (手动推进或后台线程停顿时会大于 0)
+        long now = reminders.currentTime();
+        for (FanReminder reminder : batch) {
+            metrics.reminderLag.record(now - reminder.getReminderTime());
+        }
+        metrics.remindersDelivered.add(batch.size());
+        ReminderSink sink = reminderSink;
+        if (sink != null) {
+            long start = System.nanoTime();
+            sink.deliver(batch);
+            metrics.reminderDelivery.recordSince(start);
+        }
+    }
+
+    // 默认投递出口：写入异步日志 (控制台)
+    private static void printReminders(List<FanReminder> batch) {
+        for (FanReminder reminder : batch) {
+            REMINDER_LOG.info("📩 [发送通知] 粉丝 {}: 您的艺人 {} 即将登台！",
+                    reminder.getFanId(), reminder.getPerformance().getArtist().getName());
+        }
+    }
+
+    // --- 持久化 ---
+
+    /**
+     * 启用持久化：从 directory 中的快照和操作日志恢复状态，之后的每次变更都写入日志。
+     * 只能在录入任何演出之前调用；恢复完成后向所有客户端推送一次全量快照。
+     */
+    public void enablePersistence(Path directory) throws IOException {
+        enablePersistence(directory, ScheduleJournal.DEFAULT_SYNC_INTERVAL_MS);
+    }
+
+    public void enablePersistence(Path directory, long syncIntervalMillis) throws IOException {
+        writeLock.lock();
+        try {
+            if (persistence != null) {
+                throw new IllegalStateException("持久化已启用: " + persistence.getDirectory());
+            }
+            if (!artistBookings.isEmpty() || reminderIndex.size() > 0) {
+                throw new IllegalStateException("只能在录入演出之前启用持久化。");
+            }
+            long begin = System.nanoTime();
+            replaying = true;
+            try {
+                persistence = SchedulePersistence.recover(directory, syncIntervalMillis, new Replayer());
+            } finally {
+                replaying = false;
+            }
+            publishSnapshot();
+            LOG.info("💾 持久化已启用: {} (恢复 {} 场演出、{} 条提醒，用时 {} ms)", directory,
+                    performancesById.size(), reminderIndex.size(), (System.nanoTime() - begin) / 1_000_000);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 立即写一次快照并清理已被快照覆盖的日志。写操作只在复制状态期间被阻塞。
+     */
+    public ScheduleCheckpoint checkpoint() throws IOException {
+        SchedulePersistence p = persistence;
+        if (p == null) {
+            throw new IllegalStateException("持久化未启用。");
+        }
+        try {
+            return p.checkpoint(() -> {
+                writeLock.lock();
+                try {
+                    return captureCheckpoint(p.rotate());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    writeLock.unlock();
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // 启动后台快照：每 periodMillis 写一次快照，日志长度因此保持有界
+    public void startCheckpointing(long periodMillis) {
+        SchedulePersistence p = persistence;
+        if (p == null) {
+            throw new IllegalStateException("持久化未启用。");
+        }
+        p.startCheckpointing(periodMillis, () -> {
+            try {
+                ScheduleCheckpoint cp = checkpoint();
+                LOG.info("💾 快照已写入: {} 场演出，{} 条提醒", cp.getPerformanceCount(), cp.getReminderCount());
+            } catch (IOException e) {
+                LOG.error("❌ 写快照失败: {}", e.getMessage());
+            }
+        });
+    }
+
+    // 等待此前的全部变更落盘 (日志默认按提交窗口批量 fsync)
+    public void syncJournal() throws IOException {
+        SchedulePersistence p = persistence;
+        if (p != null) {
+            p.sync();
+        }
+    }
+
+    // 停止后台快照并关闭日志 (已追加的记录会先落盘)。
+    // 先在写锁外等后台快照结束：快照任务要进入写锁，持锁等它会互相卡住
+    public void closePersistence() throws IOException {
+        SchedulePersistence p = persistence;
+        if (p != null) {
+            p.shutdownCheckpointing();
+        }
+        writeLock.lock();
+        try {
+            if (persistence != null) {
+                persistence.close();
+                persistence = null;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public Performance getPerformanceById(int id) {
+        return performancesById.get(id);
+    }
+
+    // 启用持久化且不在回放中时，变更需要写入日志 (调用方持有写锁)
+    private boolean journaling() {
+        return persistence != null && !replaying;
+    }
+
+    // 高频的成功提示：回放时不输出
+    private void info(String pattern, Object arg) {
+        if (!replaying) {
+            LOG.info(pattern, arg);
+        }
+    }
+
+    private void info(String pattern, Object... args) {
+        if (!replaying) {
+            LOG.info(pattern, args);
+        }
+    }
+
+    // 复制当前状态为快照 (调用方持有写锁)：舞台和时间轴顺序、艺人当前人气、待投递的提醒
+    private ScheduleCheckpoint captureCheckpoint(long generation) {
+        List<String> stageNames = new ArrayList<>(stages.keySet());
+
+        // 艺人按目录 id 排列 (复制当前人气)，恢复时按同样顺序登记目录，人气相同的艺人名次不变
+        List<Artist> booked = new ArrayList<>(artistSchedule.size());
+        for (Performance p : artistSchedule.values()) {
+            booked.add(p.getArtist());
+        }
+        booked.sort(Comparator.comparingInt(catalog::intern));
+        List<Artist> artists = new ArrayList<>(booked.size());
+        Map<String, Integer> artistIndex = new HashMap<>();
+        for (Artist artist : booked) {
+            artistIndex.put(artist.getName(), artists.size());
+            artists.add(new Artist(artist.getName(), artist.getGenre(), artist.getPopularity(),
+                    artist.getPosterPath(), artist.getAudioPath()));
+        }
+
+        int total = performancesById.size();
+        int[] ids = new int[total];
+        int[] stageIdx = new int[total];
+        int[] artistIdx = new int[total];
+        int[] starts = new int[total];
+        int[] ends = new int[total];
+        int n = 0;
+        for (int s = 0; s < stageNames.size(); s++) {
+            for (Performance p : stages.get(stageNames.get(s)).getTimeline().getTimeline()) {
+                ids[n] = p.getId();
+                stageIdx[n] = s;
+                artistIdx[n] = artistIndex.get(p.getArtist().getName());
+                starts[n] = p.getStartMinute();
+                ends[n] = p.getEndMinute();
+                n++;
+            }
+        }
+
+        List<FanReminder> pending = reminderIndex.getAll();
+        String[] fans = new String[pending.size()];
+        int[] reminderPerformances = new int[pending.size()];
+        long[] times = new long[pending.size()];
+        for (int i = 0; i < fans.length; i++) {
+            FanReminder r = pending.get(i);
+            fans[i] = r.getFanId();
+            reminderPerformances[i] = r.getPerformance().getId();
+            times[i] = r.getReminderTime();
+        }
+        return new ScheduleCheckpoint(generation, Performance.lastId(), reminders.currentTime(), stageNames, artists,
+                ids, stageIdx, artistIdx, starts, ends, fans, reminderPerformances, times);
+    }
+
+    // 回放目标：在写锁内、replaying 为 true 时由 SchedulePersistence 调用，复用正常的变更路径
+    private class Replayer implements SchedulePersistence.Recovery {
+
+        @Override
+        public void restore(ScheduleCheckpoint cp) {
+            for (String stageName : cp.stages) {
+                addStage(stageName);
+            }
+            for (Artist artist : cp.artists) {
+                catalog.intern(artist);
+            }
+            for (int i = 0; i < cp.performanceIds.length; i++) {
+                Artist artist = cp.artists.get(cp.performanceArtists[i]);
+                String stageName = cp.stages.get(cp.performanceStages[i]);
+                Performance p = new Performance(cp.performanceIds[i], artist,
+                        TimeSlot.ofMinutes(cp.startTimes[i], cp.endTimes[i]), stageName);
+                // 快照中的时间轴本身无冲突，按原顺序追加即可还原链表顺序
+                stages.get(stageName).getTimeline().insertPerformance(p);
+                registerPerformance(p);
+            }
+            Performance.reserveIds(cp.lastPerformanceId);
+            // 时间轮为空时推进到快照时刻，不会投递任何提醒
+            reminders.advanceTo(cp.reminderTime);
+            for (int i = 0; i < cp.fanIds.length; i++) {
+                Performance p = performancesById.get(cp.reminderPerformances[i]);
+                if (p != null) {
+                    FanReminder reminder = new FanReminder(cp.fanIds[i], p, cp.reminderTimes[i]);
+                    reminderIndex.add(reminder);
+                    reminders.schedule(reminder);
+                }
+            }
+        }
+
+        @Override
+        public void addStage(String stageName) {
+            MusicFestivalScheduler.this.addStage(stageName);
+        }
+
+        @Override
+        public void addPerformance(int id, String stageName, Artist artist, TimeSlot timeSlot) {
+            if (!stages.containsKey(stageName)) {
+                return;
+            }
+            // 艺人已有演出时沿用同一个 Artist 对象，人气只有一份
+            Performance booked = artistSchedule.get(artist.getName());
+            Artist shared = booked == null ? artist : booked.getArtist();
+            placePerformance(new Performance(id, shared, timeSlot, stageName));
+        }
+
+        @Override
+        public void removePerformance(int id) {
+            Performance p = performancesById.get(id);
+            if (p != null) {
+                MusicFestivalScheduler.this.removePerformance(p);
+            }
+        }
+
+        @Override
+        public void swapPerformance(int a, int b) {
+            MusicFestivalScheduler.this.swapPerformance(performancesById.get(a), performancesById.get(b));
+        }
+
+        @Override
+        public void reschedulePerformance(int id, TimeSlot timeSlot) {
+            MusicFestivalScheduler.this.reschedulePerformance(performancesById.get(id), timeSlot);
+        }
+
+        @Override
+        public void updatePopularity(String artistName, int popularity) {
+            MusicFestivalScheduler.this.updatePopularity(artistName, popularity);
+        }
+
+        @Override
+        public void addFanReminder(String fanId, int performanceId, long reminderTime) {
+            Performance p = performancesById.get(performanceId);
+            if (p != null) {
+                scheduleReminder(fanId, p, reminderTime);
+            }
+        }
+
+        @Override
+        public void cancelFanReminder(String fanId, int performanceId) {
+            Performance p = performancesById.get(performanceId);
+            if (p != null) {
+                MusicFestivalScheduler.this.cancelFanReminder(reminderIndex.find(fanId, p));
+            }
+        }
+
+        @Override
+        public void advanceReminders(long time) {
+            reminders.advanceTo(time);
         }
     }
 
     // --- 辅助 Getter (供 MainApp 使用) ---
 
+    // 默认舞台的可变时间轴，只能在没有并发写入时遍历；并发读取请使用 getPerformances
     public DoublyLinkedList getTimeline() {
         return timeline;
     }
 
     public Performance getPerformanceByArtistName(String artistName) {
-        return artistSchedule.get(artistName);
+        return state.getPerformanceByArtistName(artistName);
+    }
+
+    public ArtistCatalog getCatalog() {
+        return catalog;
+    }
+
+    public PopularityLeaderboard getLeaderboard() {
+        return leaderboard;
+    }
+
+    // 运行指标：getMetrics().startHttp(port) 提供抓取端点，startDump(periodMillis) 定期输出到控制台
+    public FestivalMetrics getMetrics() {
+        return metrics;
+    }
+
+    // 增量流的当前版本号：每次发布增量加一，压测工具据此把客户端收到的增量对应回发布时刻
+    public long getStreamVersion() {
+        return server.getVersion();
     }
 
     // --- 可视化与广播功能 ---
 
     /** 
-     * 生成当前状态的 JSON 字符串
-     * 【最终版】：注入本地资源路径，确保稳定和代表作唯一性。
-
+     * 生成当前状态的 JSON 字符串 (全量快照中的演出数组)
      */
     public String generateCurrentStateJson() {
-        List<Performance> currentPerformances = timeline.getTimeline();
-        List<Map<String, Object>> visualData = new ArrayList<>();
-        int index = 0;
-
-        for (Performance p : currentPerformances) {
-            Map<String, Object> data = new HashMap<>();
-            data.put("index", index++);
-            data.put("artist", p.getArtist().getName());
-            data.put("genre", p.getArtist().getGenre());
-            data.put("startTime", p.getTimeSlot().getStartTime());
-            data.put("endTime", p.getTimeSlot().getEndTime());
-            data.put("popularity", p.getArtist().getPopularity());
-            
-            // --- 【核心修改】本地资源路径注入 ---
-            String artistName = p.getArtist().getName();
-            String songTitle = "未知代表作";
-            String audioFileName = "default_audio.mp3"; 
-            String imageFileName = "default_poster.jpg"; 
-            
-            switch (artistName) {
-                case "Beyond":
-                    songTitle = "海阔天空";
-                    audioFileName = "Beyond_HaKu.mp3";
-                    imageFileName = "Beyond_poster.jpg";
-                    break;
-                case "周杰伦":
-                    songTitle = "七里香";
-                    audioFileName = "JayChou_Qilixiang.mp3";
-                    imageFileName = "JayChou_poster.jpg";
-                    break;
-                case "泰勒斯威夫特":
-                    songTitle = "Love Story";
-                    audioFileName = "Taylor_LoveStory.mp3";
-                    imageFileName = "Taylor_poster.jpg";
-                    break;
-                case "方大同":
-                    songTitle = "爱爱爱";
-                    audioFileName = "Khalil_AiAiAi.mp3";
-                    imageFileName = "Khalil_poster.jpg";
-                    break;
-                case "林俊杰":
-                    songTitle = "江南";
-                    audioFileName = "JJLin_JiangNan.mp3";
-                    imageFileName = "JJLin_poster.jpg";
-                    break;
-                case "韩红":
-                    songTitle = "天路";
-                    audioFileName = "HanHong_TianLu.mp3";
-                    imageFileName = "HanHong_poster.jpg";
-                    break;
-                case "陶喆":
-                    songTitle = "爱很简单";
-                    audioFileName = "DavidTao_AiHenJianDan.mp3";
-                    imageFileName = "DavidTao_poster.jpg";
-                    break;
-            }
-            
-            data.put("songTitle", songTitle);
-            
-            // 注入本地相对路径：index.html 将使用这些路径
-            data.put("audioUrl", "assets/audio/" + audioFileName);
-            data.put("posterImage", "assets/images/" + imageFileName);
-
-            visualData.add(data);
-        }
-        return gson.toJson(visualData);
-    }
-
-    /**
-     * 广播状态
+        return gson.toJson(collectStateRows());
+    }
+
+    /**
+     * 按舞台顺序收集所有演出的前端数据行，供快照的 JSON / 二进制编码共用
+     */
+    public List<Map<String, Object>> collectStateRows() {
+        return state.getRows();
+    }
+
+    /**
+     * 单场演出的前端数据 (快照与 add 增量共用)
+     * 【最终版】：注入本地资源路径，确保稳定和代表作唯一性。
+     */
+    private Map<String, Object> performanceData(Performance p) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("id", p.getId());
+        data.put("stage", p.getStageName());
+        data.put("artist", p.getArtist().getName());
+        data.put("genre", p.getArtist().getGenre());
+        data.put("startTime", p.getStartMinute());
+        data.put("endTime", p.getEndMinute());
+        data.put("popularity", p.getArtist().getPopularity());
+
+        // 资源路径来自 ArtistCatalog：按本调度器目录中的 id 直接取已解析的 URL
+        ArtistCatalog.Entry assets = catalog.get(catalog.intern(p.getArtist()));
+        data.put("songTitle", assets.getSongTitle());
+        data.put("audioUrl", assets.getAudioUrl());
+        data.put("posterImage", assets.getPosterUrl());
+        return data;
+    }
+
+    /**
+     * 广播全量状态 (新连接与重连补发由服务器自动处理，这里用于强制刷新所有客户端)
      */
     public void broadcastCurrentState() {
         if (server != null) {
-            server.broadcast(generateCurrentStateJson());
+            server.broadcastSnapshot();
         }
     }
 
-    // --- 内部类: FanReminder ---
-    private static class FanReminder implements Comparable<FanReminder> {
-        private final String fanId;
-        private final Performance performance;
-        private final long reminderTime;
+    /**
+     * 批量变更开始：批次内的所有增量在 commitBatch 时合并为一帧推送给前端。
+     */
+    public void beginBatch() {
+        if (server != null) {
+            server.beginBatch();
+        }
+    }
 
-        public FanReminder(String fanId, Performance performance, long reminderTime) {
-            this.fanId = fanId;
-            this.performance = performance;
-            this.reminderTime = reminderTime;
+    public void commitBatch() {
+        if (server != null) {
+            server.commitBatch();
         }
+    }
 
-        public String getFanId() { return fanId; }
-        public Performance getPerformance() { return performance; }
-        public long getReminderTime() { return reminderTime; }
+    // 状态整体变化 (恢复、大批量导入)：发布新快照并向所有客户端推送全量状态
+    private void publishSnapshot() {
+        if (replaying) {
+            return;
+        }
+        if (server != null) {
+            server.resetState(this::commitState);
+        } else {
+            commitState();
+        }
+    }
 
-        @Override
-        public int compareTo(FanReminder other) {
-            return Long.compare(this.reminderTime, other.reminderTime);
+    // 推送一条增量变更：新快照在服务器分配版本号的同一临界区内发布，二者始终对应
+    private void publish(String op, Map<String, Object> delta, DeltaScope scope) {
+        if (replaying) {
+            return; // 回放结束后统一发布快照
         }
+        if (server != null) {
+            server.publishDelta(op, delta, this::commitState, scope);
+        } else {
+            commitState();
+        }
+    }
+
+    // --- 内部类: PlacementResult ---
+    public static class PlacementResult {
+        private final List<Performance> accepted = new ArrayList<>();
+        private final Map<Performance, String> rejected = new LinkedHashMap<>();
+
+        public List<Performance> getAccepted() { return accepted; }
+        public Map<Performance, String> getRejected() { return rejected; }
     }
 }
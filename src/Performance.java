@@ -1,3 +1,5 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Performance.java
  * 演出场次类，作为双向链表的节点。
@@ -6,8 +8,14 @@
  */
 
 public class Performance {
+    // 演出编号生成器，保证每场演出拥有唯一 id (用于时间轴索引的排序键)
+    private static final AtomicInteger ID_SEQUENCE = new AtomicInteger();
+
+    private final int id;
     private final Artist artist;
-    private final TimeSlot timeSlot;
+    // 打包的时间段 (见 TimeSlot)，不保留 TimeSlot 对象；volatile 保证读线程不会读到撕裂的 long
+    private volatile long slot;
+    private final String stageName;
 
     // 双向链表指针
     public Performance prev;
@@ -15,25 +23,75 @@ public class Performance {
 
     // 初始化
     public Performance(Artist artist, TimeSlot timeSlot) {
+        this(artist, timeSlot, MusicFestivalScheduler.DEFAULT_STAGE);
+    }
+
+    // 初始化--指定舞台
+    public Performance(Artist artist, TimeSlot timeSlot, String stageName) {
+        this(ID_SEQUENCE.incrementAndGet(), artist, timeSlot, stageName);
+    }
+
+    // 初始化--沿用已有编号 (从日志或快照恢复时使用)
+    Performance(int id, Artist artist, TimeSlot timeSlot, String stageName) {
+        reserveIds(id);
+        this.id = id;
         this.artist = artist;
-        this.timeSlot = timeSlot;
+        this.slot = timeSlot.getPacked();
+        this.stageName = stageName;
         this.prev = null;
         this.next = null;
     }
 
+    // 保证之后新建的演出编号大于 maxId (恢复后避免与已恢复的演出重复)
+    static void reserveIds(int maxId) {
+        ID_SEQUENCE.accumulateAndGet(maxId, Math::max);
+    }
+
+    static int lastId() {
+        return ID_SEQUENCE.get();
+    }
+
+    // 访问器--id
+    public int getId() {
+        return id;
+    }
+
     // 访问器--artist
     public Artist getArtist() {
         return artist;
     }
 
-    // 访问器--timeSlot
+    // 访问器--timeSlot (按打包值新建，热点路径请使用 getSlot / getStartMinute / getEndMinute)
     public TimeSlot getTimeSlot() {
-        return timeSlot;
+        return TimeSlot.fromPacked(slot);
+    }
+
+    // 打包的时间段
+    public long getSlot() {
+        return slot;
+    }
+
+    public int getStartMinute() {
+        return TimeSlot.startOf(slot);
+    }
+
+    public int getEndMinute() {
+        return TimeSlot.endOf(slot);
+    }
+
+    // 修改时间段：只能由 DoublyLinkedList 在同步更新区间索引时调用
+    void setTimeSlot(TimeSlot timeSlot) {
+        this.slot = timeSlot.getPacked();
+    }
+
+    // 访问器--stageName
+    public String getStageName() {
+        return stageName;
     }
 
     // 字符串表示---打印演出信息
     @Override
     public String toString() {
-        return String.format("【%s】在 %s 演出", artist.getName(), timeSlot.toString());
+        return String.format("【%s】在 %s %s 演出", artist.getName(), stageName, getTimeSlot());
     }
 }
@@ -0,0 +1,261 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * PopularityLeaderboard.java
+ * 人气排行榜：带跨度 (span) 的跳表，按人气从高到低排序，人气相同时按艺人 id 升序。
+ * 艺人 id (调用方 ArtistCatalog.intern 返回的目录 id) -> 节点的哈希表让更新、删除先 O(1) 定位，再 O(log n) 调整位置；
+ * 前 K 名沿底层链表读取，O(k)；名次查询沿搜索路径累加跨度，O(log n)。
+ *
+ * 排行榜保存自己的分数副本，直接修改 Artist.popularity 不会破坏排序，
+ * 分数只通过 put() 更新。读写锁允许多个看板线程并发读取，投票更新时独占写入。
+ */
+public class PopularityLeaderboard {
+
+    private static final int MAX_LEVEL = 32;
+
+    private static final class Node {
+        final Artist artist;
+        final int id;
+        int score;
+        Node backward; // 底层链表的前驱，用于判断能否原地更新
+        final Node[] next;
+        final int[] span; // next[i] 跨过的底层节点数
+
+        Node(Artist artist, int id, int score, int level) {
+            this.artist = artist;
+            this.id = id;
+            this.score = score;
+            this.next = new Node[level];
+            this.span = new int[level];
+        }
+    }
+
+    private final Node head = new Node(null, -1, 0, MAX_LEVEL);
+    private final Map<Integer, Node> nodes = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private int level = 1;
+    private int size;
+
+    /**
+     * 加入或更新艺人的人气分数。id 是该艺人在调度器自己的 ArtistCatalog 中驻留的 id，
+     * 同一艺人每次必须传入相同的 id。
+     */
+    public void put(Artist artist, int id, int score) {
+        if (id < 0) {
+            throw new IllegalArgumentException("艺人尚未在目录中登记: " + artist.getName());
+        }
+        lock.writeLock().lock();
+        try {
+            Node node = nodes.get(id);
+            if (node != null) {
+                if (node.score == score) {
+                    return;
+                }
+                // 新分数不改变与前后邻居的相对顺序时原地修改，省去一次删除和插入
+                Node after = node.next[0];
+                if ((node.backward == null || before(node.backward, score, id))
+                        && (after == null || before(score, id, after))) {
+                    node.score = score;
+                    return;
+                }
+                delete(node);
+            }
+            nodes.put(id, insert(artist, id, score));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean remove(int id) {
+        lock.writeLock().lock();
+        try {
+            Node node = nodes.remove(id);
+            if (node == null) {
+                return false;
+            }
+            delete(node);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 人气最高的前 k 位艺人，按名次排列。
+     */
+    public List<Artist> top(int k) {
+        lock.readLock().lock();
+        try {
+            List<Artist> result = new ArrayList<>(Math.max(0, Math.min(k, size)));
+            for (Node x = head.next[0]; x != null && result.size() < k; x = x.next[0]) {
+                result.add(x.artist);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 目录 id 为 id 的艺人的名次 (从 1 开始)，不在榜上时返回 -1。
+     */
+    public int rankOf(int id) {
+        lock.readLock().lock();
+        try {
+            Node node = nodes.get(id);
+            if (node == null) {
+                return -1;
+            }
+            int rank = 0;
+            Node x = head;
+            for (int i = level - 1; i >= 0; i--) {
+                while (x.next[i] != null && (x.next[i] == node || before(x.next[i], node.score, node.id))) {
+                    rank += x.span[i];
+                    x = x.next[i];
+                }
+                if (x == node) {
+                    return rank;
+                }
+            }
+            return -1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 第 rank 名 (从 1 开始) 的艺人，越界时返回 null。O(log n)。
+     */
+    public Artist getByRank(int rank) {
+        lock.readLock().lock();
+        try {
+            if (rank < 1 || rank > size) {
+                return null;
+            }
+            int traversed = 0;
+            Node x = head;
+            for (int i = level - 1; i >= 0; i--) {
+                while (x.next[i] != null && traversed + x.span[i] <= rank) {
+                    traversed += x.span[i];
+                    x = x.next[i];
+                }
+                if (traversed == rank) {
+                    return x.artist;
+                }
+            }
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 排行榜中记录的分数，不在榜上时返回 -1
+    public int scoreOf(int id) {
+        lock.readLock().lock();
+        try {
+            Node node = nodes.get(id);
+            return node == null ? -1 : node.score;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // --- 内部实现 (调用方持有写锁) ---
+
+    private Node insert(Artist artist, int id, int score) {
+        Node[] update = new Node[MAX_LEVEL];
+        int[] rank = new int[MAX_LEVEL];
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            rank[i] = i == level - 1 ? 0 : rank[i + 1];
+            while (x.next[i] != null && before(x.next[i], score, id)) {
+                rank[i] += x.span[i];
+                x = x.next[i];
+            }
+            update[i] = x;
+        }
+        int nodeLevel = randomLevel();
+        if (nodeLevel > level) {
+            for (int i = level; i < nodeLevel; i++) {
+                rank[i] = 0;
+                update[i] = head;
+                head.span[i] = size;
+            }
+            level = nodeLevel;
+        }
+        x = new Node(artist, id, score, nodeLevel);
+        for (int i = 0; i < nodeLevel; i++) {
+            x.next[i] = update[i].next[i];
+            update[i].next[i] = x;
+            x.span[i] = update[i].span[i] - (rank[0] - rank[i]);
+            update[i].span[i] = rank[0] - rank[i] + 1;
+        }
+        for (int i = nodeLevel; i < level; i++) {
+            update[i].span[i]++;
+        }
+        x.backward = update[0] == head ? null : update[0];
+        if (x.next[0] != null) {
+            x.next[0].backward = x;
+        }
+        size++;
+        return x;
+    }
+
+    private void delete(Node node) {
+        Node[] update = new Node[MAX_LEVEL];
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next[i] != null && before(x.next[i], node.score, node.id)) {
+                x = x.next[i];
+            }
+            update[i] = x;
+        }
+        for (int i = 0; i < level; i++) {
+            if (update[i].next[i] == node) {
+                update[i].span[i] += node.span[i] - 1;
+                update[i].next[i] = node.next[i];
+            } else {
+                update[i].span[i]--;
+            }
+        }
+        if (node.next[0] != null) {
+            node.next[0].backward = node.backward;
+        }
+        while (level > 1 && head.next[level - 1] == null) {
+            level--;
+        }
+        size--;
+    }
+
+    // 节点 n 是否排在 (score, id) 之前：人气高者在前，相同时 id 小者在前
+    private static boolean before(Node n, int score, int id) {
+        return n.score > score || (n.score == score && n.id < id);
+    }
+
+    private static boolean before(int score, int id, Node n) {
+        return score > n.score || (score == n.score && id < n.id);
+    }
+
+    private static int randomLevel() {
+        int lvl = 1;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (lvl < MAX_LEVEL && (random.nextInt() & 3) == 0) {
+            lvl++;
+        }
+        return lvl;
+    }
+}
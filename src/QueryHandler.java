@@ -0,0 +1,64 @@
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * QueryHandler.java
+ * WebSocket 查询接口：服务器收到 query / subscribe 指令后交给它，从服务端索引直接回答，
+ * 客户端不必先接收全量阵容再自行过滤。由 ScheduleQueries 基于调度器的只读快照实现。
+ */
+public interface QueryHandler {
+
+    /**
+     * 执行一条查询 (kind 为 window / stage / genre / artist / top / now)，返回可直接序列化为 JSON 的结果。
+     * 参数缺失或格式错误时抛出 IllegalArgumentException，服务器会回复一条 error 消息。
+     */
+    Object query(String kind, JsonObject params);
+
+    // 订阅建立时的初始数据：当前与订阅条件匹配的全部演出
+    List<Map<String, Object>> select(Subscription subscription);
+
+    // --- 参数解析辅助 ---
+
+    static String stringParam(JsonObject params, String name, String fallback) {
+        JsonElement element = params.get(name);
+        return element != null && element.isJsonPrimitive() ? element.getAsString() : fallback;
+    }
+
+    static String requireString(JsonObject params, String name) {
+        String value = stringParam(params, name, null);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("缺少参数: " + name);
+        }
+        return value;
+    }
+
+    static int intParam(JsonObject params, String name, int fallback) {
+        JsonElement element = params.get(name);
+        if (element == null || element.isJsonNull()) {
+            return fallback;
+        }
+        try {
+            return element.getAsInt();
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("参数 " + name + " 必须是整数");
+        }
+    }
+
+    // 时间参数：音乐节分钟数，或 TimeSlot.parseMinute 支持的 "20:30" / "2 20:30" 形式
+    static int minuteParam(JsonObject params, String name, int fallback) {
+        JsonElement element = params.get(name);
+        if (element == null || element.isJsonNull()) {
+            return fallback;
+        }
+        if (!element.isJsonPrimitive()) {
+            throw new IllegalArgumentException("无法解析时间参数: " + name);
+        }
+        if (element.getAsJsonPrimitive().isNumber()) {
+            return element.getAsInt();
+        }
+        return TimeSlot.parseMinute(element.getAsString());
+    }
+}
@@ -0,0 +1,107 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ReminderIndex.java
+ * 粉丝提醒的二级索引：粉丝 ID -> (演出 ID -> 提醒)，演出 ID -> 提醒集合。
+ * 同一粉丝对同一场演出只保留一条提醒 (去重)，按粉丝或演出查询、取消都是 O(1) 哈希查找。
+ * 时间轮负责按时间投递，本索引只负责按 "谁" 和 "哪场" 查找；两者由调度器同步维护。
+ */
+public class ReminderIndex {
+
+    private final Map<String, Map<Integer, FanReminder>> byFan = new HashMap<>();
+    private final Map<Integer, Set<FanReminder>> byPerformance = new HashMap<>();
+    private int size;
+
+    /**
+     * 登记一条提醒。该粉丝已预约同一场演出时不做修改，返回已存在的提醒；否则返回 null。
+     */
+    public synchronized FanReminder add(FanReminder reminder) {
+        Map<Integer, FanReminder> fanReminders = byFan.computeIfAbsent(reminder.getFanId(), k -> new LinkedHashMap<>());
+        int performanceId = reminder.getPerformance().getId();
+        FanReminder existing = fanReminders.putIfAbsent(performanceId, reminder);
+        if (existing != null) {
+            return existing;
+        }
+        byPerformance.computeIfAbsent(performanceId, k -> new LinkedHashSet<>()).add(reminder);
+        size++;
+        return null;
+    }
+
+    public synchronized FanReminder find(String fanId, Performance performance) {
+        Map<Integer, FanReminder> fanReminders = byFan.get(fanId);
+        return fanReminders == null ? null : fanReminders.get(performance.getId());
+    }
+
+    /**
+     * 移除一条提醒 (已投递或已取消)，不在索引中时返回 false。
+     */
+    public synchronized boolean remove(FanReminder reminder) {
+        Map<Integer, FanReminder> fanReminders = byFan.get(reminder.getFanId());
+        int performanceId = reminder.getPerformance().getId();
+        if (fanReminders == null || fanReminders.get(performanceId) != reminder) {
+            return false;
+        }
+        fanReminders.remove(performanceId);
+        if (fanReminders.isEmpty()) {
+            byFan.remove(reminder.getFanId());
+        }
+        Set<FanReminder> performanceReminders = byPerformance.get(performanceId);
+        performanceReminders.remove(reminder);
+        if (performanceReminders.isEmpty()) {
+            byPerformance.remove(performanceId);
+        }
+        size--;
+        return true;
+    }
+
+    // 批量移除 (时间轮投递出的一批提醒)
+    public synchronized void removeAll(List<FanReminder> batch) {
+        for (FanReminder reminder : batch) {
+            remove(reminder);
+        }
+    }
+
+    public synchronized List<FanReminder> getByFan(String fanId) {
+        Map<Integer, FanReminder> fanReminders = byFan.get(fanId);
+        return fanReminders == null ? Collections.emptyList() : new ArrayList<>(fanReminders.values());
+    }
+
+    public synchronized List<FanReminder> getByPerformance(Performance performance) {
+        Set<FanReminder> performanceReminders = byPerformance.get(performance.getId());
+        return performanceReminders == null ? Collections.emptyList() : new ArrayList<>(performanceReminders);
+    }
+
+    // 全部待投递的提醒 (写快照时使用)
+    public synchronized List<FanReminder> getAll() {
+        List<FanReminder> all = new ArrayList<>(size);
+        for (Map<Integer, FanReminder> fanReminders : byFan.values()) {
+            all.addAll(fanReminders.values());
+        }
+        return all;
+    }
+
+    // 移出并返回某粉丝的全部提醒
+    public synchronized List<FanReminder> removeByFan(String fanId) {
+        List<FanReminder> removed = getByFan(fanId);
+        removeAll(removed);
+        return removed;
+    }
+
+    // 移出并返回某场演出的全部提醒 (演出被删除时使用)
+    public synchronized List<FanReminder> removeByPerformance(Performance performance) {
+        List<FanReminder> removed = getByPerformance(performance);
+        removeAll(removed);
+        return removed;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+}
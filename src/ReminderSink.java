@@ -0,0 +1,11 @@
+import java.util.List;
+
+/**
+ * ReminderSink.java
+ * 提醒投递出口：时间轮每次推进把本轮到期的提醒作为一个批次交给它。
+ * 实现可以是控制台输出、推送网关，或测试用的 InMemoryReminderSink。
+ */
+@FunctionalInterface
+public interface ReminderSink {
+    void deliver(List<FanReminder> batch);
+}
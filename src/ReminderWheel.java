@@ -0,0 +1,306 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * ReminderWheel.java
+ * 分层时间轮：取代按提醒时间排序的优先队列。
+ * 4 层 × 256 个槽位覆盖 2^32 个时间刻度，更远的提醒放入溢出链表，最高层进位时再重新入轮。
+ * 入轮、取消都是 O(1)；推进时同一刻度到期的所有提醒作为一个批次交给 ReminderSink。
+ * 可以手动 advanceTo(当前时间)，也可以 start() 启动后台线程按自己的时钟推进。
+ */
+public class ReminderWheel implements AutoCloseable {
+
+    private static final AsyncLog LOG = AsyncLog.get("提醒");
+
+    private static final int SLOT_BITS = 8;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    // 两条特殊链表：超出时间轮范围的提醒，以及入轮时就已到期的提醒
+    private static final int OVERFLOW = LEVELS;
+    private static final int DUE = LEVELS + 1;
+
+    private final FanReminder[][] heads;
+    private final int[] levelCounts = new int[LEVELS + 2];
+    private long now; // 下一个待处理的刻度，之前的刻度都已处理
+    private int size;
+
+    private volatile ReminderSink sink;
+    // 推进时先获取的外部锁，出轮和 onDrained 在同一临界区内执行 (见 guardAdvance)
+    private volatile Lock advanceLock;
+    private volatile Consumer<List<FanReminder>> onDrained;
+    private ScheduledExecutorService clockThread;
+    private ScheduledFuture<?> clockTask;
+
+    public ReminderWheel(long startTick, ReminderSink sink) {
+        this.heads = new FanReminder[LEVELS + 2][];
+        for (int level = 0; level < LEVELS; level++) {
+            heads[level] = new FanReminder[SLOTS];
+        }
+        heads[OVERFLOW] = new FanReminder[1];
+        heads[DUE] = new FanReminder[1];
+        this.now = startTick;
+        this.sink = sink;
+    }
+
+    public void setSink(ReminderSink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * 推进时先获取 lock，在持有它时出轮并调用 onDrained，然后释放再交给 sink 投递。
+     * 调度器用写锁保证 "取出到期提醒" 与 "记录推进日志" 之间不会插入新的提醒。
+     */
+    public void guardAdvance(Lock lock, Consumer<List<FanReminder>> onDrained) {
+        this.onDrained = onDrained;
+        this.advanceLock = lock;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // 当前时间轮时间 (已处理到的刻度)
+    public synchronized long currentTime() {
+        return now - 1;
+    }
+
+    /**
+     * 加入一条提醒，O(1)。提醒时间早于当前时间时在下一次推进时立即投递。
+     */
+    public synchronized void schedule(FanReminder reminder) {
+        if (reminder.wheelLevel >= 0) {
+            throw new IllegalStateException("提醒已在时间轮中: " + reminder);
+        }
+        place(reminder);
+        size++;
+    }
+
+    /**
+     * 取消一条尚未投递的提醒，O(1)。提醒不在时间轮中时返回 false。
+     */
+    public synchronized boolean cancel(FanReminder reminder) {
+        if (reminder.wheelLevel < 0) {
+            return false;
+        }
+        unlink(reminder);
+        size--;
+        return true;
+    }
+
+    /**
+     * 把一组提醒的时间整体平移 shift (演出改期时使用)，一次加锁完成，每条 O(1)。
+     * 已投递或已取消的提醒会被跳过，返回实际平移的数量。
+     */
+    public synchronized int retime(Collection<FanReminder> batch, long shift) {
+        int moved = 0;
+        for (FanReminder reminder : batch) {
+            if (reminder.wheelLevel < 0) {
+                continue;
+            }
+            unlink(reminder);
+            reminder.setReminderTime(reminder.getReminderTime() + shift);
+            place(reminder);
+            moved++;
+        }
+        return moved;
+    }
+
+    /**
+     * 推进到 time (含)，把到期的提醒按批次交给 sink，返回投递的数量。
+     * 连续的空闲刻度会按层整段跳过，时钟跳跃很大时也不会逐刻度空转。
+     */
+    public int advanceTo(long time) {
+        List<FanReminder> due = new ArrayList<>();
+        Lock lock = advanceLock;
+        if (lock != null) {
+            lock.lock();
+        }
+        try {
+            synchronized (this) {
+                drainList(DUE, 0, due);
+                while (now <= time) {
+                    if ((now & SLOT_MASK) == 0) {
+                        cascade();
+                    }
+                    drainList(0, (int) (now & SLOT_MASK), due);
+                    now++;
+                    skipIdle(time);
+                }
+                size -= due.size();
+            }
+            Consumer<List<FanReminder>> listener = onDrained;
+            if (listener != null && !due.isEmpty()) {
+                listener.accept(due);
+            }
+        } finally {
+            if (lock != null) {
+                lock.unlock();
+            }
+        }
+        if (!due.isEmpty()) {
+            ReminderSink target = sink;
+            if (target != null) {
+                target.deliver(due);
+            }
+        }
+        return due.size();
+    }
+
+    /**
+     * 启动后台推进线程：每 periodMillis 读取一次 clock 并推进到该时间。
+     */
+    public synchronized void start(LongSupplier clock, long periodMillis) {
+        if (clockTask != null) {
+            throw new IllegalStateException("时间轮已在运行。");
+        }
+        if (clockThread == null) {
+            clockThread = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "reminder-wheel");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        clockTask = clockThread.scheduleAtFixedRate(() -> {
+            try {
+                advanceTo(clock.getAsLong());
+            } catch (RuntimeException e) {
+                LOG.error("提醒投递失败: {}", e.toString());
+            }
+        }, 0, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (clockTask != null) {
+            clockTask.cancel(false);
+            clockTask = null;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        stop();
+        if (clockThread != null) {
+            clockThread.shutdown();
+            clockThread = null;
+        }
+    }
+
+    // --- 内部实现 (调用方持有锁) ---
+
+    // 按与当前时间的距离选择层级，槽位由提醒时间本身的位决定
+    private void place(FanReminder reminder) {
+        long expires = reminder.getReminderTime();
+        long delta = expires - now;
+        if (delta < 0) {
+            link(reminder, DUE, 0);
+            return;
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            if (delta < (1L << (SLOT_BITS * (level + 1)))) {
+                link(reminder, level, (int) ((expires >>> (SLOT_BITS * level)) & SLOT_MASK));
+                return;
+            }
+        }
+        link(reminder, OVERFLOW, 0);
+    }
+
+    // 当前刻度是某层的整段起点时，把该层对应槽位的提醒重新分配到更低层
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            int slot = (int) ((now >>> (SLOT_BITS * level)) & SLOT_MASK);
+            redistribute(level, slot);
+            if (slot != 0) {
+                return;
+            }
+        }
+        redistribute(OVERFLOW, 0);
+    }
+
+    private void redistribute(int level, int slot) {
+        FanReminder node = heads[level][slot];
+        heads[level][slot] = null;
+        while (node != null) {
+            FanReminder next = node.wheelNext;
+            levelCounts[level]--;
+            node.wheelPrev = null;
+            node.wheelNext = null;
+            node.wheelLevel = -1;
+            place(node);
+            node = next;
+        }
+    }
+
+    // 低层全部为空时，直接跳到下一个需要进位的刻度 (不超过 time + 1)
+    private void skipIdle(long time) {
+        int level = 0;
+        while (level < LEVELS && levelCounts[level] == 0) {
+            level++;
+        }
+        if (level == 0) {
+            return;
+        }
+        long target;
+        if (level == LEVELS && levelCounts[OVERFLOW] == 0) {
+            target = time + 1;
+        } else {
+            long span = 1L << (SLOT_BITS * level);
+            target = Math.min((now + span - 1) & -span, time + 1);
+        }
+        if (target > now) {
+            now = target;
+        }
+    }
+
+    private void drainList(int level, int slot, List<FanReminder> out) {
+        FanReminder node = heads[level][slot];
+        heads[level][slot] = null;
+        while (node != null) {
+            FanReminder next = node.wheelNext;
+            levelCounts[level]--;
+            node.wheelPrev = null;
+            node.wheelNext = null;
+            node.wheelLevel = -1;
+            out.add(node);
+            node = next;
+        }
+    }
+
+    private void link(FanReminder reminder, int level, int slot) {
+        FanReminder head = heads[level][slot];
+        reminder.wheelPrev = null;
+        reminder.wheelNext = head;
+        if (head != null) {
+            head.wheelPrev = reminder;
+        }
+        heads[level][slot] = reminder;
+        reminder.wheelLevel = level;
+        reminder.wheelSlot = slot;
+        levelCounts[level]++;
+    }
+
+    private void unlink(FanReminder reminder) {
+        int level = reminder.wheelLevel;
+        if (reminder.wheelPrev != null) {
+            reminder.wheelPrev.wheelNext = reminder.wheelNext;
+        } else {
+            heads[level][reminder.wheelSlot] = reminder.wheelNext;
+        }
+        if (reminder.wheelNext != null) {
+            reminder.wheelNext.wheelPrev = reminder.wheelPrev;
+        }
+        reminder.wheelPrev = null;
+        reminder.wheelNext = null;
+        reminder.wheelLevel = -1;
+        levelCounts[level]--;
+    }
+}
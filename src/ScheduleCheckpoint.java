@@ -0,0 +1,272 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * ScheduleCheckpoint.java
+ * 调度器状态的紧凑二进制快照：舞台、艺人、各舞台按时间轴顺序的演出和待投递的粉丝提醒。
+ * 写入时先写临时文件并 fsync，再原子替换；读取时整个文件 mmap 进来顺序解码。
+ * generation 表示该快照之后需要回放的第一个日志文件编号。
+ *
+ * 布局 (大端序)：
+ *   'S' 'W' 'C' 'P' | u8 格式版本 | 3 字节填充
+ *   i64 generation | i32 最大演出编号 | i64 提醒时间轮时间
+ *   u32 字符串数量 | 每个字符串: u16 UTF-8 字节长度 + 字节
+ *   u32 舞台数量   | 每个舞台: i32 名称
+ *   u32 艺人数量   | 每位艺人: i32 名称 | i32 风格 | i32 人气 | i32 海报 | i32 音频
+ *   u32 演出数量   | 每场演出: i32 id | i32 舞台下标 | i32 艺人下标 | i32 开始 | i32 结束 (音乐节分钟)
+ *   u32 提醒数量   | 每条提醒: i32 粉丝 | i32 演出 id | i64 提醒时间
+ *   u32 CRC32C (之前的全部字节)
+ * 字符串字段均为字符串表下标，-1 表示 null。
+ */
+public final class ScheduleCheckpoint {
+
+    // 格式版本，布局变化时递增；读取时只接受当前版本
+    public static final byte FORMAT_VERSION = 2;
+    private static final byte[] MAGIC = {'S', 'W', 'C', 'P'};
+
+    final long generation;
+    final int lastPerformanceId;
+    final long reminderTime;
+
+    final List<String> stages;
+    final List<Artist> artists;
+
+    // 演出按舞台、时间轴顺序排列的平行数组
+    final int[] performanceIds;
+    final int[] performanceStages;
+    final int[] performanceArtists;
+    final int[] startTimes;
+    final int[] endTimes;
+
+    // 待投递提醒的平行数组
+    final String[] fanIds;
+    final int[] reminderPerformances;
+    final long[] reminderTimes;
+
+    ScheduleCheckpoint(long generation, int lastPerformanceId, long reminderTime,
+                       List<String> stages, List<Artist> artists,
+                       int[] performanceIds, int[] performanceStages, int[] performanceArtists,
+                       int[] startTimes, int[] endTimes,
+                       String[] fanIds, int[] reminderPerformances, long[] reminderTimes) {
+        this.generation = generation;
+        this.lastPerformanceId = lastPerformanceId;
+        this.reminderTime = reminderTime;
+        this.stages = stages;
+        this.artists = artists;
+        this.performanceIds = performanceIds;
+        this.performanceStages = performanceStages;
+        this.performanceArtists = performanceArtists;
+        this.startTimes = startTimes;
+        this.endTimes = endTimes;
+        this.fanIds = fanIds;
+        this.reminderPerformances = reminderPerformances;
+        this.reminderTimes = reminderTimes;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public int getPerformanceCount() {
+        return performanceIds.length;
+    }
+
+    public int getReminderCount() {
+        return fanIds.length;
+    }
+
+    /**
+     * 写入 file：先写同目录下的临时文件并 fsync，再原子重命名，崩溃时旧快照保持完整。
+     */
+    public void write(Path file) throws IOException {
+        // 1. 字符串表
+        Map<String, Integer> ids = new HashMap<>();
+        List<byte[]> strings = new ArrayList<>();
+        int[] stageRefs = new int[stages.size()];
+        for (int i = 0; i < stageRefs.length; i++) {
+            stageRefs[i] = intern(stages.get(i), ids, strings);
+        }
+        int[] artistRefs = new int[artists.size() * 4];
+        for (int i = 0; i < artists.size(); i++) {
+            Artist artist = artists.get(i);
+            artistRefs[i * 4] = intern(artist.getName(), ids, strings);
+            artistRefs[i * 4 + 1] = intern(artist.getGenre(), ids, strings);
+            artistRefs[i * 4 + 2] = intern(artist.getPosterPath(), ids, strings);
+            artistRefs[i * 4 + 3] = intern(artist.getAudioPath(), ids, strings);
+        }
+        int[] fanRefs = new int[fanIds.length];
+        for (int i = 0; i < fanRefs.length; i++) {
+            fanRefs[i] = intern(fanIds[i], ids, strings);
+        }
+
+        // 2. 顺序写出，边写边计算校验和
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            CRC32C crc = new CRC32C();
+            OutputStream raw = Channels.newOutputStream(channel);
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(raw, 1 << 16), crc));
+            out.write(MAGIC);
+            out.writeByte(FORMAT_VERSION);
+            out.write(new byte[3]);
+            out.writeLong(generation);
+            out.writeInt(lastPerformanceId);
+            out.writeLong(reminderTime);
+
+            out.writeInt(strings.size());
+            for (byte[] utf8 : strings) {
+                out.writeShort(utf8.length);
+                out.write(utf8);
+            }
+            out.writeInt(stageRefs.length);
+            for (int ref : stageRefs) {
+                out.writeInt(ref);
+            }
+            out.writeInt(artists.size());
+            for (int i = 0; i < artists.size(); i++) {
+                out.writeInt(artistRefs[i * 4]);
+                out.writeInt(artistRefs[i * 4 + 1]);
+                out.writeInt(artists.get(i).getPopularity());
+                out.writeInt(artistRefs[i * 4 + 2]);
+                out.writeInt(artistRefs[i * 4 + 3]);
+            }
+            out.writeInt(performanceIds.length);
+            for (int i = 0; i < performanceIds.length; i++) {
+                out.writeInt(performanceIds[i]);
+                out.writeInt(performanceStages[i]);
+                out.writeInt(performanceArtists[i]);
+                out.writeInt(startTimes[i]);
+                out.writeInt(endTimes[i]);
+            }
+            out.writeInt(fanRefs.length);
+            for (int i = 0; i < fanRefs.length; i++) {
+                out.writeInt(fanRefs[i]);
+                out.writeInt(reminderPerformances[i]);
+                out.writeLong(reminderTimes[i]);
+            }
+            out.flush();
+            // CheckedOutputStream 在写入前更新校验和，校验值本身不参与计算
+            int checksum = (int) crc.getValue();
+            ByteBuffer tail = ByteBuffer.allocate(4).putInt(checksum);
+            tail.flip();
+            while (tail.hasRemaining()) {
+                channel.write(tail);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 把快照文件 mmap 后解码，校验和不符时抛出 IOException。
+     */
+    public static ScheduleCheckpoint read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 32 || size > Integer.MAX_VALUE) {
+                throw new IOException("快照文件大小异常: " + file);
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            CRC32C crc = new CRC32C();
+            crc.update(map.slice(0, (int) size - 4));
+            if ((int) crc.getValue() != map.getInt((int) size - 4)) {
+                throw new IOException("快照校验和不符: " + file);
+            }
+            for (byte b : MAGIC) {
+                if (map.get() != b) {
+                    throw new IOException("不是调度器快照文件: " + file);
+                }
+            }
+            byte version = map.get();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("不支持的快照格式版本: " + version);
+            }
+            map.position(map.position() + 3);
+            long generation = map.getLong();
+            int lastPerformanceId = map.getInt();
+            long reminderTime = map.getLong();
+
+            String[] strings = new String[map.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                byte[] utf8 = new byte[map.getShort() & 0xFFFF];
+                map.get(utf8);
+                strings[i] = new String(utf8, StandardCharsets.UTF_8);
+            }
+            List<String> stages = new ArrayList<>();
+            for (int i = map.getInt(); i > 0; i--) {
+                stages.add(string(strings, map.getInt()));
+            }
+            List<Artist> artists = new ArrayList<>();
+            for (int i = map.getInt(); i > 0; i--) {
+                String name = string(strings, map.getInt());
+                String genre = string(strings, map.getInt());
+                int popularity = map.getInt();
+                String poster = string(strings, map.getInt());
+                String audio = string(strings, map.getInt());
+                artists.add(new Artist(name, genre, popularity, poster, audio));
+            }
+            int performances = map.getInt();
+            int[] ids = new int[performances];
+            int[] stageIdx = new int[performances];
+            int[] artistIdx = new int[performances];
+            int[] starts = new int[performances];
+            int[] ends = new int[performances];
+            for (int i = 0; i < performances; i++) {
+                ids[i] = map.getInt();
+                stageIdx[i] = map.getInt();
+                artistIdx[i] = map.getInt();
+                starts[i] = map.getInt();
+                ends[i] = map.getInt();
+            }
+            int reminders = map.getInt();
+            String[] fans = new String[reminders];
+            int[] reminderPerformances = new int[reminders];
+            long[] times = new long[reminders];
+            for (int i = 0; i < reminders; i++) {
+                fans[i] = string(strings, map.getInt());
+                reminderPerformances[i] = map.getInt();
+                times[i] = map.getLong();
+            }
+            return new ScheduleCheckpoint(generation, lastPerformanceId, reminderTime, stages, artists,
+                    ids, stageIdx, artistIdx, starts, ends, fans, reminderPerformances, times);
+        }
+    }
+
+    private static int intern(String value, Map<String, Integer> ids, List<byte[]> strings) {
+        if (value == null) {
+            return -1;
+        }
+        Integer id = ids.get(value);
+        if (id == null) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            if (utf8.length > 0xFFFF) {
+                throw new IllegalArgumentException("字符串过长，无法写入快照");
+            }
+            id = strings.size();
+            ids.put(value, id);
+            strings.add(utf8);
+        }
+        return id;
+    }
+
+    private static String string(String[] strings, int ref) {
+        return ref < 0 ? null : strings[ref];
+    }
+}
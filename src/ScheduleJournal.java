@@ -0,0 +1,282 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * ScheduleJournal.java
+ * 只追加的操作日志文件，每条记录带长度和 CRC32C 校验：
+ *   u32 负载长度 | u32 CRC32C(负载) | 负载 (u8 操作类型 + 操作字段)
+ *
+ * 组提交：append() 只把记录拷贝进内存缓冲区，由 "journal-sync" 线程每个提交窗口
+ * 把积累的所有记录一次写入并 fsync，多次写操作共享一次 fsync。
+ * 需要确认落盘时调用 sync()，它会立即触发一次提交并等待完成。
+ * 崩溃时最多丢失最后一个提交窗口内的记录；写了一半的尾部记录在恢复时由校验和识别并截断。
+ * 切换到新一代日志时可以指定上一代日志：新日志第一次写盘前先等上一代全部落盘，
+ * 回放不会遇到新一代有记录、上一代却缺了尾部的情况。
+ */
+public class ScheduleJournal implements AutoCloseable {
+
+    private static final AsyncLog LOG = AsyncLog.get("持久化");
+
+    public static final long DEFAULT_SYNC_INTERVAL_MS = 10;
+
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 16 << 20;
+
+    // 回放时逐条交给调用方，record 的 position 位于操作类型之后
+    public interface RecordHandler {
+        void apply(byte type, ByteBuffer record);
+    }
+
+    private final Path file;
+    private final FileChannel channel;
+    private final long syncIntervalNanos;
+    private final Thread syncThread;
+    private final CRC32C crc = new CRC32C();
+    private ScheduleJournal previous; // 只由组提交线程读写，上一代落盘后置空
+
+    // 以下字段由 this 保护
+    private ByteBuffer active = ByteBuffer.allocate(64 << 10);
+    private ByteBuffer spare = ByteBuffer.allocate(64 << 10);
+    private long appended; // 已追加的记录数
+    private long durable;  // 已 fsync 的记录数
+    private boolean flushRequested;
+    private boolean closed;
+    private IOException failure;
+    private long syncCount;
+
+    /**
+     * 打开日志准备追加：文件会先截断到 validLength (回放得到的完整记录末尾)。
+     */
+    public ScheduleJournal(Path file, long validLength, long syncIntervalMillis) throws IOException {
+        this(file, validLength, syncIntervalMillis, null);
+    }
+
+    /**
+     * 打开新一代日志：previous 为上一代日志 (可以为 null)，本日志第一次写盘前等待它落盘。
+     */
+    public ScheduleJournal(Path file, long validLength, long syncIntervalMillis, ScheduleJournal previous) throws IOException {
+        this.file = file;
+        this.previous = previous;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (channel.size() > validLength) {
+            channel.truncate(validLength);
+        }
+        channel.position(validLength);
+        this.syncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(syncIntervalMillis);
+        this.syncThread = new Thread(this::syncLoop, "journal-sync");
+        this.syncThread.setDaemon(true);
+        this.syncThread.start();
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * 追加一条记录 (record 从 position 到 limit 为负载)，返回记录序号。不等待落盘。
+     */
+    public synchronized long append(ByteBuffer record) {
+        if (closed) {
+            throw new IllegalStateException("日志已关闭: " + file);
+        }
+        int length = record.remaining();
+        if (length > MAX_RECORD_BYTES) {
+            throw new IllegalArgumentException("日志记录过大: " + length);
+        }
+        if (active.remaining() < HEADER_BYTES + length) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(active.capacity() * 2, active.position() + HEADER_BYTES + length));
+            active.flip();
+            grown.put(active);
+            active = grown;
+        }
+        crc.reset();
+        crc.update(record.duplicate());
+        active.putInt(length).putInt((int) crc.getValue()).put(record);
+        return ++appended;
+    }
+
+    /**
+     * 立即提交缓冲区中的记录并等待 fsync 完成。
+     */
+    public void sync() throws IOException {
+        synchronized (this) {
+            long target = appended;
+            flushRequested = true;
+            notifyAll();
+            while (durable < target && failure == null && syncThread.isAlive()) {
+                try {
+                    wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("等待日志落盘时被中断", e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    public synchronized long getAppendedCount() {
+        return appended;
+    }
+
+    public synchronized long getDurableCount() {
+        return durable;
+    }
+
+    // fsync 次数：与记录数之比体现组提交的合并效果
+    public synchronized long getSyncCount() {
+        return syncCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        sync();
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            syncThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    // 组提交线程：等待一个窗口 (或被 sync() 唤醒)，交换缓冲区后在锁外写盘
+    private void syncLoop() {
+        while (true) {
+            ByteBuffer batch;
+            long target;
+            synchronized (this) {
+                long deadline = System.nanoTime() + syncIntervalNanos;
+                while (!closed && !flushRequested) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    try {
+                        wait(Math.max(1, remaining / 1_000_000));
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                flushRequested = false;
+                if (active.position() == 0) {
+                    durable = appended;
+                    notifyAll();
+                    if (closed) {
+                        return;
+                    }
+                    continue;
+                }
+                batch = active;
+                active = spare;
+                spare = batch;
+                target = appended;
+            }
+            try {
+                if (previous != null) {
+                    previous.sync();
+                    previous = null;
+                }
+                batch.flip();
+                while (batch.hasRemaining()) {
+                    channel.write(batch);
+                }
+                channel.force(false);
+                batch.clear();
+                synchronized (this) {
+                    durable = target;
+                    syncCount++;
+                    notifyAll();
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                    closed = true;
+                    notifyAll();
+                }
+                LOG.error("日志写入失败: {}", e.toString());
+                return;
+            }
+        }
+    }
+
+    /**
+     * 回放日志文件中的全部完整记录，返回最后一条完整记录的结束位置。
+     * 长度越界或校验和不符的记录视为崩溃时写了一半的尾部，回放到此为止。
+     */
+    public static long replay(Path file, RecordHandler handler) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = in.size();
+            if (size == 0) {
+                return 0;
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("日志文件过大，无法映射: " + file);
+            }
+            MappedByteBuffer map = in.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            CRC32C check = new CRC32C();
+            long valid = 0;
+            while (map.remaining() >= HEADER_BYTES) {
+                int start = map.position();
+                int length = map.getInt();
+                int expected = map.getInt();
+                if (length <= 0 || length > MAX_RECORD_BYTES || length > map.remaining()) {
+                    break;
+                }
+                ByteBuffer record = map.slice(map.position(), length);
+                check.reset();
+                check.update(record.duplicate());
+                if ((int) check.getValue() != expected) {
+                    break;
+                }
+                map.position(map.position() + length);
+                handler.apply(record.get(), record);
+                valid = start + HEADER_BYTES + length;
+            }
+            if (valid < size) {
+                LOG.warn("⚠️ 日志 {} 在偏移 {} 处截断 (不完整的尾部记录)", file.getFileName(), valid);
+            }
+            return valid;
+        }
+    }
+
+    // --- 记录字段编码 (u16 长度 + UTF-8，null 记为 0xFFFF) ---
+
+    public static void putString(ByteBuffer out, String value) {
+        if (value == null) {
+            out.putShort((short) 0xFFFF);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        if (utf8.length >= 0xFFFF) {
+            throw new IllegalArgumentException("字符串过长，无法写入日志");
+        }
+        out.putShort((short) utf8.length).put(utf8);
+    }
+
+    public static String getString(ByteBuffer in) {
+        int length = in.getShort() & 0xFFFF;
+        if (length == 0xFFFF) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        in.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,452 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * SchedulePersistence.java
+ * 调度器的持久化：数据目录下一个快照文件 checkpoint.bin，加上若干按代编号的操作日志 journal-N.log。
+ * 快照记录了它之后应从哪一代日志开始回放；每次写快照时日志切换到新的一代，
+ * 快照安全落盘后再删除更早的日志。恢复 = mmap 读取快照 + 依次回放其后的日志。
+ * 每个日志文件以一条 OP_FORMAT 记录开头 (格式版本)，版本不符或缺少这条记录的日志拒绝回放。
+ *
+ * 日志记录的编码与回放都在这里；append 系列方法由调度器在写锁内调用。
+ */
+public class SchedulePersistence implements AutoCloseable {
+
+    private static final AsyncLog LOG = AsyncLog.get("持久化");
+
+    static final String CHECKPOINT_FILE = "checkpoint.bin";
+    private static final String JOURNAL_PREFIX = "journal-";
+    private static final String JOURNAL_SUFFIX = ".log";
+
+    // 日志操作类型
+    static final byte OP_ADD_STAGE = 1;
+    static final byte OP_ADD = 2;
+    static final byte OP_REMOVE = 3;
+    static final byte OP_SWAP = 4;
+    static final byte OP_RESCHEDULE = 5;
+    static final byte OP_POPULARITY = 6;
+    static final byte OP_REMINDER_ADD = 7;
+    static final byte OP_REMINDER_CANCEL = 8;
+    static final byte OP_REMINDER_ADVANCE = 9;
+    static final byte OP_FORMAT = 10;
+
+    // 日志格式版本 (时间为音乐节分钟)，记录格式变化时递增
+    static final int JOURNAL_VERSION = 2;
+
+    private final Path directory;
+    private final long syncIntervalMillis;
+    private ScheduleJournal journal;
+    private long generation;
+
+    // 编码缓冲区：只在调度器写锁内使用
+    private ByteBuffer scratch = ByteBuffer.allocate(4096);
+
+    private ScheduledExecutorService checkpointThread;
+    private ScheduledFuture<?> checkpointTask;
+    // 写快照互斥。不与 this 共用：快照要等调度器写锁，而关闭时调用方持有写锁
+    private final Object checkpointLock = new Object();
+    private volatile boolean closed;
+    // rotate() 换下的上一代日志，由写快照的线程在调度器写锁外关闭 (等待落盘)；由 this 保护
+    private ScheduleJournal retired;
+
+    private SchedulePersistence(Path directory, long syncIntervalMillis) {
+        this.directory = directory;
+        this.syncIntervalMillis = syncIntervalMillis;
+    }
+
+    /**
+     * 从 directory 恢复状态到 target (调用方持有 target 的写锁)，然后打开日志准备追加。
+     */
+    static SchedulePersistence recover(Path directory, long syncIntervalMillis, Recovery target) throws IOException {
+        Files.createDirectories(directory);
+        SchedulePersistence persistence = new SchedulePersistence(directory, syncIntervalMillis);
+
+        Path checkpointFile = directory.resolve(CHECKPOINT_FILE);
+        long firstGeneration = 0;
+        if (Files.exists(checkpointFile)) {
+            ScheduleCheckpoint checkpoint = ScheduleCheckpoint.read(checkpointFile);
+            target.restore(checkpoint);
+            firstGeneration = checkpoint.getGeneration();
+        }
+
+        List<Long> generations = persistence.journalGenerations();
+        long appendGeneration = firstGeneration;
+        long validLength = 0;
+        long records = 0;
+        for (long gen : generations) {
+            if (gen < firstGeneration) {
+                continue;
+            }
+            Path file = persistence.journalFile(gen);
+            JournalReplay replay = new JournalReplay(target);
+            validLength = ScheduleJournal.replay(file, replay);
+            if (validLength > 0 && replay.version != JOURNAL_VERSION) {
+                throw new IOException((replay.version < 0 ? "日志缺少格式版本记录" : "不支持的日志格式版本 " + replay.version)
+                        + ": " + file);
+            }
+            records += replay.records;
+            appendGeneration = gen;
+        }
+        if (records > 0) {
+            LOG.info("📼 已回放 {} 条日志记录", records);
+        }
+        persistence.generation = appendGeneration;
+        persistence.openJournal(validLength, null);
+        return persistence;
+    }
+
+    // 回放一个日志文件：第一条记录必须是 OP_FORMAT，版本不符时不回放任何记录，由 recover 拒绝启动
+    private static final class JournalReplay implements ScheduleJournal.RecordHandler {
+        private final Recovery target;
+        private int version = -1; // -1 表示缺少格式版本记录
+        private boolean first = true;
+        private long records;
+
+        JournalReplay(Recovery target) {
+            this.target = target;
+        }
+
+        @Override
+        public void apply(byte type, ByteBuffer record) {
+            if (first) {
+                first = false;
+                if (type == OP_FORMAT) {
+                    version = record.getInt();
+                    return;
+                }
+            }
+            if (version != JOURNAL_VERSION) {
+                return;
+            }
+            SchedulePersistence.apply(target, type, record);
+            records++;
+        }
+    }
+
+    // 恢复目标：由调度器实现，回放时不再写日志、不发送通知
+    interface Recovery {
+        void restore(ScheduleCheckpoint checkpoint);
+
+        void addStage(String stageName);
+
+        void addPerformance(int id, String stageName, Artist artist, TimeSlot timeSlot);
+
+        void removePerformance(int id);
+
+        void swapPerformance(int a, int b);
+
+        void reschedulePerformance(int id, TimeSlot timeSlot);
+
+        void updatePopularity(String artistName, int popularity);
+
+        void addFanReminder(String fanId, int performanceId, long reminderTime);
+
+        void cancelFanReminder(String fanId, int performanceId);
+
+        void advanceReminders(long time);
+    }
+
+    private static void apply(Recovery target, byte type, ByteBuffer in) {
+        switch (type) {
+            case OP_ADD_STAGE:
+                target.addStage(ScheduleJournal.getString(in));
+                break;
+            case OP_ADD: {
+                int id = in.getInt();
+                String stage = ScheduleJournal.getString(in);
+                String name = ScheduleJournal.getString(in);
+                String genre = ScheduleJournal.getString(in);
+                int popularity = in.getInt();
+                String poster = ScheduleJournal.getString(in);
+                String audio = ScheduleJournal.getString(in);
+                TimeSlot slot = TimeSlot.ofMinutes(in.getInt(), in.getInt());
+                target.addPerformance(id, stage, new Artist(name, genre, popularity, poster, audio), slot);
+                break;
+            }
+            case OP_REMOVE:
+                target.removePerformance(in.getInt());
+                break;
+            case OP_SWAP:
+                target.swapPerformance(in.getInt(), in.getInt());
+                break;
+            case OP_RESCHEDULE:
+                target.reschedulePerformance(in.getInt(), TimeSlot.ofMinutes(in.getInt(), in.getInt()));
+                break;
+            case OP_POPULARITY:
+                target.updatePopularity(ScheduleJournal.getString(in), in.getInt());
+                break;
+            case OP_REMINDER_ADD:
+                target.addFanReminder(ScheduleJournal.getString(in), in.getInt(), in.getLong());
+                break;
+            case OP_REMINDER_CANCEL:
+                target.cancelFanReminder(ScheduleJournal.getString(in), in.getInt());
+                break;
+            case OP_REMINDER_ADVANCE:
+                target.advanceReminders(in.getLong());
+                break;
+            default:
+                LOG.warn("⚠️ 忽略未知的日志操作类型: {}", type);
+        }
+    }
+
+    // --- 追加日志 (调用方持有调度器写锁) ---
+
+    void appendAddStage(String stageName) {
+        begin(OP_ADD_STAGE);
+        putString(stageName);
+        commit();
+    }
+
+    void appendAdd(Performance p) {
+        Artist artist = p.getArtist();
+        begin(OP_ADD);
+        scratch.putInt(p.getId());
+        putString(p.getStageName());
+        putString(artist.getName());
+        putString(artist.getGenre());
+        scratch.putInt(artist.getPopularity());
+        putString(artist.getPosterPath());
+        putString(artist.getAudioPath());
+        scratch.putInt(p.getStartMinute()).putInt(p.getEndMinute());
+        commit();
+    }
+
+    void appendRemove(Performance p) {
+        begin(OP_REMOVE);
+        scratch.putInt(p.getId());
+        commit();
+    }
+
+    void appendSwap(Performance a, Performance b) {
+        begin(OP_SWAP);
+        scratch.putInt(a.getId()).putInt(b.getId());
+        commit();
+    }
+
+    void appendReschedule(Performance p, TimeSlot slot) {
+        begin(OP_RESCHEDULE);
+        scratch.putInt(p.getId()).putInt(slot.getStartMinute()).putInt(slot.getEndMinute());
+        commit();
+    }
+
+    void appendPopularity(String artistName, int popularity) {
+        begin(OP_POPULARITY);
+        putString(artistName);
+        scratch.putInt(popularity);
+        commit();
+    }
+
+    void appendReminderAdd(FanReminder reminder) {
+        begin(OP_REMINDER_ADD);
+        putString(reminder.getFanId());
+        scratch.putInt(reminder.getPerformance().getId()).putLong(reminder.getReminderTime());
+        commit();
+    }
+
+    void appendReminderCancel(FanReminder reminder) {
+        begin(OP_REMINDER_CANCEL);
+        putString(reminder.getFanId());
+        scratch.putInt(reminder.getPerformance().getId());
+        commit();
+    }
+
+    void appendReminderAdvance(long time) {
+        begin(OP_REMINDER_ADVANCE);
+        scratch.putLong(time);
+        commit();
+    }
+
+    private void begin(byte type) {
+        scratch.clear();
+        scratch.put(type);
+    }
+
+    private void commit() {
+        scratch.flip();
+        journal.append(scratch);
+    }
+
+    // 字符串前确保缓冲区足够 (UTF-8 每个字符最多 3 字节)，数值字段预留 64 字节
+    private void putString(String value) {
+        int needed = 2 + 3 * (value == null ? 0 : value.length()) + 64;
+        if (scratch.remaining() < needed) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(scratch.capacity() * 2, scratch.position() + needed));
+            scratch.flip();
+            grown.put(scratch);
+            scratch = grown;
+        }
+        ScheduleJournal.putString(scratch, value);
+    }
+
+    // --- 快照 ---
+
+    /**
+     * 写一次快照。capture 在调度器写锁内调用 rotate() 切换到新一代日志并复制状态；
+     * 关闭上一代日志、序列化和 fsync 都在锁外完成，写操作只在复制状态期间被阻塞。
+     * 快照安全落盘后删除它已覆盖的旧日志。
+     */
+    public ScheduleCheckpoint checkpoint(Supplier<ScheduleCheckpoint> capture) throws IOException {
+        synchronized (checkpointLock) {
+            ScheduleCheckpoint checkpoint;
+            try {
+                checkpoint = capture.get();
+            } finally {
+                closeRetired();
+            }
+            checkpoint.write(directory.resolve(CHECKPOINT_FILE));
+            for (long gen : journalGenerations()) {
+                if (gen < checkpoint.getGeneration()) {
+                    Files.deleteIfExists(journalFile(gen));
+                }
+            }
+            return checkpoint;
+        }
+    }
+
+    /**
+     * 开始新一代日志，返回新的代号。调用方持有调度器写锁，这里只切换日志对象：
+     * 上一代日志留给 checkpoint() 在锁外关闭，新日志第一次写盘前会等它落盘。
+     * 持久化已关闭时抛出 IOException，不再打开新日志。
+     */
+    long rotate() throws IOException {
+        if (closed) {
+            throw new IOException("持久化已关闭: " + directory);
+        }
+        ScheduleJournal previous = journal;
+        generation++;
+        openJournal(0, previous);
+        synchronized (this) {
+            retired = previous;
+        }
+        return generation;
+    }
+
+    // 关闭 rotate() 换下的上一代日志 (等待落盘)，不能在调度器写锁内调用
+    private void closeRetired() throws IOException {
+        ScheduleJournal previous;
+        synchronized (this) {
+            previous = retired;
+            retired = null;
+        }
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    // 打开当前一代日志准备追加 (previous 为上一代日志，可以为 null)，新文件先写入格式版本记录
+    private void openJournal(long validLength, ScheduleJournal previous) throws IOException {
+        journal = new ScheduleJournal(journalFile(generation), validLength, syncIntervalMillis, previous);
+        if (validLength == 0) {
+            begin(OP_FORMAT);
+            scratch.putInt(JOURNAL_VERSION);
+            commit();
+        }
+    }
+
+    /**
+     * 启动后台快照线程，每 periodMillis 写一次快照。
+     */
+    public synchronized void startCheckpointing(long periodMillis, Runnable task) {
+        if (checkpointTask != null) {
+            throw new IllegalStateException("快照线程已在运行。");
+        }
+        if (checkpointThread == null) {
+            checkpointThread = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "schedule-checkpoint");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        checkpointTask = checkpointThread.scheduleWithFixedDelay(task, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopCheckpointing() {
+        if (checkpointTask != null) {
+            checkpointTask.cancel(false);
+            checkpointTask = null;
+        }
+    }
+
+    /**
+     * 停止后台快照线程并等待正在写的快照完成。快照任务要进入调度器写锁，调用方不能持有写锁。
+     */
+    public void shutdownCheckpointing() {
+        ScheduledExecutorService thread;
+        synchronized (this) {
+            stopCheckpointing();
+            thread = checkpointThread;
+            checkpointThread = null;
+        }
+        if (thread == null) {
+            return;
+        }
+        thread.shutdown();
+        try {
+            thread.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // 等待已追加的日志全部落盘
+    public void sync() throws IOException {
+        journal.sync();
+    }
+
+    public ScheduleJournal getJournal() {
+        return journal;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * 关闭日志 (已追加的记录先落盘)。不等待后台快照：调用方持有调度器写锁时，
+     * 应先在锁外调用 shutdownCheckpointing()。
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        synchronized (this) {
+            stopCheckpointing();
+            if (checkpointThread != null) {
+                checkpointThread.shutdown();
+                checkpointThread = null;
+            }
+        }
+        closeRetired();
+        journal.close();
+    }
+
+    private Path journalFile(long gen) {
+        return directory.resolve(JOURNAL_PREFIX + gen + JOURNAL_SUFFIX);
+    }
+
+    // 数据目录中的日志代号，升序
+    private List<Long> journalGenerations() throws IOException {
+        List<Long> generations = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, JOURNAL_PREFIX + "*" + JOURNAL_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    generations.add(Long.parseLong(name.substring(JOURNAL_PREFIX.length(), name.length() - JOURNAL_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // 不是本程序生成的文件，忽略
+                }
+            }
+        }
+        generations.sort(null);
+        return generations;
+    }
+}
@@ -0,0 +1,170 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * ScheduleQueries.java
+ * 基于调度器只读快照的查询实现：按时间窗口 / 舞台 / 风格 / 艺人查询演出、人气榜 Top K、"正在演出"。
+ * 只读取 volatile 快照，不获取调度器的写锁，可以在 WebSocket 线程上直接执行。
+ *
+ * 指令格式 (均带可选的请求编号 id，原样出现在响应中)：
+ *   {"type":"query","query":"window","from":"20:00","to":"22:00","stage":"主舞台"}   stage 可省略
+ *   {"type":"query","query":"stage","stage":"森林舞台"}
+ *   {"type":"query","query":"genre","genre":"摇滚"}
+ *   {"type":"query","query":"genre","genres":["摇滚","R&B"],"match":"all","from":"18:00","to":"24:00"}   match 默认 any
+ *   {"type":"query","query":"genre","prefix":"r"}                                   风格词前缀，可与 genres 同时使用 (取交集)
+ *   {"type":"query","query":"artist","artist":"Beyond"}
+ *   {"type":"query","query":"top","k":10}                                           k 最多取到快照保存的前 100 名
+ *   {"type":"query","query":"now","at":"2 21:30"}                                   at 省略时使用提醒时钟
+ */
+public class ScheduleQueries implements QueryHandler {
+
+    private static final int DEFAULT_TOP_K = 10;
+
+    private final Supplier<ScheduleSnapshot> snapshots;
+    private final LongSupplier clock;
+
+    public ScheduleQueries(Supplier<ScheduleSnapshot> snapshots, LongSupplier clock) {
+        this.snapshots = snapshots;
+        this.clock = clock;
+    }
+
+    @Override
+    public Object query(String kind, JsonObject params) {
+        ScheduleSnapshot snapshot = snapshots.get();
+        switch (kind == null ? "" : kind) {
+            case "window": {
+                int from = QueryHandler.minuteParam(params, "from", Integer.MIN_VALUE);
+                int to = QueryHandler.minuteParam(params, "to", Integer.MAX_VALUE);
+                if (from >= to) {
+                    throw new IllegalArgumentException("时间窗口必须 from < to");
+                }
+                return window(snapshot, QueryHandler.stringParam(params, "stage", null), from, to);
+            }
+            case "stage": {
+                String stage = QueryHandler.requireString(params, "stage");
+                if (!snapshot.hasStage(stage)) {
+                    throw new IllegalArgumentException("舞台不存在: " + stage);
+                }
+                return snapshot.getStageRows(stage);
+            }
+            case "genre": {
+                int from = QueryHandler.minuteParam(params, "from", Integer.MIN_VALUE);
+                int to = QueryHandler.minuteParam(params, "to", Integer.MAX_VALUE);
+                if (from >= to) {
+                    throw new IllegalArgumentException("时间窗口必须 from < to");
+                }
+                String stage = QueryHandler.stringParam(params, "stage", null);
+                if (stage != null && !snapshot.hasStage(stage)) {
+                    throw new IllegalArgumentException("舞台不存在: " + stage);
+                }
+                return snapshot.findRowsIn(genreIds(snapshot.getGenres(), params), stage, from, to);
+            }
+            case "artist":
+                return snapshot.findRowsByArtist(QueryHandler.requireString(params, "artist"));
+            case "top":
+                return top(snapshot, QueryHandler.intParam(params, "k", DEFAULT_TOP_K));
+            case "now": {
+                long now = clock.getAsLong();
+                int at = QueryHandler.minuteParam(params, "at", (int) Math.min(Integer.MAX_VALUE, now));
+                return window(snapshot, QueryHandler.stringParam(params, "stage", null), at, at + 1);
+            }
+            default:
+                throw new IllegalArgumentException("未知的查询类型: " + kind);
+        }
+    }
+
+    @Override
+    public List<Map<String, Object>> select(Subscription subscription) {
+        ScheduleSnapshot snapshot = snapshots.get();
+        // 按 id 去重：同一场演出可能既匹配艺人又落在时间范围内
+        Map<Object, Map<String, Object>> matched = new LinkedHashMap<>();
+        for (String artist : subscription.getArtists()) {
+            for (Map<String, Object> row : snapshot.findRowsByArtist(artist)) {
+                matched.put(row.get("id"), row);
+            }
+        }
+        if (subscription.isRanged()) {
+            for (Map<String, Object> row : window(snapshot, null, subscription.getFrom(), subscription.getTo())) {
+                matched.put(row.get("id"), row);
+            }
+        }
+        return new ArrayList<>(matched.values());
+    }
+
+    // 各舞台 (或指定舞台) 与 [from, to) 重叠的演出，每个舞台 O(log n + k)
+    private static List<Map<String, Object>> window(ScheduleSnapshot snapshot, String stage, int from, int to) {
+        if (stage != null) {
+            if (!snapshot.hasStage(stage)) {
+                throw new IllegalArgumentException("舞台不存在: " + stage);
+            }
+            return snapshot.findOverlappingRows(stage, from, to);
+        }
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (String name : snapshot.getStageNames()) {
+            result.addAll(snapshot.findOverlappingRows(name, from, to));
+        }
+        return result;
+    }
+
+    // 风格条件对应的演出 id：genre / genres 按 match 做 AND 或 OR，prefix 按前缀匹配，同时给出时取交集
+    private static BitSet genreIds(GenreIndex index, JsonObject params) {
+        List<String> genres = new ArrayList<>();
+        JsonElement list = params.get("genres");
+        if (list != null && list.isJsonArray()) {
+            for (JsonElement genre : list.getAsJsonArray()) {
+                genres.add(genre.getAsString());
+            }
+        }
+        String genre = QueryHandler.stringParam(params, "genre", null);
+        if (genre != null) {
+            genres.add(genre);
+        }
+        String prefix = QueryHandler.stringParam(params, "prefix", null);
+        if (genres.isEmpty() && (prefix == null || prefix.trim().isEmpty())) {
+            throw new IllegalArgumentException("缺少参数: genre / genres / prefix");
+        }
+        BitSet ids = null;
+        if (!genres.isEmpty()) {
+            String match = QueryHandler.stringParam(params, "match", "any");
+            if (!"any".equals(match) && !"all".equals(match)) {
+                throw new IllegalArgumentException("match 只能是 any 或 all");
+            }
+            ids = "all".equals(match) ? index.allOf(genres) : index.anyOf(genres);
+        }
+        if (prefix != null && !prefix.trim().isEmpty()) {
+            BitSet prefixed = index.withPrefix(prefix);
+            if (ids == null) {
+                ids = prefixed;
+            } else {
+                ids.and(prefixed);
+            }
+        }
+        return ids;
+    }
+
+    private static List<Map<String, Object>> top(ScheduleSnapshot snapshot, int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k 必须为正数");
+        }
+        List<Artist> ranking = snapshot.getRanking();
+        List<Map<String, Object>> result = new ArrayList<>(Math.min(k, ranking.size()));
+        for (int i = 0; i < k && i < ranking.size(); i++) {
+            Artist artist = ranking.get(i);
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("rank", i + 1);
+            entry.put("artist", artist.getName());
+            entry.put("genre", artist.getGenre());
+            entry.put("popularity", artist.getPopularity());
+            result.add(entry);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,221 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ScheduleSnapshot.java
+ * 调度器状态的不可变快照：舞台名 (按添加顺序)、各舞台按时间轴顺序排列的演出及其前端数据行、
+ * 艺人档期表、人气榜前 RANKING_SIZE 名和风格倒排索引。写线程每次提交变更后发布一个新快照：
+ * 时间轴和数据行是分块列表、档期表是分片哈希表，只复制有变化的块 / 分片，其余与旧快照共享。
+ * 读线程只读取 volatile 引用，不加锁、不会看到写了一半的链表或哈希表。
+ * 快照不持有写线程的 Stage 对象 (其时间轴链表会被原地修改)，只保存提交时生成的不可变列表。
+ */
+public final class ScheduleSnapshot {
+
+    // 快照中保存的人气榜长度，更长的榜单由调度器直接查询跳表
+    static final int RANKING_SIZE = 100;
+
+    static final ScheduleSnapshot EMPTY = new ScheduleSnapshot(
+            Collections.emptyMap(), Collections.emptyMap(),
+            SnapshotMap.empty(), Collections.emptyList(), GenreIndex.EMPTY);
+
+    private final Map<String, ChunkedList<Performance>> timelines;
+    private final Map<String, ChunkedList<Map<String, Object>>> stageRows;
+    private final SnapshotMap<String, Performance> artistSchedule;
+    private final List<Artist> ranking;
+    private final GenreIndex genres;
+
+    // 跨舞台展开并带全局序号的数据行，第一次需要时生成
+    private volatile List<Map<String, Object>> rows;
+    // 艺人名 -> 该艺人的数据行 (按舞台顺序)，第一次按艺人查询时生成
+    private volatile Map<String, List<Map<String, Object>>> rowsByArtist;
+    // 演出 id -> 数据行，第一次按 id 取行时生成
+    private volatile Map<Integer, Map<String, Object>> rowsById;
+
+    ScheduleSnapshot(Map<String, ChunkedList<Performance>> timelines,
+                     Map<String, ChunkedList<Map<String, Object>>> stageRows,
+                     SnapshotMap<String, Performance> artistSchedule,
+                     List<Artist> ranking,
+                     GenreIndex genres) {
+        this.timelines = Collections.unmodifiableMap(timelines);
+        this.stageRows = Collections.unmodifiableMap(stageRows);
+        this.artistSchedule = artistSchedule;
+        this.ranking = ranking;
+        this.genres = genres;
+    }
+
+    // 舞台名，保持添加顺序
+    public Set<String> getStageNames() {
+        return timelines.keySet();
+    }
+
+    public boolean hasStage(String stageName) {
+        return timelines.containsKey(stageName);
+    }
+
+    // 某舞台按时间轴顺序的演出，舞台不存在时返回空列表
+    public List<Performance> getTimeline(String stageName) {
+        List<Performance> timeline = timelines.get(stageName);
+        return timeline == null ? Collections.emptyList() : timeline;
+    }
+
+    ChunkedList<Performance> timelineOf(String stageName) {
+        return timelines.get(stageName);
+    }
+
+    ChunkedList<Map<String, Object>> getStageRows(String stageName) {
+        return stageRows.get(stageName);
+    }
+
+    /**
+     * 某舞台与 [from, to) 重叠的数据行。同一舞台的演出互不重叠且按开始时间排列，结束时间同样有序，
+     * 二分找到第一场结束晚于 from 的演出后顺序扫描，O(log n + k)。
+     * 比较使用数据行中的时间 (发布快照时的值)，不受之后改期的影响。
+     */
+    public List<Map<String, Object>> findOverlappingRows(String stageName, int from, int to) {
+        List<Map<String, Object>> rows = stageRows.get(stageName);
+        if (rows == null || rows.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int lo = 0;
+        int hi = rows.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (minute(rows.get(mid), "endTime") <= from) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (int i = lo; i < rows.size() && minute(rows.get(i), "startTime") < to; i++) {
+            result.add(rows.get(i));
+        }
+        return result;
+    }
+
+    // 某位艺人的全部数据行，没有演出时返回空列表
+    public List<Map<String, Object>> findRowsByArtist(String artistName) {
+        Map<String, List<Map<String, Object>>> index = rowsByArtist;
+        if (index == null) {
+            synchronized (this) {
+                index = rowsByArtist;
+                if (index == null) {
+                    index = new HashMap<>();
+                    for (List<Map<String, Object>> stage : stageRows.values()) {
+                        for (Map<String, Object> row : stage) {
+                            index.computeIfAbsent((String) row.get("artist"), k -> new ArrayList<>(1)).add(row);
+                        }
+                    }
+                    rowsByArtist = index;
+                }
+            }
+        }
+        List<Map<String, Object>> result = index.get(artistName);
+        return result == null ? Collections.emptyList() : Collections.unmodifiableList(result);
+    }
+
+    // 演出 id 对应的数据行，不存在时返回 null
+    public Map<String, Object> findRowById(int id) {
+        Map<Integer, Map<String, Object>> index = rowsById;
+        if (index == null) {
+            synchronized (this) {
+                index = rowsById;
+                if (index == null) {
+                    index = new HashMap<>(size() * 2);
+                    for (List<Map<String, Object>> stage : stageRows.values()) {
+                        for (Map<String, Object> row : stage) {
+                            index.put(((Number) row.get("id")).intValue(), row);
+                        }
+                    }
+                    rowsById = index;
+                }
+            }
+        }
+        return index.get(id);
+    }
+
+    /**
+     * ids 位图中、与 [from, to) 重叠的数据行 (stageName 为 null 时查全部舞台)。
+     * 先按时间窗口二分定位再查位图，O(log n + k)；不限时间时直接遍历位图。
+     */
+    public List<Map<String, Object>> findRowsIn(BitSet ids, String stageName, int from, int to) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        if (from == Integer.MIN_VALUE && to == Integer.MAX_VALUE) {
+            for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+                Map<String, Object> row = findRowById(id);
+                if (row != null && (stageName == null || stageName.equals(row.get("stage")))) {
+                    result.add(row);
+                }
+            }
+            return result;
+        }
+        for (String name : stageName == null ? stageRows.keySet() : Collections.singleton(stageName)) {
+            for (Map<String, Object> row : findOverlappingRows(name, from, to)) {
+                if (ids.get(((Number) row.get("id")).intValue())) {
+                    result.add(row);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static int minute(Map<String, Object> row, String field) {
+        return ((Number) row.get(field)).intValue();
+    }
+
+    public Performance getPerformanceByArtistName(String artistName) {
+        return artistSchedule.get(artistName);
+    }
+
+    SnapshotMap<String, Performance> getArtistSchedule() {
+        return artistSchedule;
+    }
+
+    // 按名次排列的前 RANKING_SIZE 位艺人 (艺人不足时为全部)
+    public List<Artist> getRanking() {
+        return ranking;
+    }
+
+    public GenreIndex getGenres() {
+        return genres;
+    }
+
+    public int size() {
+        int size = 0;
+        for (List<Performance> timeline : timelines.values()) {
+            size += timeline.size();
+        }
+        return size;
+    }
+
+    /**
+     * 按舞台顺序展开的前端数据行 (带全局序号 index)，与 collectStateRows 的格式一致。
+     */
+    public List<Map<String, Object>> getRows() {
+        List<Map<String, Object>> result = rows;
+        if (result == null) {
+            synchronized (this) {
+                result = rows;
+                if (result == null) {
+                    List<Map<String, Object>> flat = new ArrayList<>(size());
+                    int index = 0;
+                    for (List<Map<String, Object>> stage : stageRows.values()) {
+                        for (Map<String, Object> row : stage) {
+                            Map<String, Object> data = new HashMap<>(row);
+                            data.put("index", index++);
+                            flat.add(Collections.unmodifiableMap(data));
+                        }
+                    }
+                    result = Collections.unmodifiableList(flat);
+                    rows = result;
+                }
+            }
+        }
+        return result;
+    }
+}
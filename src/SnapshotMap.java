@@ -0,0 +1,80 @@
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * SnapshotMap.java
+ * 不可变的分片哈希表：按键的哈希分成 64 片，每片是一个只读 HashMap。更新只复制被改动的分片，
+ * 其余分片与旧版本共享，适合整表很大、每次提交只改几个键的快照 (如艺人档期表)。
+ */
+final class SnapshotMap<K, V> {
+
+    private static final int SHARDS = 64;
+    private static final SnapshotMap<?, ?> EMPTY = new SnapshotMap<>(emptyShards(), 0);
+
+    private final Map<K, V>[] shards;
+    private final int size;
+
+    private SnapshotMap(Map<K, V>[] shards, int size) {
+        this.shards = shards;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> SnapshotMap<K, V> empty() {
+        return (SnapshotMap<K, V>) EMPTY;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> Map<K, V>[] emptyShards() {
+        Map<K, V>[] shards = (Map<K, V>[]) new Map<?, ?>[SHARDS];
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = Collections.emptyMap();
+        }
+        return shards;
+    }
+
+    private static int shardOf(Object key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (SHARDS - 1);
+    }
+
+    V get(K key) {
+        return shards[shardOf(key)].get(key);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * 应用 changes 后的新版本：值为 null 表示删除该键。只复制 changes 涉及的分片。
+     */
+    SnapshotMap<K, V> with(Map<K, V> changes) {
+        if (changes.isEmpty()) {
+            return this;
+        }
+        Map<K, V>[] next = shards.clone();
+        boolean[] copied = new boolean[SHARDS];
+        int newSize = size;
+        for (Map.Entry<K, V> change : changes.entrySet()) {
+            int s = shardOf(change.getKey());
+            if (!copied[s]) {
+                next[s] = new HashMap<>(next[s]);
+                copied[s] = true;
+            }
+            V old = change.getValue() == null ? next[s].remove(change.getKey()) : next[s].put(change.getKey(), change.getValue());
+            if (old == null && change.getValue() != null) {
+                newSize++;
+            } else if (old != null && change.getValue() == null) {
+                newSize--;
+            }
+        }
+        for (int s = 0; s < SHARDS; s++) {
+            if (copied[s]) {
+                next[s] = Collections.unmodifiableMap(next[s]);
+            }
+        }
+        return new SnapshotMap<>(next, newSize);
+    }
+}
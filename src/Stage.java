@@ -0,0 +1,46 @@
+import java.util.List;
+
+/**
+ * Stage.java
+ * 舞台实体类：每个舞台拥有独立的演出时间轴 (双向链表 + 区间索引)。
+ * 时间冲突只在同一舞台内判断，不同舞台可以在同一时段并行演出。
+ */
+public class Stage {
+    private final String name;
+    private final DoublyLinkedList timeline;
+
+    public Stage(String name) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("舞台名称不能为空。");
+        }
+        this.name = name;
+        this.timeline = new DoublyLinkedList();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public DoublyLinkedList getTimeline() {
+        return timeline;
+    }
+
+    public int size() {
+        return timeline.size();
+    }
+
+    // 返回本舞台上与该演出冲突的演出，没有冲突时返回 null
+    public Performance findConflict(Performance performance) {
+        return timeline.findConflict(performance);
+    }
+
+    // 本舞台在时刻 t (音乐节分钟) 正在进行的演出
+    public List<Performance> findLiveAt(int t) {
+        return timeline.findLiveAt(t);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("舞台[%s] (%d 场演出)", name, timeline.size());
+    }
+}
@@ -0,0 +1,123 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import org.java_websocket.framing.BinaryFrame;
+import org.java_websocket.framing.DataFrame;
+import org.java_websocket.framing.TextFrame;
+
+/**
+ * StateSnapshot.java
+ * 不可变的全量状态快照：带版本号，每种编码 (JSON / 二进制) 只在第一次需要时序列化一次，
+ * 之后所有连接共享同一份只读缓冲区，直到下一次变更使其失效。
+ */
+public final class StateSnapshot {
+    private static final Gson GSON = new Gson();
+
+    private final long version;
+    private final List<Map<String, Object>> rows;
+    private final FestivalMetrics metrics; // 记录编码耗时与字节数，可为 null
+
+    // 懒加载的编码结果，没有二进制客户端时不会生成二进制编码
+    private volatile ByteBuffer jsonPayload;
+    private volatile ByteBuffer binaryPayload;
+
+    public StateSnapshot(long version, List<Map<String, Object>> rows) {
+        this(version, rows, null);
+    }
+
+    public StateSnapshot(long version, List<Map<String, Object>> rows, FestivalMetrics metrics) {
+        this.version = version;
+        this.rows = Collections.unmodifiableList(rows);
+        this.metrics = metrics;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public List<Map<String, Object>> getRows() {
+        return rows;
+    }
+
+    // JSON 编码后的字节数
+    public int size() {
+        return jsonPayload().remaining();
+    }
+
+    /**
+     * 生成一个引用共享缓冲区的 JSON 文本帧。
+     * 帧对象本身很小，负载只是 duplicate() 视图，不会复制快照字节；
+     * 每次发送都需要新帧，因为底层写出时会移动缓冲区的 position。
+     */
+    public TextFrame newFrame() {
+        return newTextFrame(jsonPayload());
+    }
+
+    // 按连接协商的子协议生成文本帧或二进制帧
+    public DataFrame newFrame(boolean binary) {
+        if (!binary) {
+            return newFrame();
+        }
+        BinaryFrame frame = new BinaryFrame();
+        frame.setPayload(binaryPayload().duplicate());
+        frame.setFin(true);
+        return frame;
+    }
+
+    private ByteBuffer jsonPayload() {
+        ByteBuffer payload = jsonPayload;
+        if (payload == null) {
+            synchronized (this) {
+                payload = jsonPayload;
+                if (payload == null) {
+                    long start = System.nanoTime();
+                    String json = "{\"type\":\"snapshot\",\"version\":" + version
+                            + ",\"performances\":" + GSON.toJson(rows) + "}";
+                    payload = encode(json);
+                    recordEncoding(start, payload);
+                    jsonPayload = payload;
+                }
+            }
+        }
+        return payload;
+    }
+
+    private ByteBuffer binaryPayload() {
+        ByteBuffer payload = binaryPayload;
+        if (payload == null) {
+            synchronized (this) {
+                payload = binaryPayload;
+                if (payload == null) {
+                    long start = System.nanoTime();
+                    payload = BinaryStateCodec.encodeSnapshot(version, rows);
+                    recordEncoding(start, payload);
+                    binaryPayload = payload;
+                }
+            }
+        }
+        return payload;
+    }
+
+    private void recordEncoding(long startNanos, ByteBuffer payload) {
+        if (metrics != null) {
+            metrics.stateEncode.recordSince(startNanos);
+            metrics.stateBytes.add(payload.remaining());
+        }
+    }
+
+    // 把文本一次性编码为只读 UTF-8 缓冲区
+    static ByteBuffer encode(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+    }
+
+    static TextFrame newTextFrame(ByteBuffer sharedPayload) {
+        TextFrame frame = new TextFrame();
+        frame.setPayload(sharedPayload.duplicate());
+        frame.setFin(true);
+        return frame;
+    }
+}
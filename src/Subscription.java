@@ -0,0 +1,119 @@
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Subscription.java
+ * 一个连接的推送过滤条件：关注的艺人，以及/或者一个时间范围 [from, to) (音乐节分钟)。
+ * 增量只要涉及任一关注的艺人或与时间范围重叠即推送。不可变，可在推送线程间共享。
+ */
+public final class Subscription {
+
+    // 什么也不订阅：只接收查询结果，不接收推送
+    public static final Subscription NONE = new Subscription(Collections.emptySet(), 0, 0, false);
+
+    private final Set<String> artists;
+    private final int from;
+    private final int to;
+    private final boolean ranged;
+
+    public Subscription(Set<String> artists, int from, int to, boolean ranged) {
+        if (ranged && from >= to) {
+            throw new IllegalArgumentException("订阅的时间范围必须 from < to。");
+        }
+        this.artists = Collections.unmodifiableSet(new LinkedHashSet<>(artists));
+        this.from = from;
+        this.to = to;
+        this.ranged = ranged;
+    }
+
+    /**
+     * 解析 subscribe 指令：{"artists": [...]} 或 {"artist": "..."}，以及可选的 "from" / "to"。
+     * 两者都没有时返回 null，表示恢复完整的状态流。参数错误时抛出 IllegalArgumentException。
+     */
+    public static Subscription parse(JsonObject command) {
+        Set<String> artists = new LinkedHashSet<>();
+        JsonElement list = command.get("artists");
+        if (list != null && list.isJsonArray()) {
+            for (JsonElement name : list.getAsJsonArray()) {
+                artists.add(name.getAsString());
+            }
+        }
+        String artist = QueryHandler.stringParam(command, "artist", null);
+        if (artist != null) {
+            artists.add(artist);
+        }
+        boolean ranged = command.has("from") || command.has("to");
+        if (artists.isEmpty() && !ranged) {
+            return null;
+        }
+        int from = ranged ? QueryHandler.minuteParam(command, "from", Integer.MIN_VALUE) : 0;
+        int to = ranged ? QueryHandler.minuteParam(command, "to", Integer.MAX_VALUE) : 0;
+        return new Subscription(artists, from, to, ranged);
+    }
+
+    public boolean isEmpty() {
+        return artists.isEmpty() && !ranged;
+    }
+
+    // 增量是否需要推送给本订阅；范围未知的增量一律推送
+    public boolean matches(DeltaScope scope) {
+        if (scope == null) {
+            return true;
+        }
+        return scope.touchesArtist(artists) || (ranged && scope.overlaps(from, to));
+    }
+
+    // 快照数据行是否属于本订阅
+    public boolean matches(Map<String, Object> row) {
+        if (artists.contains(row.get("artist"))) {
+            return true;
+        }
+        if (!ranged) {
+            return false;
+        }
+        int start = ((Number) row.get("startTime")).intValue();
+        int end = ((Number) row.get("endTime")).intValue();
+        return start < to && end > from;
+    }
+
+    public Set<String> getArtists() {
+        return artists;
+    }
+
+    public boolean isRanged() {
+        return ranged;
+    }
+
+    public int getFrom() {
+        return from;
+    }
+
+    public int getTo() {
+        return to;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Subscription)) {
+            return false;
+        }
+        Subscription other = (Subscription) o;
+        return ranged == other.ranged && from == other.from && to == other.to && artists.equals(other.artists);
+    }
+
+    @Override
+    public int hashCode() {
+        return artists.hashCode() * 31 + (ranged ? Long.hashCode(TimeSlot.pack(from, to)) : 0);
+    }
+
+    @Override
+    public String toString() {
+        String range = ranged ? TimeSlot.formatMinute(from) + " - " + TimeSlot.formatMinute(to) : "无";
+        return "订阅[艺人 " + artists + "，时间 " + range + "]";
+    }
+}
@@ -1,66 +1,964 @@
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.function.Supplier; // 1. 导入 Supplier 接口
 
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.protocols.IProtocol;
+import org.java_websocket.protocols.Protocol;
 import org.java_websocket.server.WebSocketServer;
 
 public class SwarmWebSocketServer extends WebSocketServer {
 
+    private static final AsyncLog LOG = AsyncLog.get("WebSocket");
+
+    // 保留的历史增量条数，客户端落后超过该范围时改发全量快照
+    private static final int DELTA_HISTORY_LIMIT = 1024;
+    // 一次刷新积压的增量超过该条数时，直接发送全量快照代替
+    private static final int MAX_DELTAS_PER_FLUSH = 256;
+
+    // 背压默认值：单连接发送缓冲超过上限即视为落后，降到恢复线以下再补发快照，落后太久则断开
+    public static final long DEFAULT_MAX_QUEUED_BYTES = 1024 * 1024;
+    public static final long DEFAULT_MAX_LAG_MILLIS = 30_000;
+    private static final long SWEEP_INTERVAL_MS = 1000;
+    // 心跳超时 (秒)，用于回收已失联的连接
+    private static final int CONNECTION_LOST_TIMEOUT_SECONDS = 60;
+    // 过滤后没有匹配增量的占位负载
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    // 一次刷新中完整状态流 (未订阅) 连接共享的批次在缓存中的键
+    private static final Object FULL_STREAM = new Object();
+
+    // 默认每个发送分片的连接数：连接数不超过一个分片时在刷新线程上直接发送
+    public static final int DEFAULT_FANOUT_CHUNK = 512;
+
     private final Set<WebSocket> connections = Collections.newSetFromMap(new ConcurrentHashMap<>());
-    
-    // 2. 新增一个数据提供者接口
-    private final Supplier<String> stateSupplier;
+
+    // 2. 新增一个数据提供者接口 (返回快照行，由 StateSnapshot 负责 JSON / 二进制编码)
+    private final Supplier<List<Map<String, Object>>> stateSupplier;
+
+    // 增量变更流：版本号单调递增，历史记录用于断线重连后的补发
+    private final Object streamLock = new Object();
+    private final ArrayDeque<Delta> history = new ArrayDeque<>();
+    private final List<Delta> pending = new ArrayList<>(); // 尚未推送的增量
+    private final List<ByteBuffer> pendingMessages = new ArrayList<>(); // 尚未推送的普通广播消息
+    private boolean snapshotPending; // 下一次刷新时向所有连接推送全量快照
+    private long version;
+    private final Gson gson = new Gson();
+
+    // 缓存的全量快照：只在发布新增量 (即状态变更) 时失效，重连风暴时所有连接共享同一份编码结果
+    private StateSnapshot cachedSnapshot;
+
+    // 广播合并器：增量先进入 pending，按时间窗口合并成一帧推送
+    private final BroadcastCoalescer coalescer;
+
+    // 并行发送：刷新线程在 streamLock 内取走待推送的增量和连接列表，释放锁后把连接切成分片，
+    // 交给虚拟线程同时编码、入队，等全部完成后才处理下一次刷新。发送期间调度器照常发布增量；
+    // 每个连接的帧顺序由该连接的 ClientSession 锁和它记录的已发送版本号保证 (见 fanOut)
+    private final ExecutorService fanoutPool = Executors.newVirtualThreadPerTaskExecutor();
+    private volatile int fanoutChunk = DEFAULT_FANOUT_CHUNK;
+    // 查询在独立的平台线程池上执行，慢查询不会占住解码线程 (同一解码线程还服务着其他连接)。
+    // 查询要在 streamLock (synchronized) 内读取快照，放在虚拟线程上阻塞时会钉住载体线程，挤占发送分片
+    private final ExecutorService queryPool;
+
+    // 查询与订阅：由调度器提供，未设置时只支持完整的状态流
+    private volatile QueryHandler queryHandler;
+
+    // 背压控制与指标
+    private volatile long maxQueuedBytes = DEFAULT_MAX_QUEUED_BYTES;
+    private volatile long maxLagMillis = DEFAULT_MAX_LAG_MILLIS;
+    private final ScheduledExecutorService sweeper;
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong slowConsumerDisconnects = new AtomicLong();
+    private volatile long totalQueuedBytes;
+    private volatile long peakQueuedBytes;
+    private volatile int laggingConnections;
+
+    // 运行指标：默认独立一份，调度器会换成自己的，与调度器指标一起导出
+    private volatile FestivalMetrics metrics;
 
     // 3. 修改构造函数，接收 stateSupplier
-    public SwarmWebSocketServer(int port, Supplier<String> stateSupplier) {
-        super(new InetSocketAddress(port));
-        this.stateSupplier = stateSupplier; 
-        System.out.println("WebSocket Server 启动在端口: " + port);
+    public SwarmWebSocketServer(int port, Supplier<List<Map<String, Object>>> stateSupplier) {
+        this(port, stateSupplier, BroadcastCoalescer.DEFAULT_FLUSH_INTERVAL_MS);
+    }
+
+    public SwarmWebSocketServer(int port, Supplier<List<Map<String, Object>>> stateSupplier, long flushIntervalMillis) {
+        this(port, stateSupplier, flushIntervalMillis, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * decoders 为解码线程数 (Java-WebSocket 的 WebSocketWorker)：每个连接固定由其中一个线程解析收到的帧并回调 onMessage。
+     * 连接的读写由单个选择器线程完成，与连接数无关；大量只读观众连接时解码线程不需要随连接数增加。
+     */
+    public SwarmWebSocketServer(int port, Supplier<List<Map<String, Object>>> stateSupplier, long flushIntervalMillis,
+                                int decoders) {
+        super(new InetSocketAddress(port), decoders, supportedDrafts());
+        this.stateSupplier = stateSupplier;
+        this.coalescer = new BroadcastCoalescer(flushIntervalMillis, this::flushPending);
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "websocket-backpressure");
+            t.setDaemon(true);
+            return t;
+        });
+        AtomicInteger queryThreads = new AtomicInteger();
+        this.queryPool = Executors.newFixedThreadPool(Math.max(2, decoders), r -> {
+            Thread t = new Thread(r, "websocket-query-" + queryThreads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        setMetrics(new FestivalMetrics());
+        LOG.info("WebSocket Server 启动在端口: {}", port);
+    }
+
+    /**
+     * 支持的子协议：客户端请求 swarm.bin.v1 时快照以二进制发送，其余情况 (含未声明子协议) 使用 JSON。
+     */
+    private static List<Draft> supportedDrafts() {
+        List<IProtocol> protocols = new ArrayList<>();
+        protocols.add(new Protocol(BinaryStateCodec.SUBPROTOCOL));
+        protocols.add(new Protocol(""));
+        return Collections.singletonList(new Draft_6455(Collections.emptyList(), protocols));
+    }
+
+    public void setQueryHandler(QueryHandler queryHandler) {
+        this.queryHandler = queryHandler;
+    }
+
+    // 以 ws://host:port/?mode=query 连接的客户端不接收全量快照，只通过查询 / 订阅获取数据 (适合手机端)
+    private static boolean queryOnly(String resourceDescriptor) {
+        return resourceDescriptor != null && resourceDescriptor.contains("mode=query");
+    }
+
+    private static boolean negotiatedBinary(WebSocket conn) {
+        IProtocol protocol = conn.getProtocol();
+        return protocol != null && BinaryStateCodec.SUBPROTOCOL.equals(protocol.getProvidedProtocol());
+    }
+
+    /**
+     * 使用指定的指标集合：广播耗时、帧数、快照编码记录到其中，并注册连接与背压相关的即时值。
+     */
+    public void setMetrics(FestivalMetrics metrics) {
+        metrics.gauge("festival_ws_connections", "当前 WebSocket 连接数", this::getConnectionCount);
+        metrics.gauge("festival_ws_lagging_connections", "最近一次巡检时处于落后状态的连接数", this::getLaggingConnections);
+        metrics.gauge("festival_ws_queued_bytes", "最近一次巡检时所有连接的发送积压字节", this::getTotalQueuedBytes);
+        metrics.gauge("festival_ws_dropped_frames", "因背压被丢弃的帧总数", this::getDroppedFrames);
+        metrics.gauge("festival_ws_slow_consumer_disconnects", "因落后过久被断开的连接总数", this::getSlowConsumerDisconnects);
+        metrics.gauge("festival_stream_version", "增量流的当前版本号", this::getVersion);
+        this.metrics = metrics;
+    }
+
+    public FestivalMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 设置并行发送的分片大小：一次广播的连接数超过 chunkSize 时按分片并行发送。
+     * 传入 Integer.MAX_VALUE 则总是在刷新线程上顺序发送。
+     */
+    public void setFanoutChunk(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("分片大小必须为正数。");
+        }
+        this.fanoutChunk = chunkSize;
+    }
+
+    /**
+     * 配置慢消费者策略：发送缓冲超过 maxQueuedBytes 的连接不再接收中间增量，
+     * 落后超过 maxLagMillis 仍未消化则断开。
+     */
+    public void setBackpressure(long maxQueuedBytes, long maxLagMillis) {
+        if (maxQueuedBytes <= 0 || maxLagMillis <= 0) {
+            throw new IllegalArgumentException("背压阈值必须为正数。");
+        }
+        this.maxQueuedBytes = maxQueuedBytes;
+        this.maxLagMillis = maxLagMillis;
     }
 
     @Override
     public void onOpen(WebSocket conn, org.java_websocket.handshake.ClientHandshake handshake) {
-        connections.add(conn);
-        System.out.println("新的前端连接加入: " + conn.getRemoteSocketAddress());
-        
-        // 4. 【核心优化】一连接上，立刻调用接口获取最新数据并发送！
-        if (stateSupplier != null) {
-            String currentState = stateSupplier.get();
-            if (currentState != null) {
-                conn.send(currentState);
-                System.out.println(">> 已向新连接补发最新状态数据");
+        ClientSession session = new ClientSession(negotiatedBinary(conn));
+        boolean queryOnly = queryOnly(handshake.getResourceDescriptor());
+        if (queryOnly) {
+            session.setSubscription(Subscription.NONE);
+        }
+        conn.setAttachment(session);
+        LOG.info("新的前端连接加入: {}{}", conn.getRemoteSocketAddress(), queryOnly ? " (查询模式)" : "");
+
+        // 4. 【核心优化】一连接上，立刻发送带版本号的全量快照，之后只推送增量
+        // 快照发出后才加入广播列表 (同一把锁内)，保证新连接收到的第一帧一定是快照；
+        // 已取走但还没发完的批次按会话记录的版本号跳过快照已包含的部分
+        synchronized (streamLock) {
+            if (!queryOnly && sendSnapshot(conn)) {
+                LOG.debug(">> 已向新连接补发最新状态数据");
+            } else {
+                session.setSentVersion(version);
             }
+            connections.add(conn);
         }
     }
 
     @Override
     public void onClose(WebSocket conn, int code, String reason, boolean remote) {
         connections.remove(conn);
-        System.out.println("前端连接断开: " + conn.getRemoteSocketAddress());
+        LOG.info("前端连接断开: {}", conn.getRemoteSocketAddress());
     }
 
     @Override
     public void onMessage(WebSocket conn, String message) {
-        System.out.println("收到前端指令: " + message);
+        JsonObject command = parseCommand(message);
+        String type = command == null ? null : stringField(command, "type");
+        if ("resync".equals(type)) {
+            JsonElement from = command.get("fromVersion");
+            resync(conn, from != null && from.isJsonPrimitive() ? from.getAsLong() : -1);
+            return;
+        }
+        if ("query".equals(type)) {
+            queryPool.execute(() -> query(conn, command));
+            return;
+        }
+        if ("subscribe".equals(type) || "unsubscribe".equals(type)) {
+            subscribe(conn, command, "unsubscribe".equals(type));
+            return;
+        }
+        LOG.info("收到前端指令: {}", message);
     }
 
     @Override
     public void onError(WebSocket conn, Exception ex) {
-        ex.printStackTrace();
+        LOG.error("WebSocket 错误 ({})", conn == null ? "服务器" : conn.getRemoteSocketAddress(), ex);
     }
 
     @Override
     public void onStart() {
-        System.out.println("WebSocket Server 成功启动!");
-        setConnectionLostTimeout(0);
+        LOG.info("WebSocket Server 成功启动!");
+        // 开启心跳，失联的连接会被自动回收
+        setConnectionLostTimeout(CONNECTION_LOST_TIMEOUT_SECONDS);
+        sweeper.scheduleWithFixedDelay(this::sweepSlowConsumers, SWEEP_INTERVAL_MS, SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * 向所有连接广播一条消息 (不区分订阅)。只编码一次并排入待发送队列，由刷新线程发送，调用线程不等待。
+     */
     public void broadcast(String message) {
-        for (WebSocket conn : connections) {
-            conn.send(message);
+        ByteBuffer payload = StateSnapshot.encode(message);
+        synchronized (streamLock) {
+            pendingMessages.add(payload);
+        }
+        coalescer.markDirty();
+    }
+
+    /**
+     * 对 targets 中的每个连接执行 send：连接数超过一个分片时切成分片，除第一片外交给虚拟线程并行执行，
+     * 等全部分片完成后返回。调用方不持有 streamLock，targets 是调用方在锁内复制的连接列表。
+     * send 在该连接的 ClientSession 锁内执行：同一连接的发送 (刷新、快照、补发) 互相排队，
+     * 各路径都按会话记录的已发送版本号跳过过时的帧，因此每个连接收到的帧版本始终递增。
+     */
+    private void fanOut(WebSocket[] targets, Consumer<WebSocket> send) {
+        long start = System.nanoTime();
+        int chunk = fanoutChunk;
+        if (targets.length <= chunk) {
+            sendRange(targets, 0, targets.length, send);
+        } else {
+            List<Future<?>> tasks = new ArrayList<>(targets.length / chunk);
+            for (int from = chunk; from < targets.length; from += chunk) {
+                int lo = from;
+                int hi = Math.min(from + chunk, targets.length);
+                tasks.add(fanoutPool.submit(() -> sendRange(targets, lo, hi, send)));
+            }
+            sendRange(targets, 0, chunk, send);
+            for (Future<?> task : tasks) {
+                await(task);
+            }
+        }
+        metrics.broadcastFanout.recordSince(start);
+    }
+
+    private static void sendRange(WebSocket[] targets, int from, int to, Consumer<WebSocket> send) {
+        for (int i = from; i < to; i++) {
+            WebSocket conn = targets[i];
+            ClientSession session = session(conn);
+            session.lock();
+            try {
+                send.accept(conn);
+            } finally {
+                session.unlock();
+            }
+        }
+    }
+
+    private static void await(Future<?> task) {
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOG.error("并行发送失败: {}", e.getCause().toString());
+        }
+    }
+
+    /**
+     * 向单个连接发送增量帧 (调用方持有该连接的 ClientSession 锁)，并执行背压策略：
+     * 已落后的连接若积压已消化，则放入 resumable，发送结束后用最新快照代替这帧 (快照包含其错过的所有变更)；
+     * 仍在积压则直接丢弃这帧，只记住 "需要最新状态"。返回是否发出了这帧。
+     */
+    private boolean sendIncremental(WebSocket conn, ByteBuffer utf8Payload, long now, Queue<WebSocket> resumable) {
+        if (!conn.isOpen()) {
+            return false;
+        }
+        ClientSession session = session(conn);
+        long queued = queuedBytes(conn);
+        session.setQueuedBytes(queued);
+        if (session.isLagging()) {
+            if (queued <= maxQueuedBytes / 2) {
+                resumable.add(conn);
+                return false;
+            }
+            session.dropFrame(now);
+            droppedFrames.incrementAndGet();
+            return false;
+        }
+        if (queued > maxQueuedBytes) {
+            session.dropFrame(now);
+            droppedFrames.incrementAndGet();
+            return false;
+        }
+        conn.sendFrame(StateSnapshot.newTextFrame(utf8Payload));
+        metrics.framesSent.increment();
+        return true;
+    }
+
+    private static void send(WebSocket conn, ByteBuffer utf8Payload) {
+        if (conn.isOpen()) {
+            conn.sendFrame(StateSnapshot.newTextFrame(utf8Payload));
+        }
+    }
+
+    // --- 慢消费者处理 ---
+
+    /**
+     * 定期巡检 (独立线程)：统计各连接积压量，给已消化积压的落后连接补发快照，
+     * 落后超过 maxLagMillis 的连接直接断开，避免其发送缓冲无限增长。
+     */
+    private void sweepSlowConsumers() {
+        try {
+            long now = System.currentTimeMillis();
+            long total = 0;
+            long peak = 0;
+            int lagging = 0;
+            List<WebSocket> resumable = new ArrayList<>();
+            for (WebSocket conn : connections) {
+                ClientSession session = session(conn);
+                session.lock();
+                try {
+                    long queued = queuedBytes(conn);
+                    session.setQueuedBytes(queued);
+                    total += queued;
+                    peak = Math.max(peak, queued);
+                    if (!session.isLagging()) {
+                        continue;
+                    }
+                    if (queued <= maxQueuedBytes / 2 && conn.isOpen()) {
+                        resumable.add(conn);
+                        continue;
+                    }
+                    if (session.lagMillis(now) > maxLagMillis) {
+                        slowConsumerDisconnects.incrementAndGet();
+                        LOG.warn("⚠️ 慢消费者已断开: {} (积压 {} 字节, 丢弃 {} 帧)",
+                                conn.getRemoteSocketAddress(), queued, session.getDroppedFrames());
+                        connections.remove(conn);
+                        conn.closeConnection(CloseFrame.TRY_AGAIN_LATER, "too slow");
+                    } else {
+                        lagging++;
+                    }
+                } finally {
+                    session.unlock();
+                }
+            }
+            resumeLagging(resumable);
+            totalQueuedBytes = total;
+            peakQueuedBytes = peak;
+            laggingConnections = lagging;
+        } catch (RuntimeException e) {
+            LOG.error("背压巡检失败: {}", e.toString());
+        }
+    }
+
+    /**
+     * 给已消化积压的落后连接补发最新快照并恢复正常推送。在 streamLock 内取快照并发送，
+     * 快照版本不早于任何已取走的批次；连接数通常很少，持锁时间很短。
+     */
+    private void resumeLagging(Collection<WebSocket> resumable) {
+        if (resumable.isEmpty()) {
+            return;
+        }
+        synchronized (streamLock) {
+            StateSnapshot snapshot = currentSnapshot();
+            if (snapshot == null) {
+                return;
+            }
+            for (WebSocket conn : resumable) {
+                ClientSession session = session(conn);
+                session.lock();
+                try {
+                    if (session.isLagging() && conn.isOpen() && queuedBytes(conn) <= maxQueuedBytes / 2) {
+                        sendState(conn, session, snapshot);
+                    }
+                } finally {
+                    session.unlock();
+                }
+            }
+        }
+    }
+
+    private static ClientSession session(WebSocket conn) {
+        ClientSession session = conn.getAttachment();
+        if (session == null) {
+            session = new ClientSession(negotiatedBinary(conn));
+            conn.setAttachment(session);
+        }
+        return session;
+    }
+
+    // 连接发送缓冲中尚未写出的字节数
+    private static long queuedBytes(WebSocket conn) {
+        if (!(conn instanceof WebSocketImpl)) {
+            return 0;
+        }
+        long bytes = 0;
+        for (ByteBuffer buffer : ((WebSocketImpl) conn).outQueue) {
+            bytes += buffer.remaining();
+        }
+        return bytes;
+    }
+
+    // --- 背压指标 ---
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    // 因背压被丢弃的帧总数
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    // 因落后过久被断开的连接总数
+    public long getSlowConsumerDisconnects() {
+        return slowConsumerDisconnects.get();
+    }
+
+    // 最近一次巡检时所有连接的积压字节总和
+    public long getTotalQueuedBytes() {
+        return totalQueuedBytes;
+    }
+
+    // 最近一次巡检时单个连接的最大积压字节
+    public long getPeakQueuedBytes() {
+        return peakQueuedBytes;
+    }
+
+    public int getLaggingConnections() {
+        return laggingConnections;
+    }
+
+    // --- 增量变更流 ---
+
+    public long getVersion() {
+        synchronized (streamLock) {
+            return version;
+        }
+    }
+
+    @Override
+    public void stop(int timeout, String closeMessage) throws InterruptedException {
+        coalescer.close();
+        sweeper.shutdown();
+        fanoutPool.shutdown();
+        queryPool.shutdown();
+        super.stop(timeout, closeMessage);
+    }
+
+    // 开始批量变更：批次内的增量在 commitBatch 时合并成一帧推送
+    public void beginBatch() {
+        coalescer.beginBatch();
+    }
+
+    public void commitBatch() {
+        coalescer.commitBatch();
+    }
+
+    /**
+     * 发布一条增量 (add / remove / swap / popularity 等)，分配新版本号后交给合并器推送。
+     * payload 中的字段会与 type/version/op 一起平铺到消息中。
+     */
+    public long publishDelta(String op, Map<String, Object> payload) {
+        return publishDelta(op, payload, null);
+    }
+
+    /**
+     * 同上，并在分配版本号的同一临界区内执行 stateCommit (发布与该增量对应的新状态)。
+     * 这样 stateSupplier 返回的状态与快照标注的版本号始终一致，新连接不会重复应用同一条增量。
+     */
+    public long publishDelta(String op, Map<String, Object> payload, Runnable stateCommit) {
+        return publishDelta(op, payload, stateCommit, null);
+    }
+
+    /**
+     * 同上，scope 描述该增量涉及的艺人和时间段，用于只推送给匹配的订阅连接 (null 表示推送给所有订阅)。
+     */
+    public long publishDelta(String op, Map<String, Object> payload, Runnable stateCommit, DeltaScope scope) {
+        long next;
+        synchronized (streamLock) {
+            if (stateCommit != null) {
+                stateCommit.run();
+            }
+            next = version + 1;
+            JsonObject message = gson.toJsonTree(payload).getAsJsonObject();
+            message.addProperty("type", "delta");
+            message.addProperty("version", next);
+            message.addProperty("op", op);
+            Delta delta = new Delta(next, gson.toJson(message), scope);
+
+            version = next;
+            cachedSnapshot = null;
+            history.addLast(delta);
+            if (history.size() > DELTA_HISTORY_LIMIT) {
+                history.removeFirst();
+            }
+            pending.add(delta);
+        }
+        coalescer.markDirty();
+        return next;
+    }
+
+    /**
+     * 状态被整体替换 (从磁盘恢复、大批量导入) 后调用：在临界区内发布新状态并进入新版本，
+     * 丢弃无法再衔接的增量历史，然后由刷新线程向所有连接推送全量快照 (调用线程不等待发送)。
+     */
+    public void resetState(Runnable stateCommit) {
+        synchronized (streamLock) {
+            if (stateCommit != null) {
+                stateCommit.run();
+            }
+            version++;
+            history.clear();
+            pending.clear();
+            cachedSnapshot = null;
+            snapshotPending = true;
+        }
+        coalescer.markDirty();
+    }
+
+    /**
+     * 由合并器线程调用：在 streamLock 内取走排队的普通广播、积压的增量和连接列表，释放锁后
+     * 先发送普通广播，再把增量合并为一个 batch 帧推送；积压过多或状态被整体替换时改发全量快照。
+     * 发送按分片并行 (见 fanOut)，期间 publishDelta 不会被阻塞。
+     */
+    private void flushPending() {
+        List<ByteBuffer> messages;
+        List<Delta> batch;
+        StateSnapshot snapshot = null;
+        boolean snapshotWanted;
+        WebSocket[] targets;
+        synchronized (streamLock) {
+            messages = new ArrayList<>(pendingMessages);
+            pendingMessages.clear();
+            snapshotWanted = snapshotPending || pending.size() > MAX_DELTAS_PER_FLUSH;
+            if (snapshotWanted) {
+                snapshot = currentSnapshot();
+                if (snapshot != null) {
+                    pending.clear(); // 快照已包含所有积压的增量
+                    snapshotPending = false;
+                }
+            }
+            batch = snapshotWanted ? Collections.emptyList() : new ArrayList<>(pending);
+            if (!snapshotWanted) {
+                pending.clear();
+            }
+            targets = connections.toArray(new WebSocket[0]);
+        }
+        long now = System.currentTimeMillis();
+        Queue<WebSocket> resumable = new ConcurrentLinkedQueue<>();
+        for (ByteBuffer message : messages) {
+            fanOut(targets, conn -> sendIncremental(conn, message, now, resumable));
+        }
+        if (snapshot != null) {
+            sendSnapshotToAll(targets, snapshot, now);
+        } else if (!batch.isEmpty()) {
+            sendBatch(targets, batch, now, resumable);
+        }
+        resumeLagging(new LinkedHashSet<>(resumable));
+    }
+
+    /**
+     * 推送一批增量。相同订阅条件的连接共享同一份过滤结果 (完整状态流的连接共享 FULL_STREAM 对应的批次)，
+     * 各分片并发读取；已收到更新快照的连接只发送快照之后的部分 (单独编码)，已全部包含时跳过。
+     */
+    private void sendBatch(WebSocket[] targets, List<Delta> batch, long now, Queue<WebSocket> resumable) {
+        long first = batch.get(0).version;
+        long last = batch.get(batch.size() - 1).version;
+        Map<Object, ByteBuffer> encoded = new ConcurrentHashMap<>();
+        fanOut(targets, conn -> {
+            ClientSession session = session(conn);
+            long sent = session.getSentVersion();
+            if (sent >= last) {
+                return;
+            }
+            Subscription subscription = session.getSubscription();
+            ByteBuffer payload = sent >= first
+                    ? encodeBatch(since(batch, sent), subscription, last)
+                    : encoded.computeIfAbsent(subscription == null ? FULL_STREAM : subscription,
+                            key -> encodeBatch(batch, subscription, last));
+            if (payload == EMPTY || sendIncremental(conn, payload, now, resumable)) {
+                session.setSentVersion(last);
+            }
+        });
+    }
+
+    // 完整状态流发送全部增量；订阅连接只发送匹配的增量，没有匹配时返回 EMPTY
+    private static ByteBuffer encodeBatch(List<Delta> deltas, Subscription subscription, long last) {
+        if (subscription == null) {
+            return StateSnapshot.encode(batchMessage(deltas, last, false));
+        }
+        List<Delta> matched = matching(deltas, subscription);
+        return matched.isEmpty() ? EMPTY : StateSnapshot.encode(batchMessage(matched, last, true));
+    }
+
+    // 版本号晚于 version 的增量 (deltas 按版本号升序)
+    private static List<Delta> since(List<Delta> deltas, long version) {
+        int from = 0;
+        while (from < deltas.size() && deltas.get(from).version <= version) {
+            from++;
+        }
+        return deltas.subList(from, deltas.size());
+    }
+
+    private static List<Delta> matching(List<Delta> deltas, Subscription subscription) {
+        List<Delta> matched = new ArrayList<>();
+        for (Delta delta : deltas) {
+            if (subscription.matches(delta.scope)) {
+                matched.add(delta);
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * {"type":"batch","version":最后版本,"deltas":[...]}，增量按版本号升序排列。
+     * 订阅连接收到的是过滤后的批次 ("filtered":true)：版本号不连续是正常的，客户端不应据此请求补发。
+     */
+    private static String batchMessage(List<Delta> deltas, long version, boolean filtered) {
+        StringBuilder sb = new StringBuilder(64 + deltas.size() * 128);
+        sb.append("{\"type\":\"batch\",\"version\":").append(version);
+        if (filtered) {
+            sb.append(",\"filtered\":true");
+        }
+        sb.append(",\"deltas\":[");
+        for (int i = 0; i < deltas.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(deltas.get(i).json);
+        }
+        return sb.append("]}").toString();
+    }
+
+    /**
+     * 向所有连接推送全量快照 (仅用于无法用增量描述的整体变更)。由刷新线程发送，调用线程不等待。
+     */
+    public void broadcastSnapshot() {
+        synchronized (streamLock) {
+            snapshotPending = true;
+        }
+        coalescer.markDirty();
+    }
+
+    /**
+     * 向所有连接发送快照 (不持有 streamLock)，积压中的连接等消化后再补发。
+     * 已收到更新快照的连接跳过；订阅连接的 "当前状态" 要在锁内按订阅条件查询，发送结束后统一补发。
+     */
+    private void sendSnapshotToAll(WebSocket[] targets, StateSnapshot snapshot, long now) {
+        Queue<WebSocket> subscribed = new ConcurrentLinkedQueue<>();
+        fanOut(targets, conn -> {
+            ClientSession session = session(conn);
+            if (!conn.isOpen() || session.getSentVersion() > snapshot.getVersion()) {
+                return;
+            }
+            if (queuedBytes(conn) > maxQueuedBytes) {
+                session.dropFrame(now);
+                droppedFrames.incrementAndGet();
+                return;
+            }
+            Subscription subscription = session.getSubscription();
+            if (subscription != null && !subscription.isEmpty()) {
+                subscribed.add(conn);
+                return;
+            }
+            sendState(conn, session, snapshot);
+        });
+        if (subscribed.isEmpty()) {
+            return;
+        }
+        synchronized (streamLock) {
+            StateSnapshot current = currentSnapshot();
+            for (WebSocket conn : subscribed) {
+                ClientSession session = session(conn);
+                session.lock();
+                try {
+                    if (conn.isOpen() && current != null) {
+                        sendState(conn, session, current);
+                    }
+                } finally {
+                    session.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * 客户端请求从 fromVersion 之后补发：历史足够时补发增量，否则发送全量快照。
+     * 只补发已经推送给该连接的增量 (会话记录的已发送版本号之后的增量由刷新线程送达，补发会重复)；
+     * 在该连接的会话锁内发送，保证补发的批次排在之后推送的增量前面。
+     */
+    private void resync(WebSocket conn, long fromVersion) {
+        ClientSession session = session(conn);
+        synchronized (streamLock) {
+            session.lock();
+            try {
+                resync(conn, session, fromVersion);
+            } finally {
+                session.unlock();
+            }
+        }
+    }
+
+    private void resync(WebSocket conn, ClientSession session, long fromVersion) {
+        Subscription subscription = session.getSubscription();
+        long sent = session.getSentVersion();
+        // 历史在 resetState 后为空，此时早于当前版本的请求只能补发快照
+        Delta oldest = history.peekFirst();
+        // 客户端的版本已不早于推送给它的版本 (例如刚收到的快照已包含后面的增量) 时无需补发
+        boolean covered = fromVersion >= 0 && fromVersion <= version
+                && (fromVersion >= sent || (oldest != null && oldest.version <= fromVersion + 1));
+        if (!covered) {
+            sendSnapshot(conn);
+            return;
+        }
+        List<Delta> missed = new ArrayList<>();
+        for (Delta delta : history) {
+            if (delta.version > sent) {
+                break;
+            }
+            if (delta.version > fromVersion && (subscription == null || subscription.matches(delta.scope))) {
+                missed.add(delta);
+            }
+        }
+        if (!missed.isEmpty()) {
+            boolean filtered = subscription != null;
+            send(conn, StateSnapshot.encode(batchMessage(missed,
+                    filtered ? sent : missed.get(missed.size() - 1).version, filtered)));
+        }
+    }
+
+    // 在 streamLock 和该连接的会话锁内发送快照，保证该连接随后收到的增量版本与快照连续
+    private boolean sendSnapshot(WebSocket conn) {
+        ClientSession session = session(conn);
+        synchronized (streamLock) {
+            session.lock();
+            try {
+                StateSnapshot snapshot = currentSnapshot();
+                if (snapshot == null) {
+                    return false;
+                }
+                sendState(conn, session, snapshot);
+                return true;
+            } finally {
+                session.unlock();
+            }
+        }
+    }
+
+    /**
+     * 向连接发送 "当前状态"：完整状态流的连接发送全量快照，订阅连接只发送订阅范围内的演出，
+     * 并把会话的已发送版本号推进到快照版本。调用方持有该连接的会话锁；
+     * 订阅连接要按订阅条件查询当前状态，调用方还需持有 streamLock。
+     */
+    private void sendState(WebSocket conn, ClientSession session, StateSnapshot snapshot) {
+        Subscription subscription = session.getSubscription();
+        if (subscription == null) {
+            conn.sendFrame(snapshot.newFrame(session.isBinary()));
+            metrics.framesSent.increment();
+        } else if (!subscription.isEmpty()) {
+            conn.sendFrame(StateSnapshot.newTextFrame(subscriptionMessage(subscription, null)));
+            metrics.framesSent.increment();
+        }
+        session.setSentVersion(snapshot.getVersion());
+        session.resume();
+    }
+
+    // {"type":"subscription","id":请求编号,"version":当前版本,"performances":[...]}。调用方需持有 streamLock
+    private ByteBuffer subscriptionMessage(Subscription subscription, JsonElement id) {
+        QueryHandler handler = queryHandler;
+        JsonObject message = new JsonObject();
+        message.addProperty("type", "subscription");
+        if (id != null) {
+            message.add("id", id);
+        }
+        message.addProperty("version", version);
+        List<Map<String, Object>> rows = subscription.isEmpty() || handler == null
+                ? Collections.emptyList() : handler.select(subscription);
+        message.add("performances", gson.toJsonTree(rows));
+        return StateSnapshot.encode(gson.toJson(message));
+    }
+
+    // --- 查询与订阅 ---
+
+    /**
+     * 执行一条查询并回复 {"type":"result","id":...,"query":...,"version":...,"result":...}。
+     * 查询在 streamLock 内读取快照，结果与回复中的版本号一致。
+     */
+    private void query(WebSocket conn, JsonObject command) {
+        JsonElement id = command.get("id");
+        QueryHandler handler = queryHandler;
+        if (handler == null) {
+            sendError(conn, id, "服务器未开启查询");
+            return;
+        }
+        String kind = stringField(command, "query");
+        Object result;
+        long at;
+        try {
+            synchronized (streamLock) {
+                at = version;
+                result = handler.query(kind, command);
+            }
+        } catch (IllegalArgumentException e) {
+            sendError(conn, id, e.getMessage());
+            return;
+        }
+        JsonObject response = new JsonObject();
+        response.addProperty("type", "result");
+        if (id != null) {
+            response.add("id", id);
+        }
+        response.addProperty("query", kind);
+        response.addProperty("version", at);
+        response.add("result", gson.toJsonTree(result));
+        send(conn, StateSnapshot.encode(gson.toJson(response)));
+    }
+
+    /**
+     * 设置连接的订阅：之后只推送匹配的增量，并立即回复订阅范围内的当前演出。
+     * 不带任何条件的 subscribe 恢复完整状态流 (回复全量快照)；unsubscribe 停止推送。
+     */
+    private void subscribe(WebSocket conn, JsonObject command, boolean unsubscribe) {
+        JsonElement id = command.get("id");
+        Subscription subscription;
+        try {
+            subscription = unsubscribe ? Subscription.NONE : Subscription.parse(command);
+        } catch (RuntimeException e) {
+            sendError(conn, id, e.getMessage());
+            return;
+        }
+        if (subscription != null && !subscription.isEmpty() && queryHandler == null) {
+            sendError(conn, id, "服务器未开启订阅");
+            return;
+        }
+        ClientSession session = session(conn);
+        synchronized (streamLock) {
+            session.lock();
+            try {
+                session.setSubscription(subscription);
+                if (subscription == null) {
+                    sendSnapshot(conn);
+                } else {
+                    if (conn.isOpen()) {
+                        conn.sendFrame(StateSnapshot.newTextFrame(subscriptionMessage(subscription, id)));
+                    }
+                    session.setSentVersion(version);
+                    session.resume();
+                }
+            } finally {
+                session.unlock();
+            }
+        }
+    }
+
+    private void sendError(WebSocket conn, JsonElement id, String reason) {
+        JsonObject response = new JsonObject();
+        response.addProperty("type", "error");
+        if (id != null) {
+            response.add("id", id);
+        }
+        response.addProperty("message", reason);
+        send(conn, StateSnapshot.encode(gson.toJson(response)));
+    }
+
+    /**
+     * 返回当前版本的快照，缓存失效时才重新序列化。调用方需持有 streamLock。
+     */
+    private StateSnapshot currentSnapshot() {
+        if (cachedSnapshot != null || stateSupplier == null) {
+            return cachedSnapshot;
+        }
+        List<Map<String, Object>> rows = stateSupplier.get();
+        if (rows == null) {
+            return null;
+        }
+        cachedSnapshot = new StateSnapshot(version, rows, metrics);
+        return cachedSnapshot;
+    }
+
+    private static JsonObject parseCommand(String message) {
+        try {
+            JsonElement element = JsonParser.parseString(message);
+            return element.isJsonObject() ? element.getAsJsonObject() : null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static String stringField(JsonObject object, String name) {
+        JsonElement element = object.get(name);
+        return element != null && element.isJsonPrimitive() ? element.getAsString() : null;
+    }
+
+    // 历史增量：版本号 + 已序列化的消息 + 涉及的范围 (用于订阅过滤，可为 null)
+    private static final class Delta {
+        final long version;
+        final String json;
+        final DeltaScope scope;
+
+        Delta(long version, String json, DeltaScope scope) {
+            this.version = version;
+            this.json = json;
+            this.scope = scope;
         }
     }
 }
@@ -1,28 +1,130 @@
 /**
  * TimeSlot.java
  * 描述一场演出的开始和结束时间。
+ *
+ * 时间统一使用 "音乐节分钟"：第 1 天 00:00 为 0，第 2 天 00:00 为 1440，以此类推，
+ * 因此 20:30-21:15 这样的非整点场次、跨越午夜和跨越多天的演出都可以直接表示。
+ * 一个时间段打包为一个 long (高 32 位开始、低 32 位结束)，Performance 和时间轴索引直接保存打包值，
+ * 冲突检测在原始整数上完成，不需要创建对象。
  */
 public class TimeSlot {
-    private final int startTime; // 小时数，例如：14 (2 PM)
-    private final int endTime; // 小时数，例如：16 (4 PM)
+    public static final int MINUTES_PER_HOUR = 60;
+    public static final int MINUTES_PER_DAY = 24 * MINUTES_PER_HOUR;
 
-    // 初始化--确保开始时间和结束时间
-    public TimeSlot(int startTime, int endTime) {
-        if (startTime >= endTime) {
+    private final long packed;
+
+    // 初始化--按小时 (第 1 天的整点)，例如 new TimeSlot(14, 16) 表示 14:00-16:00
+    public TimeSlot(int startHour, int endHour) {
+        this(pack(startHour * MINUTES_PER_HOUR, endHour * MINUTES_PER_HOUR), true);
+    }
+
+    private TimeSlot(long packed, boolean validate) {
+        if (validate && startOf(packed) >= endOf(packed)) {
             throw new IllegalArgumentException("结束时间必须晚于开始时间。");
         }
-        this.startTime = startTime;
-        this.endTime = endTime;
+        this.packed = packed;
     }
 
-    // 访问器--开始时间
-    public int getStartTime() {
-        return startTime;
+    // 按音乐节分钟创建
+    public static TimeSlot ofMinutes(int startMinute, int endMinute) {
+        return new TimeSlot(pack(startMinute, endMinute), true);
     }
 
-    // 访问器--结束时间
-    public int getEndTime() {
-        return endTime;
+    // 第 day 天 (从 1 开始) hour:minute 开始、持续 durationMinutes 分钟，可跨越午夜
+    public static TimeSlot of(int day, int hour, int minute, int durationMinutes) {
+        int start = minuteOf(day, hour, minute);
+        return ofMinutes(start, start + durationMinutes);
+    }
+
+    // 由打包值还原 (打包值来自已校验过的时间段)
+    public static TimeSlot fromPacked(long packed) {
+        return new TimeSlot(packed, false);
+    }
+
+    // --- 打包表示 ---
+
+    public static long pack(int startMinute, int endMinute) {
+        return ((long) startMinute << 32) | (endMinute & 0xFFFFFFFFL);
+    }
+
+    public static int startOf(long packed) {
+        return (int) (packed >> 32);
+    }
+
+    public static int endOf(long packed) {
+        return (int) packed;
+    }
+
+    // 两个打包时间段是否重叠：两次比较用非短路的 & 合并，没有分支也不分配对象
+    public static boolean overlaps(long a, long b) {
+        return startOf(a) < endOf(b) & endOf(a) > startOf(b);
+    }
+
+    // 第 day 天 (从 1 开始) hour:minute 对应的音乐节分钟
+    public static int minuteOf(int day, int hour, int minute) {
+        return (day - 1) * MINUTES_PER_DAY + hour * MINUTES_PER_HOUR + minute;
+    }
+
+    /**
+     * 解析时间："14" (第 1 天 14:00)、"20:30"、"2 20:30" 或 "D2 20:30" (第 2 天)。格式错误时抛出 IllegalArgumentException。
+     */
+    public static int parseMinute(String text) {
+        String t = text.trim();
+        int day = 1;
+        int space = t.indexOf(' ');
+        if (space > 0) {
+            String dayPart = t.substring(0, space);
+            if (dayPart.charAt(0) == 'D' || dayPart.charAt(0) == 'd') {
+                dayPart = dayPart.substring(1);
+            }
+            day = parsePart(dayPart, text);
+            t = t.substring(space + 1).trim();
+            if (day < 1) {
+                throw new IllegalArgumentException("天数必须从 1 开始: " + text);
+            }
+        }
+        int colon = t.indexOf(':');
+        int hour = parsePart(colon < 0 ? t : t.substring(0, colon), text);
+        int minute = colon < 0 ? 0 : parsePart(t.substring(colon + 1), text);
+        if (hour < 0 || hour > 24 || minute < 0 || minute >= MINUTES_PER_HOUR || (hour == 24 && minute > 0)) {
+            throw new IllegalArgumentException("时间超出范围: " + text);
+        }
+        return minuteOf(day, hour, minute);
+    }
+
+    private static int parsePart(String part, String text) {
+        try {
+            return Integer.parseInt(part.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("无法解析时间: " + text);
+        }
+    }
+
+    // 音乐节分钟的可读形式：第 1 天只显示 "HH:MM"，之后显示 "第N天 HH:MM"
+    public static String formatMinute(long minute) {
+        long day = Math.floorDiv(minute, MINUTES_PER_DAY) + 1;
+        long ofDay = Math.floorMod(minute, MINUTES_PER_DAY);
+        String clock = String.format("%02d:%02d", ofDay / MINUTES_PER_HOUR, ofDay % MINUTES_PER_HOUR);
+        return day == 1 ? clock : "第" + day + "天 " + clock;
+    }
+
+    // 访问器--开始时间 (音乐节分钟)
+    public int getStartMinute() {
+        return startOf(packed);
+    }
+
+    // 访问器--结束时间 (音乐节分钟)
+    public int getEndMinute() {
+        return endOf(packed);
+    }
+
+    public int getDurationMinutes() {
+        return endOf(packed) - startOf(packed);
+    }
+
+    // 打包值
+    public long getPacked() {
+        return packed;
     }
 
     /**
@@ -30,13 +132,22 @@ public class TimeSlot {
      * 冲突条件：两个时间段有重叠。
      */
     public boolean conflictsWith(TimeSlot other) {
-        // A开始在B结束前 并且 A结束在B开始后
-        return this.startTime < other.endTime && this.endTime > other.startTime;
+        return overlaps(packed, other.packed);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof TimeSlot && ((TimeSlot) o).packed == packed;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(packed);
     }
 
     // 字符串表示---打印时间段信息
     @Override
     public String toString() {
-        return String.format("[%02d:00 - %02d:00]", startTime, endTime);
+        return "[" + formatMinute(getStartMinute()) + " - " + formatMinute(getEndMinute()) + "]";
     }
 }
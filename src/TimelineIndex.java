@@ -0,0 +1,255 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * TimelineIndex.java
+ * 时间轴区间索引：以演出开始时间为键的 AVL 平衡树，每个节点额外维护子树内的最大结束时间 (maxEnd)。
+ * 与双向链表并存，链表负责演出顺序，本索引负责 O(log n + k) 的重叠查询与 "某时刻正在演出" 查询。
+ */
+public class TimelineIndex {
+
+    private static final class Node {
+        final Performance performance;
+        final int start;
+        final int end;
+        final int id;
+        int maxEnd;
+        int height;
+        Node left;
+        Node right;
+
+        Node(Performance performance) {
+            this.performance = performance;
+            long slot = performance.getSlot();
+            this.start = TimeSlot.startOf(slot);
+            this.end = TimeSlot.endOf(slot);
+            this.id = performance.getId();
+            this.maxEnd = end;
+            this.height = 1;
+        }
+    }
+
+    private Node root;
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // 插入演出 (按开始时间排序，开始时间相同时按演出 id 区分)
+    public void insert(Performance performance) {
+        root = insert(root, new Node(performance));
+        size++;
+    }
+
+    // 移除演出，必须在修改其时间段之前调用
+    public boolean remove(Performance performance) {
+        int before = size;
+        root = remove(root, performance.getStartMinute(), performance.getId());
+        return size < before;
+    }
+
+    /**
+     * 返回第一个与给定时间段重叠的演出 (忽略 exclude 本身)，没有冲突时返回 null。
+     * 冲突检测只需要一个结果，找到即停止。
+     */
+    public Performance findFirstOverlap(int start, int end, Performance exclude) {
+        return findFirstOverlap(root, start, end, exclude);
+    }
+
+    private static Performance findFirstOverlap(Node node, int start, int end, Performance exclude) {
+        if (node == null || node.maxEnd <= start) {
+            return null;
+        }
+        Performance hit = findFirstOverlap(node.left, start, end, exclude);
+        if (hit != null) {
+            return hit;
+        }
+        if (node.performance != exclude && node.start < end && node.end > start) {
+            return node.performance;
+        }
+        if (node.start >= end) {
+            return null;
+        }
+        return findFirstOverlap(node.right, start, end, exclude);
+    }
+
+    // 返回所有与 [start, end) 重叠的演出，按开始时间升序
+    public List<Performance> findOverlapping(int start, int end) {
+        List<Performance> result = new ArrayList<>();
+        collectOverlapping(root, start, end, result);
+        return result;
+    }
+
+    // 返回在时刻 t 正在进行的演出 (start <= t < end)
+    public List<Performance> findLiveAt(int t) {
+        return findOverlapping(t, t + 1);
+    }
+
+    // 开始时间 (相同时比较 id) 排在 performance 之前的最后一场演出，没有时返回 null；O(log n)
+    public Performance findPredecessor(Performance performance) {
+        int start = performance.getStartMinute();
+        int id = performance.getId();
+        Performance result = null;
+        Node node = root;
+        while (node != null) {
+            if (compare(node.start, node.id, start, id) < 0) {
+                result = node.performance;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return result;
+    }
+
+    // 按开始时间升序返回全部演出
+    public List<Performance> inOrder() {
+        List<Performance> result = new ArrayList<>(size);
+        collectInOrder(root, result);
+        return result;
+    }
+
+    public void clear() {
+        root = null;
+        size = 0;
+    }
+
+    // --- 查询辅助 ---
+
+    private static void collectOverlapping(Node node, int start, int end, List<Performance> out) {
+        if (node == null || node.maxEnd <= start) {
+            return;
+        }
+        collectOverlapping(node.left, start, end, out);
+        if (node.start < end && node.end > start) {
+            out.add(node.performance);
+        }
+        if (node.start < end) {
+            collectOverlapping(node.right, start, end, out);
+        }
+    }
+
+    private static void collectInOrder(Node node, List<Performance> out) {
+        if (node == null) {
+            return;
+        }
+        collectInOrder(node.left, out);
+        out.add(node.performance);
+        collectInOrder(node.right, out);
+    }
+
+    // --- AVL 维护 ---
+
+    private static int compare(int start1, int id1, int start2, int id2) {
+        if (start1 != start2) {
+            return Integer.compare(start1, start2);
+        }
+        return Integer.compare(id1, id2);
+    }
+
+    private Node insert(Node node, Node fresh) {
+        if (node == null) {
+            return fresh;
+        }
+        if (compare(fresh.start, fresh.id, node.start, node.id) < 0) {
+            node.left = insert(node.left, fresh);
+        } else {
+            node.right = insert(node.right, fresh);
+        }
+        return rebalance(node);
+    }
+
+    private Node remove(Node node, int start, int id) {
+        if (node == null) {
+            return null;
+        }
+        int cmp = compare(start, id, node.start, node.id);
+        if (cmp < 0) {
+            node.left = remove(node.left, start, id);
+        } else if (cmp > 0) {
+            node.right = remove(node.right, start, id);
+        } else {
+            size--;
+            if (node.left == null) {
+                return node.right;
+            }
+            if (node.right == null) {
+                return node.left;
+            }
+            // 用右子树最小节点替换当前节点
+            Node successor = node.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            successor.right = removeMin(node.right);
+            successor.left = node.left;
+            return rebalance(successor);
+        }
+        return rebalance(node);
+    }
+
+    private Node removeMin(Node node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        node.left = removeMin(node.left);
+        return rebalance(node);
+    }
+
+    private static int height(Node node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static void update(Node node) {
+        node.height = 1 + Math.max(height(node.left), height(node.right));
+        int maxEnd = node.end;
+        if (node.left != null && node.left.maxEnd > maxEnd) {
+            maxEnd = node.left.maxEnd;
+        }
+        if (node.right != null && node.right.maxEnd > maxEnd) {
+            maxEnd = node.right.maxEnd;
+        }
+        node.maxEnd = maxEnd;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node pivot = node.left;
+        node.left = pivot.right;
+        pivot.right = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node pivot = node.right;
+        node.right = pivot.left;
+        pivot.left = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    private static Node rebalance(Node node) {
+        update(node);
+        int balance = height(node.left) - height(node.right);
+        if (balance > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        }
+        if (balance < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+}
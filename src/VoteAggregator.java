@@ -0,0 +1,131 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * VoteAggregator.java
+ * 粉丝实时投票 ("点赞") 的计数器：每位艺人一个 LongAdder 分段计数器，
+ * 投票线程之间没有共享的热点字段，只需一次哈希查找和一次无竞争的累加。
+ *
+ * 计数不会直接改动艺人人气：折叠 (fold) 时把自上次折叠以来的增量汇总成一批，
+ * 交给 sink 统一写入排行榜并广播。折叠可以手动调用，也可以 start() 后由后台线程定期执行。
+ */
+public class VoteAggregator implements AutoCloseable {
+
+    private static final AsyncLog LOG = AsyncLog.get("投票");
+
+    // 单个艺人的计数：votes 只增不减，folded 记录已经折叠过的总数
+    private static final class Tally {
+        final Artist artist;
+        final LongAdder votes = new LongAdder();
+        long folded; // 仅在 fold() 的锁内读写
+
+        Tally(Artist artist) {
+            this.artist = artist;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Tally> tallies = new ConcurrentHashMap<>();
+    private final LongAdder totalVotes = new LongAdder();
+    private final Consumer<Map<Artist, Long>> sink;
+
+    private ScheduledExecutorService foldThread;
+    private ScheduledFuture<?> foldTask;
+
+    public VoteAggregator(Consumer<Map<Artist, Long>> sink) {
+        this.sink = sink;
+    }
+
+    // 开始接受某位艺人的投票 (已在追踪时不做修改)
+    public void track(Artist artist) {
+        tallies.putIfAbsent(artist.getName(), new Tally(artist));
+    }
+
+    // 停止接受投票，尚未折叠的票数随之丢弃
+    public void untrack(String artistName) {
+        tallies.remove(artistName);
+    }
+
+    /**
+     * 为艺人投 count 票，可由任意线程并发调用。艺人未被追踪时返回 false。
+     */
+    public boolean vote(String artistName, long count) {
+        Tally tally = tallies.get(artistName);
+        if (tally == null) {
+            return false;
+        }
+        tally.votes.add(count);
+        totalVotes.add(count);
+        return true;
+    }
+
+    /**
+     * 把自上次折叠以来的增量汇总为一批交给 sink，返回有变化的艺人数量。
+     * 用累计总数减去已折叠数而不是 sumThenReset()，折叠期间并发的投票不会丢失，只会计入下一批。
+     */
+    public synchronized int fold() {
+        Map<Artist, Long> deltas = new LinkedHashMap<>();
+        for (Tally tally : tallies.values()) {
+            long total = tally.votes.sum();
+            long delta = total - tally.folded;
+            if (delta != 0) {
+                tally.folded = total;
+                deltas.put(tally.artist, delta);
+            }
+        }
+        if (!deltas.isEmpty()) {
+            sink.accept(deltas);
+        }
+        return deltas.size();
+    }
+
+    /**
+     * 启动后台折叠线程，每 periodMillis 折叠一次。
+     */
+    public synchronized void start(long periodMillis) {
+        if (foldTask != null) {
+            throw new IllegalStateException("投票折叠线程已在运行。");
+        }
+        if (foldThread == null) {
+            foldThread = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "vote-folder");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        foldTask = foldThread.scheduleAtFixedRate(() -> {
+            try {
+                fold();
+            } catch (RuntimeException e) {
+                LOG.error("投票折叠失败: {}", e.toString());
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (foldTask != null) {
+            foldTask.cancel(false);
+            foldTask = null;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        stop();
+        if (foldThread != null) {
+            foldThread.shutdown();
+            foldThread = null;
+        }
+    }
+
+    // 累计收到的票数 (含尚未折叠的)
+    public long getTotalVotes() {
+        return totalVotes.sum();
+    }
+}
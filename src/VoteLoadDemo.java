@@ -0,0 +1,104 @@
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * VoteLoadDemo.java
+ * 投票吞吐量压测：分别用 1、2、4 … 个线程持续投票，对比分段计数器 (scheduler.vote)
+ * 与所有线程争用同一个同步计数器时的每秒票数，展示吞吐量随核数的扩展情况。
+ *
+ * 用法: java VoteLoadDemo [端口, 默认 8081] [每轮毫秒数, 默认 1000]
+ */
+public class VoteLoadDemo {
+
+    private static final String[] ARTISTS = {"Beyond", "周杰伦", "泰勒斯威夫特", "方大同", "林俊杰", "韩红", "陶喆"};
+
+    // 对照组：所有线程争用同一把锁 (等价于直接 synchronized 修改 Artist.popularity)
+    private static final class LockedCounter {
+        private long value;
+
+        synchronized void add(long n) {
+            value += n;
+        }
+    }
+
+    private interface VoteAction {
+        void vote(String artistName);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8081;
+        long roundMillis = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+
+        MusicFestivalScheduler scheduler = new MusicFestivalScheduler(port);
+        scheduler.beginBatch();
+        for (int i = 0; i < ARTISTS.length; i++) {
+            scheduler.addPerformance(new Artist(ARTISTS[i], "流行", 80, null, null), new TimeSlot(14 + i, 15 + i));
+        }
+        scheduler.commitBatch();
+        scheduler.startVoteFolding(200);
+
+        LockedCounter locked = new LockedCounter();
+        int cores = Runtime.getRuntime().availableProcessors();
+        AsyncLog.flush();
+        System.out.println("\n--- 🗳️ 投票吞吐量压测 (CPU 核数: " + cores + "，每轮 " + roundMillis + " ms) ---");
+        System.out.printf("%-8s %18s %18s%n", "线程数", "分段计数器 (票/秒)", "同步计数器 (票/秒)");
+        for (int threads = 1; threads <= cores * 2; threads *= 2) {
+            long striped = run(threads, roundMillis, scheduler::vote);
+            long contended = run(threads, roundMillis, name -> locked.add(1));
+            System.out.printf("%-8d %18d %18d%n", threads, striped, contended);
+        }
+
+        scheduler.stopVoteFolding();
+        scheduler.foldVotes();
+        System.out.println("\n累计票数: " + scheduler.getTotalVotes());
+        System.out.println("--- 🏆 投票后人气榜 (Top 3) ---");
+        List<Artist> top = scheduler.getHotArtistsRanking(3);
+        for (int i = 0; i < top.size(); i++) {
+            System.out.printf("  Top %d: %s\n", i + 1, top.get(i));
+        }
+        System.exit(0);
+    }
+
+    // 用 threads 个线程持续投票 roundMillis 毫秒，返回每秒票数
+    private static long run(int threads, long roundMillis, VoteAction action) throws InterruptedException {
+        AtomicLong total = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        long[] window = new long[1];
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long count = 0;
+                try {
+                    start.await();
+                    long deadline = window[0];
+                    while (true) {
+                        for (int i = 0; i < 1024; i++) {
+                            action.vote(ARTISTS[random.nextInt(ARTISTS.length)]);
+                        }
+                        count += 1024;
+                        if (System.nanoTime() >= deadline) {
+                            break;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    total.addAndGet(count);
+                    done.countDown();
+                }
+            }, "vote-load-" + t);
+            worker.setDaemon(true);
+            worker.start();
+        }
+        long begin = System.nanoTime();
+        window[0] = begin + TimeUnit.MILLISECONDS.toNanos(roundMillis);
+        start.countDown();
+        done.await();
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        return (long) (total.get() / seconds);
+    }
+}